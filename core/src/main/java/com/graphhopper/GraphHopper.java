@@ -29,6 +29,7 @@ import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
@@ -43,6 +44,7 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMMtbNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.routing.weighting.PrecomputedWeights;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
@@ -97,10 +99,13 @@ public class GraphHopper {
     protected EncodingManager encodingManager;
     private OSMParsers osmParsers;
     private int defaultSegmentSize = -1;
+    private int preloadThreads = 1;
     private String ghLocation = "";
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean elevation = false;
+    private boolean sortGraph = false;
+    private boolean compressGeometry = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
     private boolean fullyLoaded = false;
@@ -111,6 +116,7 @@ public class GraphHopper {
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int indexThreads = 1;
     // subnetworks
     private int minNetworkSize = 200;
     private int subnetworksThreads = 1;
@@ -126,6 +132,16 @@ public class GraphHopper {
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private boolean cchEnabled = false;
+    private int cchCustomizationThreads = 1;
+    private int cchCacheSize = 10;
+    private int cchMaxConcurrentCustomizations = 2;
+    private CustomizableCH customizableCH;
+    private List<String> precomputedWeightProfiles = Collections.emptyList();
+    private Map<String, PrecomputedWeights> precomputedWeights = Collections.emptyMap();
+    private int routeCacheSize = 0;
+    private long routeCacheTtlMillis = 60_000;
+    private RouteCache routeCache;
 
     // for data reader
     private String osmFile;
@@ -190,6 +206,27 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Renumbers nodes and edges after the import so that they are stored in the order of a space-filling curve. This
+     * improves the memory locality of graph explorations, see {@link BaseGraph#sortGraph()}.
+     */
+    public GraphHopper setSortGraph(boolean sortGraph) {
+        ensureNotLoaded();
+        this.sortGraph = sortGraph;
+        return this;
+    }
+
+    /**
+     * Stores the pillar nodes of the way geometries delta-encoded as variable length integers, which reduces the size
+     * of the geometry storage considerably. This only has an effect for new imports, existing graphs are always loaded
+     * with the encoding they were created with.
+     */
+    public GraphHopper setCompressGeometry(boolean compressGeometry) {
+        ensureNotLoaded();
+        this.compressGeometry = compressGeometry;
+        return this;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize) {
         ensureNotLoaded();
         this.minNetworkSize = minNetworkSize;
@@ -375,6 +412,61 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * @return the metric-independent CCH preparation that is used for requests with a custom model, or null if it is
+     * not enabled or before loading or import.
+     */
+    public CustomizableCH getCustomizableCH() {
+        return customizableCH;
+    }
+
+    /**
+     * Enables customizable contraction hierarchies, so requests with a custom model can be answered with CH speed.
+     * Default is false.
+     */
+    public GraphHopper setCCHEnabled(boolean cchEnabled) {
+        ensureNotLoaded();
+        this.cchEnabled = cchEnabled;
+        return this;
+    }
+
+    /**
+     * Stores the edge weights and times of the given profiles at import time, so requests for these profiles that do
+     * not specify a custom model do not need to evaluate the custom model of the profile for every visited edge.
+     */
+    public GraphHopper setPrecomputedWeightProfiles(List<String> profileNames) {
+        ensureNotLoaded();
+        this.precomputedWeightProfiles = profileNames;
+        return this;
+    }
+
+    /**
+     * Caches the responses of up to the given number of route requests for the given time. The cache is disabled if
+     * the size is 0, which is the default.
+     */
+    public GraphHopper setRouteCache(int size, long ttlMillis) {
+        ensureNotLoaded();
+        this.routeCacheSize = size;
+        this.routeCacheTtlMillis = ttlMillis;
+        return this;
+    }
+
+    /**
+     * @return the cache for route responses, e.g. to read its hit ratio or to invalidate it after changing edge flags.
+     * Null if the cache is disabled or before loading or import.
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * @return a mapping between profile names and according precomputed edge weights. The map will be empty before
+     * loading or import.
+     */
+    public Map<String, PrecomputedWeights> getPrecomputedWeights() {
+        return precomputedWeights;
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -484,6 +576,7 @@ public class GraphHopper {
         customAreasDirectory = ghConfig.getString("custom_areas.directory", customAreasDirectory);
 
         defaultSegmentSize = ghConfig.getInt("graph.dataaccess.segment_size", defaultSegmentSize);
+        preloadThreads = ghConfig.getInt("graph.dataaccess.mmap.preload_threads", preloadThreads);
 
         String daTypeString = ghConfig.getString("graph.dataaccess.default_type", ghConfig.getString("graph.dataaccess", "RAM_STORE"));
         dataAccessDefaultType = DAType.fromString(daTypeString);
@@ -498,6 +591,8 @@ public class GraphHopper {
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
 
         removeZipped = ghConfig.getBool("graph.remove_zipped", removeZipped);
+        sortGraph = ghConfig.getBool("graph.do_sort", sortGraph);
+        compressGeometry = ghConfig.getBool("graph.compress_geometry", compressGeometry);
 
         if (!ghConfig.getString("spatial_rules.location", "").isEmpty())
             throw new IllegalArgumentException("spatial_rules.location has been deprecated. Please use custom_areas.directory instead and read the documentation for custom areas.");
@@ -547,6 +642,13 @@ public class GraphHopper {
         // prepare CH&LM
         chPreparationHandler.init(ghConfig);
         lmPreparationHandler.init(ghConfig);
+        cchEnabled = ghConfig.getBool("prepare.cch.enabled", cchEnabled);
+        cchCustomizationThreads = ghConfig.getInt("routing.cch.customization_threads", cchCustomizationThreads);
+        cchCacheSize = ghConfig.getInt("routing.cch.cache_size", cchCacheSize);
+        cchMaxConcurrentCustomizations = ghConfig.getInt("routing.cch.max_concurrent_customizations", cchMaxConcurrentCustomizations);
+        String weightProfilesStr = ghConfig.getString("prepare.weights.profiles", "");
+        if (!weightProfilesStr.isEmpty())
+            precomputedWeightProfiles = Arrays.stream(weightProfilesStr.split(",")).map(String::trim).collect(Collectors.toList());
 
         // osm import
         // We do a few checks for import.osm.ignored_highways to prevent configuration errors when migrating from an older
@@ -565,10 +667,14 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setTagParserThreads(ghConfig.getInt("datareader.tag_parser_threads", osmReaderConfig.getTagParserThreads()));
+        osmReaderConfig.setPass1CacheDir(ghConfig.getString("datareader.pass1_cache", osmReaderConfig.getPass1CacheDir()));
+        osmReaderConfig.setNodeIdMap(ghConfig.getString("datareader.node_id_map", osmReaderConfig.getNodeIdMap()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = ghConfig.getInt("index.max_region_search", maxRegionSearch);
+        indexThreads = ghConfig.getInt("index.threads", indexThreads);
 
         // urban density calculation
         residentialAreaRadius = ghConfig.getDouble("graph.urban_density.residential_radius", residentialAreaRadius);
@@ -583,6 +689,9 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setPrimitiveSearchState(ghConfig.getBool(Routing.INIT_PRIMITIVE_SEARCH_STATE, routerConfig.isPrimitiveSearchState()));
+        routeCacheSize = ghConfig.getInt(Routing.INIT_CACHE_SIZE, routeCacheSize);
+        routeCacheTtlMillis = ghConfig.getLong(Routing.INIT_CACHE_TTL_MS, routeCacheTtlMillis);
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -798,6 +907,7 @@ public class GraphHopper {
                 .setDir(directory)
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                .withCompressedGeometry(compressGeometry)
                 .setSegmentSize(defaultSegmentSize)
                 .build();
         properties = new StorableProperties(directory);
@@ -816,6 +926,10 @@ public class GraphHopper {
             importOSM();
             postImportOSM();
             cleanUp();
+            if (sortGraph)
+                sortGraph();
+            if (encodingManager.needsTurnCostsSupport())
+                freezeTurnCosts();
 
             properties.put("profiles", getProfilesString());
             writeEncodingManagerToProperties();
@@ -1054,7 +1168,7 @@ public class GraphHopper {
             checkProfilesConsistency();
 
             postProcessing(false);
-            directory.loadMMap();
+            directory.loadMMap(preloadThreads);
             setFullyLoaded();
             return true;
         } finally {
@@ -1175,6 +1289,9 @@ public class GraphHopper {
                 baseGraph.flushAndCloseGeometryAndNameStorage();
         }
 
+        if (!precomputedWeightProfiles.isEmpty())
+            loadOrPreparePrecomputedWeights();
+
         if (lmPreparationHandler.isEnabled())
             loadOrPrepareLM(closeEarly);
 
@@ -1184,6 +1301,9 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (cchEnabled)
+            loadOrPrepareCCH();
     }
 
     protected void importPublicTransit() {
@@ -1230,15 +1350,18 @@ public class GraphHopper {
         if (locationIndex == null)
             throw new IllegalStateException("Location index not initialized");
 
-        return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
+        Router router = doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
                 trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+        if (routeCache != null)
+            router.setRouteCache(routeCache);
+        return router;
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, customizableCH, precomputedWeights
         );
     }
 
@@ -1246,6 +1369,7 @@ public class GraphHopper {
         LocationIndexTree tmpIndex = new LocationIndexTree(baseGraph, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
+        tmpIndex.setThreads(indexThreads);
         if (!tmpIndex.loadExisting()) {
             ensureWriteAccess();
             tmpIndex.prepareIndex();
@@ -1347,6 +1471,44 @@ public class GraphHopper {
         return chPreparationHandler.prepare(baseGraph, properties, configsToPrepare, closeEarly);
     }
 
+    protected void loadOrPreparePrecomputedWeights() {
+        WeightingFactory weightingFactory = createWeightingFactory();
+        precomputedWeights = new LinkedHashMap<>();
+        for (String profileName : precomputedWeightProfiles) {
+            Profile profile = profilesByName.get(profileName);
+            if (profile == null)
+                throw new IllegalArgumentException("Precomputed weights for profile '" + profileName + "' requested, but this profile does not exist. Available: " + profilesByName.keySet());
+            String version = properties.get("graph.profiles.weights." + profileName + ".version");
+            if (!version.isEmpty() && !version.equals("" + profile.getVersion()))
+                throw new IllegalArgumentException("Precomputed weights of " + profileName + " already exist in storage and don't match configuration");
+            PrecomputedWeights weights = new PrecomputedWeights(baseGraph.getBaseGraph(), profileName);
+            if (!weights.loadExisting()) {
+                ensureWriteAccess();
+                if (!baseGraph.isFrozen())
+                    baseGraph.freeze();
+                StopWatch sw = StopWatch.started();
+                weights.prepare(weightingFactory.createWeighting(profile, new PMap(), true));
+                weights.flush();
+                properties.put("graph.profiles.weights." + profileName + ".version", profile.getVersion());
+                logger.info("Precomputed edge weights for profile '" + profileName + "' in " + sw.stop().getSeconds() + "s, " + getMemInfo());
+            }
+            precomputedWeights.put(profileName, weights);
+        }
+    }
+
+    protected void loadOrPrepareCCH() {
+        customizableCH = new CustomizableCH(baseGraph.getBaseGraph());
+        if (!customizableCH.loadExisting()) {
+            ensureWriteAccess();
+            if (!baseGraph.isFrozen())
+                baseGraph.freeze();
+            customizableCH.prepare();
+            customizableCH.flush();
+        }
+        customizableCH.setCustomizationThreads(cchCustomizationThreads).setCacheSize(cchCacheSize)
+                .setMaxConcurrentCustomizations(cchMaxConcurrentCustomizations);
+    }
+
     /**
      * For landmarks it is required to always call this method: either it creates the landmark data or it loads it.
      */
@@ -1399,6 +1561,27 @@ public class GraphHopper {
         logger.info("nodes: " + Helper.nf(baseGraph.getNodes()) + ", edges: " + Helper.nf(baseGraph.getEdges()));
     }
 
+    /**
+     * Renumbers the nodes and edges of the freshly imported graph for better memory locality. This must happen before
+     * the location index and the CH/LM preparations are created.
+     */
+    protected void sortGraph() {
+        StopWatch sw = new StopWatch().start();
+        baseGraph.sortGraph();
+        logger.info("sorted graph along a Hilbert curve in " + sw.stop().getSeconds() + "s, " + getMemInfo());
+    }
+
+    /**
+     * Turn cost entries are added in arbitrary order during the import. Here we store them sorted by via node, which
+     * speeds up the turn cost lookups of edge-based routing and CH preparation, see {@link TurnCostStorage#freeze()}.
+     */
+    protected void freezeTurnCosts() {
+        StopWatch sw = new StopWatch().start();
+        baseGraph.getTurnCostStorage().freeze();
+        logger.info("sorted " + Helper.nf(baseGraph.getTurnCostStorage().getTurnCostsCount()) + " turn cost entries in "
+                + sw.stop().getSeconds() + "s");
+    }
+
     private List<PrepareJob> buildSubnetworkRemovalJobs() {
         List<PrepareJob> jobs = new ArrayList<>();
         for (Profile profile : profilesByName.values()) {
@@ -1430,6 +1613,11 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        if (customizableCH != null)
+            customizableCH.close();
+        precomputedWeights.values().forEach(PrecomputedWeights::close);
+        if (routeCache != null)
+            routeCache.invalidate();
 
         if (locationIndex != null)
             locationIndex.close();
@@ -1464,6 +1652,8 @@ public class GraphHopper {
     }
 
     private void setFullyLoaded() {
+        if (routeCacheSize > 0)
+            routeCache = new RouteCache(routeCacheSize, routeCacheTtlMillis);
         fullyLoaded = true;
     }
 
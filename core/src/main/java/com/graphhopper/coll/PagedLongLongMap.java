@@ -0,0 +1,169 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.util.Arrays;
+
+/**
+ * A LongLongMap for dense key spaces like the OSM node ids. The key space is split into pages of a fixed number of
+ * entries and a page is only allocated (in a DataAccess, e.g. memory mapped) when a key of its range is put. Once a
+ * page exists get and put are plain array accesses, i.e. there is no search like in {@link GHLongLongBTree}.
+ * Negative keys and keys of 2^40 or more are rare (e.g. artificial OSM ids) and stored in a small GHLongLongBTree.
+ * <p>
+ * Every value takes 5 bytes. Read thread-safe.
+ */
+public class PagedLongLongMap implements LongLongMap {
+    private static final int BYTES_PER_VALUE = 5;
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_ENTRIES = 1 << PAGE_BITS;
+    private static final long PAGE_BYTES = (long) PAGE_ENTRIES * BYTES_PER_VALUE;
+    private static final long MAX_KEY = 1L << 40;
+    // the stored value is value - emptyValue, which makes sure the zeros of a new page mean 'empty'
+    private static final long MAX_STORED = (1L << (BYTES_PER_VALUE * 8 - 1)) - 1;
+
+    private final Directory dir;
+    private final String name;
+    private final DAType type;
+    private final long emptyValue;
+    private final GHLongLongBTree outOfRange;
+    private DataAccess da;
+    // the physical page + 1 for every logical page, 0 means that the page was not yet allocated
+    private int[] pages;
+    private int pageCount;
+    private long size;
+
+    /**
+     * @param dir  the directory the pages are allocated in. The DataAccess is removed in {@link #clear()}.
+     * @param type the type of the DataAccess, e.g. {@link DAType#MMAP} to keep the pages out of the heap
+     */
+    public PagedLongLongMap(Directory dir, String name, DAType type, long emptyValue) {
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.emptyValue = emptyValue;
+        this.outOfRange = new GHLongLongBTree(200, 8, emptyValue);
+        clear();
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+        long stored = value - emptyValue;
+        if (stored > MAX_STORED || stored < -MAX_STORED - 1)
+            throw new IllegalArgumentException("Value " + value + " exceeded the range of " + BYTES_PER_VALUE
+                    + " bytes, empty value: " + emptyValue);
+        if (key < 0 || key >= MAX_KEY) {
+            long old = outOfRange.put(key, value);
+            if (old == emptyValue)
+                size++;
+            return old;
+        }
+
+        long pointer = getPointer(key, true);
+        long old = read(pointer);
+        da.setInt(pointer, (int) stored);
+        da.setByte(pointer + 4, (byte) (stored >> 32));
+        if (old == 0)
+            size++;
+        return old + emptyValue;
+    }
+
+    @Override
+    public long get(long key) {
+        if (key < 0 || key >= MAX_KEY)
+            return outOfRange.get(key);
+        long pointer = getPointer(key, false);
+        return pointer < 0 ? emptyValue : read(pointer) + emptyValue;
+    }
+
+    private long read(long pointer) {
+        // the byte is sign-extended, which restores negative values
+        return ((long) da.getByte(pointer + 4) << 32) | (da.getInt(pointer) & 0xFFFF_FFFFL);
+    }
+
+    private long getPointer(long key, boolean allocate) {
+        int logicalPage = (int) (key >>> PAGE_BITS);
+        int page = logicalPage < pages.length ? pages[logicalPage] - 1 : -1;
+        if (page < 0) {
+            if (!allocate)
+                return -1;
+            page = allocatePage(logicalPage);
+        }
+        return page * PAGE_BYTES + (key & (PAGE_ENTRIES - 1)) * BYTES_PER_VALUE;
+    }
+
+    private int allocatePage(int logicalPage) {
+        if (logicalPage >= pages.length)
+            pages = Arrays.copyOf(pages, Math.max(logicalPage + 1, (int) Math.min(1L << 24, pages.length * 3L / 2)));
+        if (da == null)
+            da = dir.create(name, type).create(PAGE_BYTES);
+        int page = pageCount++;
+        da.ensureCapacity((page + 1) * PAGE_BYTES);
+        pages[logicalPage] = page + 1;
+        return page;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getMaxValue() {
+        return MAX_STORED + emptyValue;
+    }
+
+    @Override
+    public void optimize() {
+        outOfRange.optimize();
+    }
+
+    /**
+     * @return memory usage in MB, including the memory mapped pages
+     */
+    @Override
+    public int getMemoryUsage() {
+        long bytes = (da == null ? 0 : da.getCapacity()) + 4L * pages.length;
+        return Math.round(bytes / Helper.MB) + outOfRange.getMemoryUsage();
+    }
+
+    /**
+     * Removes all entries and releases the pages.
+     */
+    @Override
+    public void clear() {
+        if (da != null)
+            dir.remove(da.getName());
+        da = null;
+        pages = new int[1024];
+        pageCount = 0;
+        size = 0;
+        outOfRange.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "pages: " + pageCount + ", size: " + Helper.nf(size) + ", out of range: " + Helper.nf(outOfRange.getSize());
+    }
+}
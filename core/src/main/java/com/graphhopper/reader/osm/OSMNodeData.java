@@ -22,8 +22,10 @@ import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
 import com.graphhopper.coll.GHLongLongBTree;
 import com.graphhopper.coll.LongLongMap;
+import com.graphhopper.coll.PagedLongLongMap;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
@@ -80,10 +82,14 @@ class OSMNodeData {
     private long nextArtificialOSMNodeId = -Long.MAX_VALUE;
 
     public OSMNodeData(PointAccess nodeAccess, Directory directory) {
-        // We use a b-tree that can store as many entries as there are longs. A tree is also more
-        // memory efficient, because there is no waste for empty entries, and it also avoids
-        // allocating big arrays when growing the size.
-        idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        this(nodeAccess, directory, "btree");
+    }
+
+    /**
+     * @param nodeIdMap "btree" or "paged". See {@link #createIdMap}
+     */
+    public OSMNodeData(PointAccess nodeAccess, Directory directory, String nodeIdMap) {
+        idsByOsmNodeIds = createIdMap(nodeIdMap, directory);
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
@@ -92,6 +98,23 @@ class OSMNodeData {
         nodeKVStorage = new KVStorage(directory, false).create(100);
     }
 
+    private static LongLongMap createIdMap(String nodeIdMap, Directory directory) {
+        switch (nodeIdMap) {
+            case "btree":
+                // We use a b-tree that can store as many entries as there are longs. A tree is also more
+                // memory efficient, because there is no waste for empty entries, and it also avoids
+                // allocating big arrays when growing the size.
+                return new GHLongLongBTree(200, 5, EMPTY_NODE);
+            case "paged":
+                // For (nearly) planet-sized files the OSM ids are dense enough that an array indexed by the OSM
+                // id is smaller than the tree. The pages are memory mapped, so they do not need any heap and the
+                // lookups in pass2 are O(1).
+                return new PagedLongLongMap(directory, "tmp_node_ids", DAType.MMAP, EMPTY_NODE);
+            default:
+                throw new IllegalArgumentException("Unknown node id map: " + nodeIdMap + ", use btree or paged");
+        }
+    }
+
     public boolean is3D() {
         return towerNodes.is3D();
     }
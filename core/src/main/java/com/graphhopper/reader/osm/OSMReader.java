@@ -56,6 +56,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.LongToIntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -79,6 +83,7 @@ public class OSMReader {
     private static final Logger LOGGER = LoggerFactory.getLogger(OSMReader.class);
 
     private static final Pattern WAY_NAME_PATTERN = Pattern.compile("; *");
+    private static final int TAG_PARSING_BATCH_SIZE = 50_000;
 
     private final OSMReaderConfig config;
     private final BaseGraph baseGraph;
@@ -102,6 +107,11 @@ public class OSMReader {
     private WayToEdgesMap restrictedWaysToEdgesMap = new WayToEdgesMap();
     private List<ReaderRelation> restrictionRelations = new ArrayList<>();
 
+    // only used if the way tags are parsed in parallel, see OSMReaderConfig.setTagParserThreads
+    private ExecutorService tagParsingExecutor;
+    private List<DeferredEdge> deferredEdges = new ArrayList<>();
+    private List<Future<?>> pendingTagParsing = emptyList();
+
     public OSMReader(BaseGraph baseGraph, OSMParsers osmParsers, OSMReaderConfig config) {
         this.baseGraph = baseGraph;
         this.edgeIntAccess = baseGraph.getEdgeAccess();
@@ -174,8 +184,22 @@ public class OSMReader {
                 .setRelationProcessor(this::processRelation)
                 .setEdgeHandler(this::addEdge)
                 .setWorkerThreads(config.getWorkerThreads())
+                .setNodeIdMap(config.getNodeIdMap())
+                .setPass1Cache(config.getPass1CacheDir().isEmpty() ? null : new File(config.getPass1CacheDir()), getPass1CacheKey())
                 .build();
-        waySegmentParser.readOSM(osmFile);
+        if (config.getTagParserThreads() > 1)
+            tagParsingExecutor = Executors.newFixedThreadPool(config.getTagParserThreads());
+        try {
+            waySegmentParser.readOSM(osmFile);
+            if (tagParsingExecutor != null) {
+                parseDeferredWayTags();
+                waitForTagParsing();
+            }
+        } finally {
+            if (tagParsingExecutor != null)
+                tagParsingExecutor.shutdownNow();
+            tagParsingExecutor = null;
+        }
         osmDataDate = waySegmentParser.getTimestamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
@@ -186,6 +210,14 @@ public class OSMReader {
                 osmFile.getAbsolutePath(), nf(baseGraph.getNodes()), nf(baseGraph.getEdges()), nf(zeroCounter));
     }
 
+    /**
+     * The result of the first pass depends on the accepted ways, see {@link #acceptWay}. Subclasses that accept other
+     * ways have to return a different key.
+     */
+    protected String getPass1CacheKey() {
+        return getClass().getName() + "|" + osmParsers.getIgnoredHighways().stream().sorted().collect(Collectors.joining(","));
+    }
+
     /**
      * @return the timestamp given in the OSM file header or null if not found
      */
@@ -372,10 +404,13 @@ public class OSMReader {
             distance = maxDistance;
         }
 
-        setArtificialWayTags(pointList, way, distance, nodeTags);
-        IntsRef relationFlags = getRelFlagsMap(way.getId());
         EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
-        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        if (tagParsingExecutor == null) {
+            setArtificialWayTags(pointList, way, distance, nodeTags);
+            osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, getRelFlagsMap(way.getId()));
+        } else {
+            deferWayTags(edge.getEdge(), pointList, way, distance, nodeTags);
+        }
         Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
         if (!map.isEmpty())
             edge.setKeyValues(map);
@@ -393,6 +428,71 @@ public class OSMReader {
         restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
     }
 
+    /**
+     * Collects the edge for the tag parsing in parallel. The artificial way tags are edge specific, so every edge
+     * gets its own copy of the way. The batches are parsed while the edges of the next batch are created.
+     */
+    private void deferWayTags(int edgeId, PointList pointList, ReaderWay way, double distance, List<Map<String, Object>> nodeTags) {
+        ReaderWay edgeWay = new ReaderWay(way.getId());
+        edgeWay.setTags(way.getTags());
+        edgeWay.getNodes().addAll(way.getNodes());
+        deferredEdges.add(new DeferredEdge(edgeId, pointList, edgeWay, distance, nodeTags, IntsRef.deepCopyOf(getRelFlagsMap(way.getId()))));
+        if (deferredEdges.size() >= TAG_PARSING_BATCH_SIZE)
+            parseDeferredWayTags();
+    }
+
+    private void parseDeferredWayTags() {
+        // at most one batch is parsed at any time
+        waitForTagParsing();
+        List<DeferredEdge> batch = deferredEdges;
+        deferredEdges = new ArrayList<>();
+        int threads = config.getTagParserThreads();
+        pendingTagParsing = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            // consecutive edges for every thread, which avoids writing the same cache lines from different threads
+            int from = (int) ((long) batch.size() * t / threads);
+            int to = (int) ((long) batch.size() * (t + 1) / threads);
+            pendingTagParsing.add(tagParsingExecutor.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    DeferredEdge e = batch.get(i);
+                    setArtificialWayTags(e.pointList, e.way, e.distance, e.nodeTags);
+                    osmParsers.handleWayTags(e.edgeId, edgeIntAccess, e.way, e.relationFlags);
+                }
+            }));
+        }
+    }
+
+    private void waitForTagParsing() {
+        try {
+            for (Future<?> future : pendingTagParsing)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not parse the way tags", e.getCause());
+        }
+        pendingTagParsing = emptyList();
+    }
+
+    private static class DeferredEdge {
+        final int edgeId;
+        final PointList pointList;
+        final ReaderWay way;
+        final double distance;
+        final List<Map<String, Object>> nodeTags;
+        final IntsRef relationFlags;
+
+        DeferredEdge(int edgeId, PointList pointList, ReaderWay way, double distance, List<Map<String, Object>> nodeTags, IntsRef relationFlags) {
+            this.edgeId = edgeId;
+            this.pointList = pointList;
+            this.way = way;
+            this.distance = distance;
+            this.nodeTags = nodeTags;
+            this.relationFlags = relationFlags;
+        }
+    }
+
     private void checkCoordinates(int nodeIndex, GHPoint point) {
         final double tolerance = 1.e-6;
         if (Math.abs(nodeAccess.getLat(nodeIndex) - point.getLat()) > tolerance || Math.abs(nodeAccess.getLon(nodeIndex) - point.getLon()) > tolerance)
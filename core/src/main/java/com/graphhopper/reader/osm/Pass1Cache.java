@@ -0,0 +1,231 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores what the first pass of {@link WaySegmentParser} reads from an OSM file: the node ids of the accepted ways,
+ * all relations and the timestamp of the file. A later import of the same file can replay this instead of reading
+ * the OSM file again. The cache file name contains a checksum of the OSM file and a key for everything else pass1
+ * depends on (e.g. the way filter), so a changed file or filter never uses an old cache.
+ * <p>
+ * The node ids are stored delta encoded as variable length longs, which makes the cache a small fraction of the
+ * size of the OSM file.
+ */
+class Pass1Cache {
+    private static final int MAGIC = 0x47485031;
+    private static final int VERSION = 1;
+    private static final byte END = 0, WAY = 1, RELATION = 2, TIMESTAMP = 3;
+
+    interface Handler {
+        void handleWayNodes(LongArrayList nodes);
+
+        void handleRelation(ReaderRelation relation);
+
+        void handleTimestamp(Date timestamp);
+    }
+
+    /**
+     * @return the cache file for the given OSM file, which might not exist yet
+     */
+    static File getFile(File cacheDir, File osmFile, String key) {
+        return new File(cacheDir, "pass1_" + Long.toHexString(checksum(osmFile)) + "_" + osmFile.length()
+                + "_" + Integer.toHexString(key.hashCode()) + ".bin");
+    }
+
+    static long checksum(File file) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not calculate the checksum of " + file, ex);
+        }
+        return crc.getValue();
+    }
+
+    static void read(File cacheFile, Handler handler) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IllegalStateException("Not a pass1 cache file or unsupported version: " + cacheFile);
+            LongArrayList nodes = new LongArrayList();
+            while (true) {
+                byte type = in.readByte();
+                if (type == END)
+                    return;
+                if (type == WAY) {
+                    nodes.clear();
+                    int count = (int) readVLong(in);
+                    long prev = 0;
+                    for (int i = 0; i < count; i++) {
+                        prev += zigZagDecode(readVLong(in));
+                        nodes.add(prev);
+                    }
+                    handler.handleWayNodes(nodes);
+                } else if (type == RELATION) {
+                    ReaderRelation relation = new ReaderRelation(in.readLong());
+                    int tags = (int) readVLong(in);
+                    for (int i = 0; i < tags; i++)
+                        relation.setTag(in.readUTF(), in.readUTF());
+                    int members = (int) readVLong(in);
+                    for (int i = 0; i < members; i++) {
+                        ReaderElement.Type memberType = ReaderElement.Type.values()[in.readByte()];
+                        relation.add(new ReaderRelation.Member(memberType, in.readLong(), in.readUTF()));
+                    }
+                    handler.handleRelation(relation);
+                } else if (type == TIMESTAMP) {
+                    handler.handleTimestamp(new Date(in.readLong()));
+                } else {
+                    throw new IllegalStateException("Unknown record type " + type + " in " + cacheFile);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read pass1 cache " + cacheFile, ex);
+        }
+    }
+
+    /**
+     * Writes to a temporary file which is only renamed to the cache file in {@link #finish()}, so an aborted import
+     * never leaves an incomplete cache behind.
+     */
+    static class Writer implements Closeable {
+        private final File cacheFile;
+        private final File tmpFile;
+        private final DataOutputStream out;
+
+        Writer(File cacheFile) {
+            this.cacheFile = cacheFile;
+            this.tmpFile = new File(cacheFile.getPath() + ".tmp");
+            try {
+                cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not create pass1 cache " + tmpFile, ex);
+            }
+        }
+
+        void writeWayNodes(LongArrayList nodes) {
+            try {
+                out.writeByte(WAY);
+                writeVLong(out, nodes.size());
+                long prev = 0;
+                for (int i = 0; i < nodes.size(); i++) {
+                    long node = nodes.get(i);
+                    writeVLong(out, zigZagEncode(node - prev));
+                    prev = node;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        void writeRelation(ReaderRelation relation) {
+            try {
+                out.writeByte(RELATION);
+                out.writeLong(relation.getId());
+                writeVLong(out, relation.getTags().size());
+                for (Map.Entry<String, Object> tag : relation.getTags().entrySet()) {
+                    out.writeUTF(tag.getKey());
+                    out.writeUTF(String.valueOf(tag.getValue()));
+                }
+                writeVLong(out, relation.getMembers().size());
+                for (ReaderRelation.Member member : relation.getMembers()) {
+                    out.writeByte(member.getType().ordinal());
+                    out.writeLong(member.getRef());
+                    // the XML reader returns null for members without role, while the PBF reader uses an empty string
+                    out.writeUTF(member.getRole() == null ? "" : member.getRole());
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        void writeTimestamp(Date timestamp) {
+            try {
+                out.writeByte(TIMESTAMP);
+                out.writeLong(timestamp.getTime());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        void finish() {
+            try {
+                out.writeByte(END);
+                out.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            if (!tmpFile.renameTo(cacheFile))
+                throw new IllegalStateException("Could not rename " + tmpFile + " to " + cacheFile);
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                // ignore, the file is deleted anyway
+            }
+            tmpFile.delete();
+        }
+    }
+
+    static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+}
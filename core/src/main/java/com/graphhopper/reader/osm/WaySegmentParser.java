@@ -18,6 +18,7 @@
 
 package com.graphhopper.reader.osm;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.LongCursor;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
@@ -74,12 +75,13 @@ public class WaySegmentParser {
     private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
             System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
     private int workerThreads = 2;
+    private File pass1CacheDir;
+    private String pass1CacheKey = "";
 
-    private final OSMNodeData nodeData;
+    private OSMNodeData nodeData;
     private Date timestamp;
 
-    private WaySegmentParser(OSMNodeData nodeData) {
-        this.nodeData = nodeData;
+    private WaySegmentParser() {
     }
 
     /**
@@ -92,7 +94,10 @@ public class WaySegmentParser {
         LOGGER.info("Start reading OSM file: '" + osmFile + "'");
         LOGGER.info("pass1 - start");
         StopWatch sw1 = StopWatch.started();
-        readOSM(osmFile, new Pass1Handler(), new SkipOptions(true, false, false));
+        if (pass1CacheDir == null)
+            readOSM(osmFile, new Pass1Handler(), new SkipOptions(true, false, false));
+        else
+            runPass1WithCache(osmFile);
         LOGGER.info("pass1 - finished, took: {}", sw1.stop().getTimeString());
 
         long nodes = nodeData.getNodeCount();
@@ -112,6 +117,23 @@ public class WaySegmentParser {
                 " total: " + (int) (sw1.getSeconds() + sw2.getSeconds()) + "s");
     }
 
+    private void runPass1WithCache(File osmFile) {
+        File cacheFile = Pass1Cache.getFile(pass1CacheDir, osmFile, pass1CacheKey);
+        Pass1Handler handler = new Pass1Handler();
+        if (cacheFile.exists()) {
+            LOGGER.info("pass1 - using the cached result of a previous import: " + cacheFile);
+            Pass1Cache.read(cacheFile, handler);
+            handler.onFinish();
+            return;
+        }
+        try (Pass1Cache.Writer writer = new Pass1Cache.Writer(cacheFile)) {
+            handler.cacheWriter = writer;
+            readOSM(osmFile, handler, new SkipOptions(true, false, false));
+            writer.finish();
+            LOGGER.info("pass1 - stored the result in " + cacheFile);
+        }
+    }
+
     /**
      * @return the timestamp read from the OSM file, or null if nothing was read yet
      */
@@ -119,7 +141,8 @@ public class WaySegmentParser {
         return timestamp;
     }
 
-    private class Pass1Handler implements ReaderElementHandler {
+    private class Pass1Handler implements ReaderElementHandler, Pass1Cache.Handler {
+        private Pass1Cache.Writer cacheWriter;
         private boolean handledWays;
         private boolean handledRelations;
         private long wayCounter = 0;
@@ -141,10 +164,16 @@ public class WaySegmentParser {
 
             if (!wayFilter.test(way))
                 return;
-            acceptedWays++;
+            if (cacheWriter != null)
+                cacheWriter.writeWayNodes(way.getNodes());
+            handleWayNodes(way.getNodes());
+        }
 
-            for (LongCursor node : way.getNodes()) {
-                final boolean isEnd = node.index == 0 || node.index == way.getNodes().size() - 1;
+        @Override
+        public void handleWayNodes(LongArrayList nodes) {
+            acceptedWays++;
+            for (LongCursor node : nodes) {
+                final boolean isEnd = node.index == 0 || node.index == nodes.size() - 1;
                 final long osmId = node.value;
                 nodeData.setOrUpdateNodeType(osmId,
                         isEnd ? END_NODE : INTERMEDIATE_NODE,
@@ -163,12 +192,21 @@ public class WaySegmentParser {
             if (++relationsCounter % 1_000_000 == 0)
                 LOGGER.info("pass1 - processed relations: " + nf(relationsCounter) + ", " + Helper.getMemInfo());
 
+            if (cacheWriter != null)
+                cacheWriter.writeRelation(relation);
             relationPreprocessor.accept(relation);
         }
 
         @Override
         public void handleFileHeader(OSMFileHeader fileHeader) throws ParseException {
-            timestamp = Helper.createFormatter().parse(fileHeader.getTag("timestamp"));
+            handleTimestamp(Helper.createFormatter().parse(fileHeader.getTag("timestamp")));
+            if (cacheWriter != null)
+                cacheWriter.writeTimestamp(timestamp);
+        }
+
+        @Override
+        public void handleTimestamp(Date timestamp) {
+            WaySegmentParser.this.timestamp = timestamp;
         }
 
         @Override
@@ -410,13 +448,18 @@ public class WaySegmentParser {
 
     public static class Builder {
         private final WaySegmentParser waySegmentParser;
+        private final PointAccess pointAccess;
+        private final Directory directory;
+        private String nodeIdMap = "btree";
 
         /**
          * @param pointAccess used to store tower node coordinates while parsing the ways
          * @param directory   the directory to be used to store temporary data
          */
         public Builder(PointAccess pointAccess, Directory directory) {
-            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory));
+            waySegmentParser = new WaySegmentParser();
+            this.pointAccess = pointAccess;
+            this.directory = directory;
         }
 
         /**
@@ -483,7 +526,29 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param nodeIdMap the map used to store the internal id of every OSM node: "btree" (default) or "paged",
+         *                  which stores the ids in memory mapped pages and is better suited for very large files
+         */
+        public Builder setNodeIdMap(String nodeIdMap) {
+            this.nodeIdMap = nodeIdMap;
+            return this;
+        }
+
+        /**
+         * @param pass1CacheDir the directory where the result of the first pass is stored and reused from for the
+         *                      same OSM file, or null to always read the OSM file twice
+         * @param pass1CacheKey must change whenever the way filter or the relation preprocessor accept different
+         *                      OSM elements
+         */
+        public Builder setPass1Cache(File pass1CacheDir, String pass1CacheKey) {
+            waySegmentParser.pass1CacheDir = pass1CacheDir;
+            waySegmentParser.pass1CacheKey = pass1CacheKey;
+            return this;
+        }
+
         public WaySegmentParser build() {
+            waySegmentParser.nodeData = new OSMNodeData(pointAccess, directory, nodeIdMap);
             return waySegmentParser;
         }
     }
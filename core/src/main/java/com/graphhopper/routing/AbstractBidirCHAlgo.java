@@ -275,7 +275,7 @@ public abstract class AbstractBidirCHAlgo extends AbstractBidirAlgo implements E
         return getName() + "|" + graph.getWeighting();
     }
 
-    private static class CHLevelEdgeFilter implements CHEdgeFilter {
+    static class CHLevelEdgeFilter implements CHEdgeFilter {
         private final RoutingCHGraph graph;
         private final int maxNodes;
 
@@ -0,0 +1,398 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.ch.CHEntry;
+import com.graphhopper.routing.ch.EdgeBasedCHBidirPathExtractor;
+import com.graphhopper.routing.ch.NodeBasedCHBidirPathExtractor;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.*;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+
+/**
+ * Calculates the weights (and optionally distances and times) between all pairs of a set of source and a set of
+ * target nodes using the bucket-based many-to-many algorithm on a contracted graph: there is one upward backward
+ * search for every target whose settled entries are stored in 'buckets' at their nodes, and one upward forward search
+ * for every source that scans the buckets of all nodes it settles. So a matrix of size m x n only costs m+n CH
+ * searches instead of m*n point-to-point queries.
+ * <p>
+ * The upward searches are not stopped early, because the entries of one search are combined with the entries of all
+ * searches from the other side. This works for node- and edge-based {@link RoutingCHGraph}s. For edge-based graphs the
+ * turn costs at the meeting node are added when the forward and backward entries are combined.
+ *
+ * @see DijkstraBidirectionCH
+ * @see DijkstraBidirectionEdgeCHNoSOD
+ */
+public class ManyToManyCH {
+    // the number of target sets whose buckets are kept, e.g. the candidates of the next few time steps of a map matching
+    private static final int MAX_CACHED_TARGET_SETS = 8;
+    private final RoutingCHGraph graph;
+    private final TraversalMode traversalMode;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final CHEdgeFilter levelEdgeFilter;
+    private boolean calcPaths = false;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private int visitedNodes;
+    // the buckets of the recently used targets of calcPaths, so they can be reused for other sources
+    private final Map<TargetSet, IntObjectMap<List<BucketEntry>>> bucketsByTargets = new LinkedHashMap<TargetSet, IntObjectMap<List<BucketEntry>>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TargetSet, IntObjectMap<List<BucketEntry>>> eldest) {
+            return size() > MAX_CACHED_TARGET_SETS;
+        }
+    };
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        this.graph = graph;
+        this.traversalMode = graph.isEdgeBased() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        levelEdgeFilter = new AbstractBidirCHAlgo.CHLevelEdgeFilter(graph);
+    }
+
+    /**
+     * If enabled the shortest path of every pair is unpacked to calculate its distance and time. Otherwise only the
+     * weights are calculated, which is considerably faster.
+     */
+    public ManyToManyCH setCalcPaths(boolean calcPaths) {
+        this.calcPaths = calcPaths;
+        return this;
+    }
+
+    /**
+     * Limits the number of nodes every single upward search may settle. If a forward search exceeds it no target can be
+     * reached from its source, if a backward search exceeds it its target cannot be reached from any source.
+     */
+    public ManyToManyCH setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    /**
+     * @param sources the source nodes, negative values mark invalid sources for which all entries stay infinite
+     * @param targets the target nodes, negative values mark invalid targets for which all entries stay infinite
+     */
+    public Result calcMatrix(int[] sources, int[] targets) {
+        visitedNodes = 0;
+        Result result = new Result(sources.length, targets.length, calcPaths);
+        IntObjectMap<List<BucketEntry>> buckets = createBuckets(targets, null);
+
+        double[] bestWeights = new double[targets.length];
+        SPTEntry[] bestFwdEntries = new SPTEntry[targets.length];
+        SPTEntry[] bestBwdEntries = new SPTEntry[targets.length];
+        for (int s = 0; s < sources.length; s++) {
+            if (sources[s] < 0)
+                continue;
+            Arrays.fill(bestWeights, Double.POSITIVE_INFINITY);
+            Arrays.fill(bestFwdEntries, null);
+            Arrays.fill(bestBwdEntries, null);
+            List<SPTEntry> fwdEntries = searchUpwards(sources[s], false, ANY_EDGE);
+            if (fwdEntries == null)
+                continue;
+            for (SPTEntry fwdEntry : fwdEntries) {
+                List<BucketEntry> bucket = buckets.get(fwdEntry.adjNode);
+                if (bucket == null)
+                    continue;
+                for (BucketEntry bucketEntry : bucket) {
+                    double weight = fwdEntry.getWeightOfVisitedPath() + bucketEntry.entry.getWeightOfVisitedPath();
+                    if (traversalMode.isEdgeBased())
+                        weight += graph.getTurnWeight(getIncEdge(fwdEntry), fwdEntry.adjNode, getIncEdge(bucketEntry.entry));
+                    if (weight < bestWeights[bucketEntry.target]) {
+                        bestWeights[bucketEntry.target] = weight;
+                        bestFwdEntries[bucketEntry.target] = fwdEntry;
+                        bestBwdEntries[bucketEntry.target] = bucketEntry.entry;
+                    }
+                }
+            }
+            for (int t = 0; t < targets.length; t++) {
+                if (Double.isInfinite(bestWeights[t]))
+                    continue;
+                result.weights[s][t] = bestWeights[t];
+                if (calcPaths) {
+                    Path path = createPathExtractor().extract(bestFwdEntries[t], bestBwdEntries[t], bestWeights[t]);
+                    result.distances[s][t] = path.getDistance();
+                    result.times[s][t] = path.getTime();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the shortest paths from one source to several targets, optionally restricted to start and end with
+     * certain edges like {@link RoutingAlgorithm#calcPath(int, int, int, int)}. The upward searches of the targets
+     * are kept for the last few different sets of targets, so calculating the paths from several sources to the same
+     * targets costs only one additional upward search per source, even if the calls for different targets alternate.
+     *
+     * @param sourceOutEdge the edge the paths have to start with, or {@link EdgeIterator#ANY_EDGE}
+     * @param targetInEdges the edges the paths have to end with, {@link EdgeIterator#ANY_EDGE} for unrestricted targets
+     * @return the paths to the targets in the order of the targets, paths to unreachable targets are not found
+     */
+    public List<Path> calcPaths(int source, int sourceOutEdge, int[] targets, int[] targetInEdges) {
+        if (targets.length != targetInEdges.length)
+            throw new IllegalArgumentException("There must be one edge restriction per target, but got: " + targets.length + " vs. " + targetInEdges.length);
+        if (!traversalMode.isEdgeBased() && (sourceOutEdge != ANY_EDGE || Arrays.stream(targetInEdges).anyMatch(e -> e != ANY_EDGE)))
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        visitedNodes = 0;
+        TargetSet targetSet = new TargetSet(targets, targetInEdges);
+        IntObjectMap<List<BucketEntry>> buckets = bucketsByTargets.get(targetSet);
+        if (buckets == null) {
+            buckets = createBuckets(targets, targetInEdges);
+            bucketsByTargets.put(new TargetSet(targets.clone(), targetInEdges.clone()), buckets);
+        }
+
+        double[] bestWeights = new double[targets.length];
+        Arrays.fill(bestWeights, Double.POSITIVE_INFINITY);
+        SPTEntry[] bestFwdEntries = new SPTEntry[targets.length];
+        SPTEntry[] bestBwdEntries = new SPTEntry[targets.length];
+        List<SPTEntry> fwdEntries = searchUpwards(source, false, sourceOutEdge);
+        for (SPTEntry fwdEntry : fwdEntries == null ? Collections.<SPTEntry>emptyList() : fwdEntries) {
+            List<BucketEntry> bucket = buckets.get(fwdEntry.adjNode);
+            if (bucket == null)
+                continue;
+            for (BucketEntry bucketEntry : bucket) {
+                // if one of the searches did not leave its start node the edge of the other search must match the restriction
+                boolean fwdStart = fwdEntry.parent == null;
+                boolean bwdStart = bucketEntry.entry.parent == null;
+                int targetInEdge = targetInEdges[bucketEntry.target];
+                if (fwdStart && sourceOutEdge != ANY_EDGE && (bwdStart || getIncEdge(bucketEntry.entry) != sourceOutEdge))
+                    continue;
+                if (bwdStart && targetInEdge != ANY_EDGE && (fwdStart || getIncEdge(fwdEntry) != targetInEdge))
+                    continue;
+                double weight = fwdEntry.getWeightOfVisitedPath() + bucketEntry.entry.getWeightOfVisitedPath();
+                if (traversalMode.isEdgeBased())
+                    weight += graph.getTurnWeight(getIncEdge(fwdEntry), fwdEntry.adjNode, getIncEdge(bucketEntry.entry));
+                if (weight < bestWeights[bucketEntry.target]) {
+                    bestWeights[bucketEntry.target] = weight;
+                    bestFwdEntries[bucketEntry.target] = fwdEntry;
+                    bestBwdEntries[bucketEntry.target] = bucketEntry.entry;
+                }
+            }
+        }
+        List<Path> paths = new ArrayList<>(targets.length);
+        for (int t = 0; t < targets.length; t++) {
+            if (Double.isInfinite(bestWeights[t]))
+                paths.add(new Path(graph.getBaseGraph()));
+            else
+                paths.add(createPathExtractor().extract(bestFwdEntries[t], bestBwdEntries[t], bestWeights[t]));
+        }
+        return paths;
+    }
+
+    /**
+     * @param targetInEdges the edges the paths to the targets have to end with, or null if there are no restrictions
+     */
+    private IntObjectMap<List<BucketEntry>> createBuckets(int[] targets, int[] targetInEdges) {
+        IntObjectMap<List<BucketEntry>> buckets = new GHIntObjectHashMap<>();
+        for (int t = 0; t < targets.length; t++) {
+            if (targets[t] < 0)
+                continue;
+            List<SPTEntry> entries = searchUpwards(targets[t], true, targetInEdges == null ? ANY_EDGE : targetInEdges[t]);
+            if (entries == null)
+                continue;
+            for (SPTEntry entry : entries) {
+                List<BucketEntry> bucket = buckets.get(entry.adjNode);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(4);
+                    buckets.put(entry.adjNode, bucket);
+                }
+                bucket.add(new BucketEntry(t, entry));
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Runs a full upward search from the given node and returns all settled entries, including the start entry, or
+     * null if the search settled more than maxVisitedNodes entries.
+     *
+     * @param restrictedEdge the original edge the search has to start with (for the backward search the edge the path
+     *                       has to end with), or {@link EdgeIterator#ANY_EDGE}
+     */
+    private List<SPTEntry> searchUpwards(int node, boolean reverse, int restrictedEdge) {
+        List<SPTEntry> settled = new ArrayList<>();
+        IntObjectMap<SPTEntry> bestWeightMap = new GHIntObjectHashMap<>();
+        PriorityQueue<SPTEntry> queue = new PriorityQueue<>();
+        SPTEntry start = traversalMode.isEdgeBased() ? new CHEntry(node, 0) : new SPTEntry(node, 0);
+        if (!traversalMode.isEdgeBased())
+            bestWeightMap.put(node, start);
+        queue.add(start);
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        while (!queue.isEmpty()) {
+            SPTEntry currEntry = queue.poll();
+            if (currEntry.isDeleted())
+                continue;
+            settled.add(currEntry);
+            visitedNodes++;
+            if (settled.size() > maxVisitedNodes)
+                return null;
+            // for edge-based CH the first step needs to consider all edges, see AbstractBidirectionEdgeCHNoSOD
+            CHEdgeFilter edgeFilter = traversalMode.isEdgeBased() && currEntry == start
+                    ? (restrictedEdge == ANY_EDGE ? CHEdgeFilter.ALL_EDGES : edgeState -> restrictedEdge == GHUtility.getEdgeFromEdgeKey(reverse ? edgeState.getOrigEdgeKeyLast() : edgeState.getOrigEdgeKeyFirst()))
+                    : levelEdgeFilter;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(currEntry.adjNode);
+            while (iter.next()) {
+                if (!edgeFilter.accept(iter))
+                    continue;
+                if (!traversalMode.isEdgeBased() && iter.getEdge() == currEntry.edge)
+                    continue;
+                double weight = calcWeight(iter, reverse, getIncEdge(currEntry)) + currEntry.getWeightOfVisitedPath();
+                if (Double.isInfinite(weight))
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, reverse);
+                SPTEntry entry = bestWeightMap.get(traversalId);
+                if (entry != null) {
+                    if (entry.getWeightOfVisitedPath() <= weight)
+                        continue;
+                    entry.setDeleted();
+                }
+                entry = createEntry(iter, weight, currEntry, reverse);
+                bestWeightMap.put(traversalId, entry);
+                queue.add(entry);
+            }
+        }
+        return settled;
+    }
+
+    private double calcWeight(RoutingCHEdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+        double edgeWeight = edgeState.getWeight(reverse);
+        if (!traversalMode.isEdgeBased())
+            return edgeWeight;
+        final int origEdgeId = GHUtility.getEdgeFromEdgeKey(reverse ? edgeState.getOrigEdgeKeyLast() : edgeState.getOrigEdgeKeyFirst());
+        double turnCosts = reverse
+                ? graph.getTurnWeight(origEdgeId, edgeState.getBaseNode(), prevOrNextEdgeId)
+                : graph.getTurnWeight(prevOrNextEdgeId, edgeState.getBaseNode(), origEdgeId);
+        return edgeWeight + turnCosts;
+    }
+
+    private SPTEntry createEntry(RoutingCHEdgeIteratorState edgeState, double weight, SPTEntry parent, boolean reverse) {
+        if (!traversalMode.isEdgeBased())
+            return new SPTEntry(edgeState.getEdge(), edgeState.getAdjNode(), weight, parent);
+        int incEdge = GHUtility.getEdgeFromEdgeKey(reverse ? edgeState.getOrigEdgeKeyFirst() : edgeState.getOrigEdgeKeyLast());
+        return new CHEntry(edgeState.getEdge(), incEdge, edgeState.getAdjNode(), weight, parent);
+    }
+
+    private int getIncEdge(SPTEntry entry) {
+        return traversalMode.isEdgeBased() ? ((CHEntry) entry).incEdge : entry.edge;
+    }
+
+    private BidirPathExtractor createPathExtractor() {
+        return traversalMode.isEdgeBased()
+                ? new EdgeBasedCHBidirPathExtractor(graph)
+                : new NodeBasedCHBidirPathExtractor(graph);
+    }
+
+    /**
+     * @return the number of entries settled by all forward and backward searches of the last matrix or paths
+     * calculation
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class TargetSet {
+        final int[] targets;
+        final int[] targetInEdges;
+
+        TargetSet(int[] targets, int[] targetInEdges) {
+            this.targets = targets;
+            this.targetInEdges = targetInEdges;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TargetSet other = (TargetSet) o;
+            return Arrays.equals(targets, other.targets) && Arrays.equals(targetInEdges, other.targetInEdges);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(targets) + Arrays.hashCode(targetInEdges);
+        }
+    }
+
+    private static class BucketEntry {
+        final int target;
+        final SPTEntry entry;
+
+        BucketEntry(int target, SPTEntry entry) {
+            this.target = target;
+            this.entry = entry;
+        }
+    }
+
+    public static class Result {
+        private final double[][] weights;
+        private final double[][] distances;
+        private final long[][] times;
+
+        Result(int sources, int targets, boolean withPaths) {
+            weights = new double[sources][targets];
+            for (double[] row : weights)
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+            distances = withPaths ? new double[sources][targets] : null;
+            times = withPaths ? new long[sources][targets] : null;
+            if (withPaths) {
+                for (double[] row : distances)
+                    Arrays.fill(row, Double.POSITIVE_INFINITY);
+                for (long[] row : times)
+                    Arrays.fill(row, Long.MAX_VALUE);
+            }
+        }
+
+        /**
+         * @return the weight from source to target, or infinity if the target cannot be reached from the source
+         */
+        public double getWeight(int source, int target) {
+            return weights[source][target];
+        }
+
+        /**
+         * @return the distance in meters from source to target, or infinity if the target cannot be reached
+         * @throws IllegalStateException if the matrix was calculated without paths
+         */
+        public double getDistance(int source, int target) {
+            if (distances == null)
+                throw new IllegalStateException("Distances are only calculated if calcPaths is enabled");
+            return distances[source][target];
+        }
+
+        /**
+         * @return the time in milliseconds from source to target, or Long.MAX_VALUE if the target cannot be reached
+         * @throws IllegalStateException if the matrix was calculated without paths
+         */
+        public long getTime(int source, int target) {
+            if (times == null)
+                throw new IllegalStateException("Times are only calculated if calcPaths is enabled");
+            return times[source][target];
+        }
+
+        public boolean isConnected(int source, int target) {
+            return !Double.isInfinite(weights[source][target]);
+        }
+    }
+}
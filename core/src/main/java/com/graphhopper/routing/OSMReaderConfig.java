@@ -33,6 +33,9 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private String nodeIdMap = "btree";
+    private int tagParserThreads = 1;
+    private String pass1CacheDir = "";
     private double defaultElevation = 0;
 
     public List<String> getIgnoredHighways() {
@@ -157,6 +160,49 @@ public class OSMReaderConfig {
         return this;
     }
 
+    public int getTagParserThreads() {
+        return tagParserThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the tag parsers for the edges during the second pass of the import. The
+     * edges are still created in the order of the OSM file. With more than one thread all tag parsers and
+     * OSMReader.setArtificialWayTags have to be thread-safe.
+     */
+    public OSMReaderConfig setTagParserThreads(int tagParserThreads) {
+        if (tagParserThreads < 1)
+            throw new IllegalArgumentException("tag parser threads must be at least 1, but was " + tagParserThreads);
+        this.tagParserThreads = tagParserThreads;
+        return this;
+    }
+
+    public String getPass1CacheDir() {
+        return pass1CacheDir;
+    }
+
+    /**
+     * Sets the directory where the result of the first pass over the OSM file is stored. A later import of the same
+     * OSM file with the same ignored highways reuses it and reads the OSM file only once. Empty to disable.
+     */
+    public OSMReaderConfig setPass1CacheDir(String pass1CacheDir) {
+        this.pass1CacheDir = pass1CacheDir;
+        return this;
+    }
+
+    public String getNodeIdMap() {
+        return nodeIdMap;
+    }
+
+    /**
+     * Sets the map that stores the internal id of every OSM node during the import: "btree" or "paged". The paged
+     * map is memory mapped and only allocated for the OSM id ranges that occur, which needs less heap for planet
+     * files and makes the lookups faster.
+     */
+    public OSMReaderConfig setNodeIdMap(String nodeIdMap) {
+        this.nodeIdMap = nodeIdMap;
+        return this;
+    }
+
     public double getDefaultElevation() {
         return defaultElevation;
     }
@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Parameters;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * The same search as {@link AStar} (or {@link Dijkstra} if no approximation is set), but the shortest path tree and the
+ * priority queue are kept in a {@link SearchState} that is recycled across requests, so the search itself does not
+ * create any objects.
+ */
+public class PrimitiveAStar extends AbstractRoutingAlgorithm implements EdgeToEdgeRoutingAlgorithm {
+    private WeightApproximator weightApprox;
+    private SearchState state;
+    private int currSlot = -1;
+    private int visitedNodes;
+    private int to = -1;
+    private int fromOutEdge;
+    private int toInEdge;
+
+    public PrimitiveAStar(Graph graph, Weighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+    }
+
+    /**
+     * @param approx defines how the weight to the target node is approximated, use null to run a Dijkstra search
+     */
+    public PrimitiveAStar setApproximation(WeightApproximator approx) {
+        weightApprox = approx;
+        return this;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPath(from, to, ANY_EDGE, ANY_EDGE);
+    }
+
+    @Override
+    public Path calcPath(int from, int to, int fromOutEdge, int toInEdge) {
+        if ((fromOutEdge != ANY_EDGE || toInEdge != ANY_EDGE) && !traversalMode.isEdgeBased()) {
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        }
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdge = toInEdge;
+        checkAlreadyRun();
+        setupFinishTime();
+        this.to = to;
+        if (fromOutEdge == NO_EDGE || toInEdge == NO_EDGE)
+            return createEmptyPath();
+        if (weightApprox != null)
+            weightApprox.setTo(to);
+        double weightToGoal = approximate(from);
+        if (Double.isInfinite(weightToGoal))
+            return createEmptyPath();
+        state = SearchState.acquire();
+        try {
+            state.add(traversalMode.isEdgeBased() ? -1 : from, NO_EDGE, from, -1, 0, weightToGoal);
+            runAlgo();
+            return extractPath();
+        } finally {
+            SearchState.release(state);
+            state = null;
+        }
+    }
+
+    private double approximate(int node) {
+        return weightApprox == null ? 0 : weightApprox.approximate(node);
+    }
+
+    private void runAlgo() {
+        while (!state.isHeapEmpty()) {
+            currSlot = state.poll();
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished() || isTimeoutExceeded())
+                break;
+
+            int currEdge = state.getEdge(currSlot);
+            double currWeight = state.getWeight(currSlot);
+            EdgeIterator iter = edgeExplorer.setBaseNode(state.getAdjNode(currSlot));
+            while (iter.next()) {
+                if (!accept(iter, currEdge) || (currEdge == NO_EDGE && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge))
+                    continue;
+
+                double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, false, currEdge) + currWeight;
+                if (Double.isInfinite(weight))
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, false);
+                int slot = state.getSlot(traversalId);
+                if (slot >= 0 && state.getWeight(slot) <= weight)
+                    continue;
+                int adjNode = iter.getAdjNode();
+                double weightToGoal = approximate(adjNode);
+                if (Double.isInfinite(weightToGoal))
+                    continue;
+                if (slot < 0)
+                    state.add(traversalId, iter.getEdge(), adjNode, currSlot, weight, weight + weightToGoal);
+                else
+                    state.update(slot, iter.getEdge(), currSlot, weight, weight + weightToGoal);
+            }
+        }
+    }
+
+    private boolean finished() {
+        int currEdge = state.getEdge(currSlot);
+        return state.getAdjNode(currSlot) == to && (toInEdge == ANY_EDGE || currEdge == toInEdge) && (fromOutEdge == ANY_EDGE || currEdge != NO_EDGE);
+    }
+
+    private Path extractPath() {
+        if (currSlot < 0 || !finished())
+            return createEmptyPath();
+        return PathExtractor.extractPath(graph, weighting, state.createSPTEntry(currSlot));
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return weightApprox == null ? Parameters.Algorithms.DIJKSTRA : Parameters.Algorithms.ASTAR + "|" + weightApprox;
+    }
+}
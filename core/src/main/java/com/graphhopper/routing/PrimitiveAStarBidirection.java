@@ -0,0 +1,302 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BalancedWeightApproximator;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Parameters;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * The same search as {@link AStarBidirection} (or {@link DijkstraBidirectionRef} if no approximation is set), but the
+ * shortest path trees and the priority queues of both directions are kept in {@link SearchState}s that are recycled
+ * across requests, so the search itself does not create any objects. Only the path extraction converts the two
+ * branches of the best path to {@link SPTEntry}s.
+ */
+public class PrimitiveAStarBidirection implements EdgeToEdgeRoutingAlgorithm {
+    private final Graph graph;
+    private final Weighting weighting;
+    private final TraversalMode traversalMode;
+    private final EdgeExplorer edgeExplorer;
+    private BalancedWeightApproximator weightApprox;
+    private double stoppingCriterionOffset;
+    private SearchState fromState;
+    private SearchState toState;
+    private int currFrom = -1;
+    private int currTo = -1;
+    // the heap weights of currFrom and currTo at the time they were polled
+    private double currFromWeight;
+    private double currToWeight;
+    private int bestFwdSlot = -1;
+    private int bestBwdSlot = -1;
+    private double bestWeight = Double.MAX_VALUE;
+    private boolean finishedFrom;
+    private boolean finishedTo;
+    private int fromOutEdge = ANY_EDGE;
+    private int toInEdge = ANY_EDGE;
+    private int visitedCountFrom;
+    private int visitedCountTo;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+    private boolean alreadyRun;
+
+    public PrimitiveAStarBidirection(Graph graph, Weighting weighting, TraversalMode tMode) {
+        if (weighting.hasTurnCosts() && !tMode.isEdgeBased())
+            throw new IllegalStateException("Weightings supporting turn costs cannot be used with node-based traversal mode");
+        this.graph = graph;
+        this.weighting = weighting;
+        this.traversalMode = tMode;
+        this.edgeExplorer = graph.createEdgeExplorer();
+    }
+
+    /**
+     * @param approx defines how the weight to the target (and start) node is approximated, use null to run a
+     *               bidirectional Dijkstra search
+     */
+    public PrimitiveAStarBidirection setApproximation(WeightApproximator approx) {
+        weightApprox = approx == null ? null : new BalancedWeightApproximator(approx);
+        return this;
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to) {
+        return Collections.singletonList(calcPath(from, to));
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPath(from, to, ANY_EDGE, ANY_EDGE);
+    }
+
+    @Override
+    public Path calcPath(int from, int to, int fromOutEdge, int toInEdge) {
+        if ((fromOutEdge != ANY_EDGE || toInEdge != ANY_EDGE) && !traversalMode.isEdgeBased()) {
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        }
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdge = toInEdge;
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+        try {
+            finishTimeMillis = Math.addExact(System.currentTimeMillis(), timeoutMillis);
+        } catch (ArithmeticException e) {
+            finishTimeMillis = Long.MAX_VALUE;
+        }
+        fromState = SearchState.acquire();
+        toState = SearchState.acquire();
+        try {
+            init(from, to);
+            runAlgo();
+            return extractPath();
+        } finally {
+            SearchState.release(fromState);
+            SearchState.release(toState);
+            fromState = null;
+            toState = null;
+        }
+    }
+
+    private void init(int from, int to) {
+        if (weightApprox != null) {
+            weightApprox.setFromTo(from, to);
+            stoppingCriterionOffset = weightApprox.approximate(to, true) + weightApprox.getSlack();
+        }
+        boolean edgeBased = traversalMode.isEdgeBased();
+        currFrom = fromState.add(edgeBased ? -1 : from, NO_EDGE, from, -1, 0, approximate(from, false));
+        currFromWeight = fromState.getHeapWeight(currFrom);
+        currTo = toState.add(edgeBased ? -1 : to, NO_EDGE, to, -1, 0, approximate(to, true));
+        currToWeight = toState.getHeapWeight(currTo);
+        if (!edgeBased) {
+            if (from == to) {
+                bestFwdSlot = currFrom;
+                bestBwdSlot = currTo;
+                bestWeight = 0;
+            }
+        } else if (from == to && fromOutEdge == ANY_EDGE && toInEdge == ANY_EDGE) {
+            // special handling if start and end are the same and no directions are restricted
+            bestFwdSlot = currFrom;
+            bestBwdSlot = currTo;
+            bestWeight = 0;
+            finishedFrom = true;
+            finishedTo = true;
+            return;
+        }
+        if (fromOutEdge == ANY_EDGE)
+            fillEdgesFrom(ANY_EDGE);
+        else
+            finishedFrom = !fillEdgesFrom(fromOutEdge);
+        if (toInEdge == ANY_EDGE)
+            fillEdgesTo(ANY_EDGE);
+        else
+            finishedTo = !fillEdgesTo(toInEdge);
+    }
+
+    private double approximate(int node, boolean reverse) {
+        return weightApprox == null ? 0 : weightApprox.approximate(node, reverse);
+    }
+
+    private void runAlgo() {
+        while (!finished() && !isMaxVisitedNodesExceeded() && !isTimeoutExceeded()) {
+            if (!finishedFrom)
+                finishedFrom = !fillEdgesFrom(ANY_EDGE);
+
+            if (!finishedTo)
+                finishedTo = !fillEdgesTo(ANY_EDGE);
+        }
+    }
+
+    private boolean finished() {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        return currFromWeight + currToWeight >= bestWeight + stoppingCriterionOffset;
+    }
+
+    /**
+     * @param onlyEdge if not {@link EdgeIterator#ANY_EDGE} only this edge is expanded
+     * @return false if the forward search is finished because there are no more labels to expand
+     */
+    private boolean fillEdgesFrom(int onlyEdge) {
+        if (fromState.isHeapEmpty())
+            return false;
+        currFrom = fromState.poll();
+        currFromWeight = fromState.getHeapWeight(currFrom);
+        visitedCountFrom++;
+        fillEdges(currFrom, fromState, toState, onlyEdge, false);
+        return true;
+    }
+
+    private boolean fillEdgesTo(int onlyEdge) {
+        if (toState.isHeapEmpty())
+            return false;
+        currTo = toState.poll();
+        currToWeight = toState.getHeapWeight(currTo);
+        visitedCountTo++;
+        fillEdges(currTo, toState, fromState, onlyEdge, true);
+        return true;
+    }
+
+    private void fillEdges(int currSlot, SearchState state, SearchState otherState, int onlyEdge, boolean reverse) {
+        int currEdge = state.getEdge(currSlot);
+        double currWeight = state.getWeight(currSlot);
+        EdgeIterator iter = edgeExplorer.setBaseNode(state.getAdjNode(currSlot));
+        while (iter.next()) {
+            // for edge-based traversal we leave it for the turn costs to decide whether or not a u-turn is acceptable,
+            // but for node-based traversal we exclude such a turn for performance reasons already here
+            if (!traversalMode.isEdgeBased() && iter.getEdge() == currEdge)
+                continue;
+            if (onlyEdge != ANY_EDGE && iter.getEdge() != onlyEdge)
+                continue;
+
+            // note that for node-based routing the weights will be wrong in case the weighting is returning non-zero
+            // turn weights, see discussion in #1960
+            double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverse, currEdge) + currWeight;
+            if (Double.isInfinite(weight))
+                continue;
+            int traversalId = traversalMode.createTraversalId(iter, reverse);
+            int slot = state.getSlot(traversalId);
+            int adjNode = iter.getAdjNode();
+            if (slot < 0) {
+                slot = state.add(traversalId, iter.getEdge(), adjNode, currSlot, weight, weight + approximate(adjNode, reverse));
+            } else if (state.getWeight(slot) > weight) {
+                // the slot is updated in place, so if it is one of the best slots these now point to the shorter path
+                state.update(slot, iter.getEdge(), currSlot, weight, weight + approximate(adjNode, reverse));
+            } else
+                continue;
+
+            updateBestPath(iter, slot, traversalId, state, otherState, reverse);
+        }
+    }
+
+    private void updateBestPath(EdgeIteratorState edgeState, int slot, int traversalId, SearchState state, SearchState otherState, boolean reverse) {
+        int otherSlot = otherState.getSlot(traversalId);
+        if (otherSlot < 0)
+            return;
+
+        // update μ
+        double weight = state.getWeight(slot) + otherState.getWeight(otherSlot);
+        if (traversalMode.isEdgeBased()) {
+            if (otherState.getEdge(otherSlot) != state.getEdge(slot))
+                throw new IllegalStateException("cannot happen for edge based execution of " + getName());
+
+            // prevents the path to contain the edge at the meeting point twice and subtracts the weight (excluding turn weight => no previous edge)
+            weight -= weighting.calcEdgeWeight(edgeState, reverse);
+            slot = state.getParent(slot);
+        }
+
+        if (weight < bestWeight) {
+            bestFwdSlot = reverse ? otherSlot : slot;
+            bestBwdSlot = reverse ? slot : otherSlot;
+            bestWeight = weight;
+        }
+    }
+
+    private Path extractPath() {
+        if (!finished())
+            return new Path(graph);
+        return new DefaultBidirPathExtractor(graph, weighting)
+                .extract(fromState.createSPTEntry(bestFwdSlot), toState.createSPTEntry(bestBwdSlot), bestWeight);
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedCountFrom + visitedCountTo;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    @Override
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private boolean isMaxVisitedNodesExceeded() {
+        return maxVisitedNodes < getVisitedNodes();
+    }
+
+    private boolean isTimeoutExceeded() {
+        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+    }
+
+    @Override
+    public String getName() {
+        return weightApprox == null ? Parameters.Algorithms.DIJKSTRA_BI : Parameters.Algorithms.ASTAR_BI + "|" + weightApprox;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "|" + weighting;
+    }
+}
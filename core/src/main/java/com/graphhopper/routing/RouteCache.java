@@ -0,0 +1,180 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the responses of (via-)route requests. The key consists of the snapped positions of all points instead of the
+ * points themselves, so requests with slightly different coordinates that snap to the same positions share a cache
+ * entry. It further contains the profile, the headings, curbsides and all other hints of the request. The size of the
+ * cache and the lifetime of its entries are bounded.
+ * <p>
+ * The cache belongs to a loaded graph and is not cleared automatically: reloading the graph creates a new GraphHopper
+ * instance and with it a new cache. If edge flags (e.g. speeds) are changed at runtime you have to call
+ * {@link #invalidate()}. The cached responses are deep copies that are copied again when they are returned, so callers
+ * cannot change the cached entries.
+ */
+public class RouteCache {
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<Key, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize   the maximum number of cached responses
+     * @param ttlMillis the time after which a cached response expires
+     */
+    public RouteCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The size of the route cache must be positive, was: " + maxSize);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("The time to live of the route cache must be positive, was: " + ttlMillis);
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return a copy of the cached response for the given key or null if there is none
+     */
+    public GHResponse get(Key key) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.created > ttlMillis) {
+                cache.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        GHResponse response = copy(entry.response);
+        response.addDebugInfo("route cache hit");
+        return response;
+    }
+
+    /**
+     * Stores the given response. Responses with errors are not cached.
+     */
+    public void put(Key key, GHResponse response) {
+        if (response.hasErrors())
+            return;
+        // store a copy, because the caller can still modify the response
+        GHResponse copy = copy(response);
+        synchronized (cache) {
+            cache.put(key, new Entry(copy, System.currentTimeMillis()));
+            while (cache.size() > maxSize)
+                cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    public void invalidate() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static GHResponse copy(GHResponse response) {
+        GHResponse copy = new GHResponse();
+        for (ResponsePath path : response.getAll())
+            copy.add(path.copy());
+        copy.setHints(new PMap(response.getHints()));
+        return copy;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups that were answered from the cache, or 0 if there were no lookups yet
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public static Key createKey(GHRequest request, List<Snap> snaps) {
+        List<Object> snapKeys = new ArrayList<>(snaps.size() * 5);
+        for (Snap snap : snaps) {
+            snapKeys.add(snap.getSnappedPosition());
+            snapKeys.add(snap.getSnappedPosition() == Snap.Position.TOWER ? snap.getClosestNode() : snap.getClosestEdge().getEdgeKey());
+            snapKeys.add(snap.getWayIndex());
+            snapKeys.add(snap.getSnappedPoint().getLat());
+            snapKeys.add(snap.getSnappedPoint().getLon());
+        }
+        // compare the hint values via their string representation, e.g. for custom models
+        Map<String, String> hints = new TreeMap<>();
+        request.getHints().toMap().forEach((k, v) -> hints.put(k, String.valueOf(v)));
+        return new Key(Arrays.asList(request.getProfile(), request.getAlgorithm(), request.getLocale(),
+                String.valueOf(request.getCustomModel()), new ArrayList<>(request.getHeadings()),
+                new ArrayList<>(request.getCurbsides()), new ArrayList<>(request.getPathDetails()), hints, snapKeys));
+    }
+
+    public static class Key {
+        private final List<Object> values;
+
+        private Key(List<Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return values.equals(((Key) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return values.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        final long created;
+
+        Entry(GHResponse response, long created) {
+            this.response = response;
+            this.created = created;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -31,6 +32,7 @@ import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.PrecomputedWeights;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.FindMinMax;
@@ -66,13 +68,28 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final CustomizableCH customizableCH;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
+    protected RouteCache routeCache;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, null, Collections.emptyMap());
+    }
+
+    /**
+     * @param customizableCH     used for requests with a custom model if speed mode is not disabled, can be null
+     * @param precomputedWeights the stored edge weights per profile that are used for requests without a custom model
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, CustomizableCH customizableCH,
+                  Map<String, PrecomputedWeights> precomputedWeights) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -80,9 +97,10 @@ public class Router {
         this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
         this.translationMap = translationMap;
         this.routerConfig = routerConfig;
-        this.weightingFactory = weightingFactory;
+        this.weightingFactory = precomputedWeights.isEmpty() ? weightingFactory : usePrecomputedWeights(weightingFactory, precomputedWeights);
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.customizableCH = customizableCH;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -94,6 +112,25 @@ public class Router {
         }
     }
 
+    /**
+     * @param routeCache caches the responses of via-route requests, can be null
+     */
+    public Router setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    private static WeightingFactory usePrecomputedWeights(WeightingFactory weightingFactory, Map<String, PrecomputedWeights> precomputedWeights) {
+        return (profile, requestHints, disableTurnCosts) -> {
+            Weighting weighting = weightingFactory.createWeighting(profile, requestHints, disableTurnCosts);
+            PrecomputedWeights weights = precomputedWeights.get(profile.getName());
+            // the stored weights only apply if the request does not modify the custom model of the profile
+            if (weights == null || requestHints.getObject(CustomModel.KEY, null) != null)
+                return weighting;
+            return weights.createWeighting(weighting);
+        };
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -183,7 +220,16 @@ public class Router {
     protected Solver createSolver(GHRequest request) {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
-        if (chEnabled && !disableCH) {
+        if (customizableCH != null && !disableCH && request.getCustomModel() != null && supportsCCH(request.getProfile())
+                && supportsSpeedMode(request)) {
+            RoutingCHGraph cchGraph = customize(request);
+            if (cchGraph != null)
+                return createCCHSolver(request, profilesByName, routerConfig, encodingManager, cchGraph);
+            // too many customizations are running already, so we use the LM or flexible mode as if there was no CCH
+            if (lmEnabled && !disableLM)
+                return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
+            return createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+        } else if (chEnabled && !disableCH) {
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
             return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
@@ -197,6 +243,36 @@ public class Router {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
     }
 
+    /**
+     * @return false if the request uses a feature that the speed mode does not support, see CHSolver#checkRequest
+     */
+    private static boolean supportsSpeedMode(GHRequest request) {
+        return request.getHeadings().isEmpty() && !getPassThrough(request.getHints())
+                && !ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm());
+    }
+
+    private boolean supportsCCH(String profileName) {
+        Profile profile = profilesByName.get(profileName);
+        return profile != null && !profile.hasTurnCosts() && CustomWeighting.NAME.equals(profile.getWeighting());
+    }
+
+    /**
+     * @return the customization of the CCH preparation for the profile merged with the custom model of the request, or
+     * null if it is not cached and too many customizations are running already
+     */
+    private RoutingCHGraph customize(GHRequest request) {
+        Profile profile = profilesByName.get(request.getProfile());
+        PMap requestHints = new PMap(request.getHints());
+        requestHints.putObject(CustomModel.KEY, request.getCustomModel());
+        return customizableCH.customize(profile.getName() + "|" + request.getCustomModel(),
+                () -> weightingFactory.createWeighting(profile, requestHints, false));
+    }
+
+    protected Solver createCCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                                     EncodingManager encodingManager, RoutingCHGraph cchGraph) {
+        return new CCHSolver(request, profilesByName, routerConfig, encodingManager, cchGraph);
+    }
+
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                     LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks) {
@@ -272,6 +348,12 @@ public class Router {
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        RouteCache.Key cacheKey = routeCache == null ? null : RouteCache.createKey(request, snaps);
+        if (cacheKey != null) {
+            GHResponse cachedRsp = routeCache.get(cacheKey);
+            if (cachedRsp != null)
+                return cachedRsp;
+        }
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
@@ -290,6 +372,8 @@ public class Router {
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        if (cacheKey != null)
+            routeCache.put(cacheKey, ghRsp);
         return ghRsp;
     }
 
@@ -451,13 +535,17 @@ public class Router {
             if (getPassThrough(request.getHints()))
                 throw new IllegalArgumentException("The '" + Parameters.Routing.PASS_THROUGH + "' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`. See issue #1765");
 
-            if (request.getCustomModel() != null)
-                throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
+            checkCustomModel();
 
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
                 throw new IllegalArgumentException("algorithm=round_trip cannot be used with CH");
         }
 
+        protected void checkCustomModel() {
+            if (request.getCustomModel() != null)
+                throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
+        }
+
         @Override
         protected Weighting createWeighting() {
             // todo: do not allow things like short_fastest.distance_factor or u_turn_costs unless CH is disabled
@@ -478,7 +566,7 @@ public class Router {
             return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
         }
 
-        private RoutingCHGraph getRoutingCHGraph(String profileName) {
+        protected RoutingCHGraph getRoutingCHGraph(String profileName) {
             RoutingCHGraph chGraph = chGraphs.get(profileName);
             if (chGraph == null)
                 throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profileName + "'" +
@@ -488,6 +576,34 @@ public class Router {
         }
     }
 
+    /**
+     * Uses a customization of the CCH preparation for the profile merged with the custom model of the request.
+     */
+    private static class CCHSolver extends CHSolver {
+        private final RoutingCHGraph chGraph;
+
+        CCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                  RoutingCHGraph chGraph) {
+            super(request, profilesByName, routerConfig, lookup, Collections.emptyMap());
+            this.chGraph = chGraph;
+        }
+
+        @Override
+        protected void checkCustomModel() {
+            // custom models are supported by the customization
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            return chGraph.getWeighting();
+        }
+
+        @Override
+        protected RoutingCHGraph getRoutingCHGraph(String profileName) {
+            return chGraph;
+        }
+    }
+
     public static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
@@ -529,6 +645,8 @@ public class Router {
                     setMaxVisitedNodes(getMaxVisitedNodes(request.getHints())).
                     setTimeoutMillis(getTimeoutMillis(request.getHints())).
                     setHints(request.getHints());
+            if (!algoOpts.getHints().has(PRIMITIVE_SEARCH_STATE))
+                algoOpts.getHints().putObject(PRIMITIVE_SEARCH_STATE, routerConfig.isPrimitiveSearchState());
 
             // use A* for round trips
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm())) {
@@ -31,6 +31,7 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private boolean primitiveSearchState = false;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -119,4 +120,15 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public boolean isPrimitiveSearchState() {
+        return primitiveSearchState;
+    }
+
+    /**
+     * Use the algorithms that keep their search state in recycled primitive arrays, see {@link com.graphhopper.routing.SearchState}
+     */
+    public void setPrimitiveSearchState(boolean primitiveSearchState) {
+        this.primitiveSearchState = primitiveSearchState;
+    }
 }
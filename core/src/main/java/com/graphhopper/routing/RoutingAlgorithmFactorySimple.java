@@ -28,6 +28,7 @@ import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
 
 import static com.graphhopper.util.Parameters.Algorithms.*;
+import static com.graphhopper.util.Parameters.Routing.PRIMITIVE_SEARCH_STATE;
 
 /**
  * A simple factory creating normal algorithms (RoutingAlgorithm) without preparation.
@@ -41,7 +42,18 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
         RoutingAlgorithm ra;
         String algoStr = opts.getAlgorithm();
         Weighting weighting = g.wrapWeighting(w);
-        if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
+        boolean primitive = opts.getHints().getBool(PRIMITIVE_SEARCH_STATE, false);
+        if (primitive && DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
+            ra = new PrimitiveAStarBidirection(g, weighting, opts.getTraversalMode());
+        } else if (primitive && DIJKSTRA.equalsIgnoreCase(algoStr)) {
+            ra = new PrimitiveAStar(g, weighting, opts.getTraversalMode());
+        } else if (primitive && (ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr))) {
+            ra = new PrimitiveAStarBidirection(g, weighting, opts.getTraversalMode())
+                    .setApproximation(getApproximation(ASTAR_BI, opts.getHints(), weighting, g.getNodeAccess()));
+        } else if (primitive && ASTAR.equalsIgnoreCase(algoStr)) {
+            ra = new PrimitiveAStar(g, weighting, opts.getTraversalMode())
+                    .setApproximation(getApproximation(ASTAR, opts.getHints(), w, g.getNodeAccess()));
+        } else if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
             ra = new DijkstraBidirectionRef(g, weighting, opts.getTraversalMode());
         } else if (DIJKSTRA.equalsIgnoreCase(algoStr)) {
             ra = new Dijkstra(g, weighting, opts.getTraversalMode());
@@ -0,0 +1,273 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The shortest path tree and the priority queue of a Dijkstra or A* search stored in primitive arrays instead of one
+ * {@link SPTEntry} per label. Every label gets a 'slot' and all its properties (the weight of the visited path, the
+ * weight used for the priority queue, the incoming edge, the adjacent node and the slot of the parent label) are stored
+ * in arrays at this index. The traversal ids (see {@link com.graphhopper.routing.util.TraversalMode#createTraversalId})
+ * are mapped to the slots with a primitive hash map and the priority queue is an indexed binary heap of slots, so
+ * labels are updated in place instead of creating a new entry and flagging the old one as deleted.
+ * <p>
+ * The arrays only grow, and the instances are recycled per thread via {@link #acquire()} and {@link #release}, so a
+ * search does not allocate anything once the arrays are large enough. States that grew beyond
+ * {@link #MAX_POOLED_CAPACITY} slots are not recycled, so a single large search does not keep its memory forever.
+ */
+public class SearchState {
+    private static final int MAX_POOLED_STATES = 4;
+    static final int MAX_POOLED_CAPACITY = 1 << 16;
+    private static final ThreadLocal<ArrayDeque<SearchState>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final int NOT_IN_HEAP = -1;
+
+    private final IntIntHashMap slotsByKey = new IntIntHashMap();
+    private int slots;
+    private double[] weights;
+    private double[] heapWeights;
+    private int[] edges;
+    private int[] adjNodes;
+    private int[] parents;
+    private int[] heapPositions;
+    // the heap of slots, we use an offset of one, i.e. heap[0] is not used
+    private int[] heap;
+    private int heapSize;
+    private boolean inUse;
+
+    public SearchState() {
+        this(64);
+    }
+
+    public SearchState(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        weights = new double[initialCapacity];
+        heapWeights = new double[initialCapacity];
+        edges = new int[initialCapacity];
+        adjNodes = new int[initialCapacity];
+        parents = new int[initialCapacity];
+        heapPositions = new int[initialCapacity];
+        heap = new int[initialCapacity + 1];
+    }
+
+    /**
+     * @return a cleared search state of the current thread, it must be handed back using {@link #release} once the
+     * search (including the path extraction) is done
+     */
+    public static SearchState acquire() {
+        SearchState state = POOL.get().poll();
+        if (state == null)
+            state = new SearchState();
+        state.inUse = true;
+        return state;
+    }
+
+    /**
+     * Clears the given state and keeps it for the next search of the current thread, unless its capacity exceeds
+     * {@link #MAX_POOLED_CAPACITY}. Passing null does nothing.
+     */
+    public static void release(SearchState state) {
+        if (state == null || !state.inUse)
+            return;
+        state.inUse = false;
+        if (state.getCapacity() > MAX_POOLED_CAPACITY)
+            return;
+        state.clear();
+        ArrayDeque<SearchState> pool = POOL.get();
+        if (pool.size() < MAX_POOLED_STATES)
+            pool.push(state);
+    }
+
+    public void clear() {
+        slotsByKey.clear();
+        slots = 0;
+        heapSize = 0;
+    }
+
+    /**
+     * @return the slot of the label with the given traversal id or -1 if there is no such label
+     */
+    public int getSlot(int key) {
+        int index = slotsByKey.indexOf(key);
+        return slotsByKey.indexExists(index) ? slotsByKey.indexGet(index) : -1;
+    }
+
+    /**
+     * Adds a new label and pushes it to the priority queue.
+     *
+     * @param key the traversal id of the label or -1 if the label should not be found by {@link #getSlot}, like the
+     *            start label of edge-based searches
+     * @return the slot of the new label
+     */
+    public int add(int key, int edge, int adjNode, int parent, double weight, double heapWeight) {
+        if (slots == weights.length)
+            grow();
+        int slot = slots++;
+        if (key >= 0)
+            slotsByKey.put(key, slot);
+        edges[slot] = edge;
+        adjNodes[slot] = adjNode;
+        parents[slot] = parent;
+        weights[slot] = weight;
+        heapWeights[slot] = heapWeight;
+        heapPositions[slot] = ++heapSize;
+        heap[heapSize] = slot;
+        percolateUp(heapSize);
+        return slot;
+    }
+
+    /**
+     * Replaces the label at the given slot, e.g. because a shorter path was found. The label is (re-)inserted into the
+     * priority queue.
+     */
+    public void update(int slot, int edge, int parent, double weight, double heapWeight) {
+        edges[slot] = edge;
+        parents[slot] = parent;
+        weights[slot] = weight;
+        double prevHeapWeight = heapWeights[slot];
+        heapWeights[slot] = heapWeight;
+        int position = heapPositions[slot];
+        if (position == NOT_IN_HEAP) {
+            heapPositions[slot] = ++heapSize;
+            heap[heapSize] = slot;
+            percolateUp(heapSize);
+        } else if (heapWeight < prevHeapWeight) {
+            percolateUp(position);
+        } else if (heapWeight > prevHeapWeight) {
+            percolateDown(position);
+        }
+    }
+
+    public boolean isHeapEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * Removes the slot with the smallest heap weight from the priority queue and returns it
+     */
+    public int poll() {
+        if (heapSize == 0)
+            throw new IllegalStateException("Cannot poll from an empty heap");
+        int slot = heap[1];
+        heapPositions[slot] = NOT_IN_HEAP;
+        int last = heap[heapSize--];
+        if (heapSize > 0) {
+            heap[1] = last;
+            heapPositions[last] = 1;
+            percolateDown(1);
+        }
+        return slot;
+    }
+
+    public int size() {
+        return slots;
+    }
+
+    int getCapacity() {
+        return weights.length;
+    }
+
+    public double getWeight(int slot) {
+        return weights[slot];
+    }
+
+    public double getHeapWeight(int slot) {
+        return heapWeights[slot];
+    }
+
+    public int getEdge(int slot) {
+        return edges[slot];
+    }
+
+    public int getAdjNode(int slot) {
+        return adjNodes[slot];
+    }
+
+    public int getParent(int slot) {
+        return parents[slot];
+    }
+
+    /**
+     * Creates the linked {@link SPTEntry}s of the path from the root of the tree to the given slot, e.g. to use the
+     * existing path extractors. The weights of the entries are the weights of the visited paths.
+     *
+     * @return the entry of the given slot or null if the slot is -1
+     */
+    public SPTEntry createSPTEntry(int slot) {
+        if (slot < 0)
+            return null;
+        IntArrayList path = new IntArrayList();
+        for (int s = slot; s >= 0; s = parents[s])
+            path.add(s);
+        SPTEntry entry = null;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            int s = path.get(i);
+            entry = new SPTEntry(edges[s], adjNodes[s], weights[s], entry);
+        }
+        return entry;
+    }
+
+    private void grow() {
+        int capacity = weights.length * 2;
+        weights = Arrays.copyOf(weights, capacity);
+        heapWeights = Arrays.copyOf(heapWeights, capacity);
+        edges = Arrays.copyOf(edges, capacity);
+        adjNodes = Arrays.copyOf(adjNodes, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        heapPositions = Arrays.copyOf(heapPositions, capacity);
+        heap = Arrays.copyOf(heap, capacity + 1);
+    }
+
+    private void percolateUp(int position) {
+        int slot = heap[position];
+        double weight = heapWeights[slot];
+        while (position > 1) {
+            int parentPosition = position >> 1;
+            int parentSlot = heap[parentPosition];
+            if (heapWeights[parentSlot] <= weight)
+                break;
+            heap[position] = parentSlot;
+            heapPositions[parentSlot] = position;
+            position = parentPosition;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    private void percolateDown(int position) {
+        int slot = heap[position];
+        double weight = heapWeights[slot];
+        while (position << 1 <= heapSize) {
+            int child = position << 1;
+            if (child < heapSize && heapWeights[heap[child + 1]] < heapWeights[heap[child]])
+                child++;
+            int childSlot = heap[child];
+            if (heapWeights[childSlot] >= weight)
+                break;
+            heap[position] = childSlot;
+            heapPositions[childSlot] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+}
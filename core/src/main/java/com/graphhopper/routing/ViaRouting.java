@@ -63,6 +63,24 @@ public class ViaRouting {
         EdgeFilter strictEdgeFilter = snapPreventions.isEmpty()
                 ? snapFilter
                 : new SnapPreventionEdgeFilter(snapFilter, roadClassEnc, roadEnvEnc, snapPreventions);
+        if (pointHints.isEmpty() && snapPreventions.isEmpty() && headings.stream().allMatch(h -> Double.isNaN(h))) {
+            // all points use the same filter, so we can look them up at once
+            double[] lats = new double[points.size()];
+            double[] lons = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                lats[i] = points.get(i).lat;
+                lons[i] = points.get(i).lon;
+            }
+            List<Snap> snaps = locationIndex.findClosestBatch(lats, lons, snapFilter);
+            IntArrayList pointsNotFound = new IntArrayList();
+            for (int placeIndex = 0; placeIndex < snaps.size(); placeIndex++)
+                if (!snaps.get(placeIndex).isValid())
+                    pointsNotFound.add(placeIndex);
+            if (!pointsNotFound.isEmpty())
+                throw new MultiplePointsNotFoundException(pointsNotFound);
+            return snaps;
+        }
+
         List<Snap> snaps = new ArrayList<>(points.size());
         IntArrayList pointsNotFound = new IntArrayList();
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++) {
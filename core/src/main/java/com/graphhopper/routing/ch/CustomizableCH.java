@@ -0,0 +1,507 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.util.Helper.getMemInfo;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Customizable Contraction Hierarchies ("Customizable Contraction Hierarchies" by Dibbelt, Strasser and Wagner). The
+ * preparation contracts all nodes of the graph in a nested dissection order without any witness searches, so the
+ * resulting 'arcs' (the original edges plus all shortcuts) do not depend on the edge weights and are only calculated
+ * once per graph. They are stored in the graph directory next to the CH preparations.
+ * <p>
+ * For every {@link Weighting}, e.g. for a request with a custom model, {@link #customize(Weighting)} then
+ * calculates the weights of all arcs by relaxing their lower triangles bottom-up. This is much faster than a CH
+ * preparation and runs in parallel. The result is a node-based {@link RoutingCHGraph} that can be queried with the
+ * usual CH algorithms. The most recently used customizations are cached. All customizations share one thread pool and
+ * the number of customizations that run at the same time for {@link #customize(String, Supplier)} is limited.
+ * <p>
+ * Turn costs are not supported.
+ */
+public class CustomizableCH {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableCH.class);
+    // levels with fewer nodes than this are customized in a single thread
+    private static final int MIN_PARALLEL_LEVEL_SIZE = 1_000;
+    private final BaseGraph graph;
+    private final DataAccess da;
+    private int nodeCount = -1;
+    private int arcCount;
+    private int[] ranks;
+    // the 'upward' arcs (node,head) with rank(head) > rank(node) are upHeads[firstUp[node]..firstUp[node+1]), sorted by head
+    private int[] firstUp;
+    private int[] upHeads;
+    // the 'downward' arcs (tail,node) with rank(tail) < rank(node) are downArcs[firstDown[node]..firstDown[node+1]),
+    // sorted by tail
+    private int[] firstDown;
+    private int[] downTails;
+    private int[] downArcs;
+    // the nodes grouped by their depth in the elimination tree. the arcs of nodes with the same depth do not depend on
+    // each other, so they can be customized in parallel
+    private int[] nodesByDepth;
+    private int[] firstNodeOfDepth;
+    private int customizationThreads = 1;
+    // null if the customization runs in the calling thread
+    private ForkJoinPool pool;
+    private Semaphore customizationPermits = new Semaphore(2);
+    private final Map<String, RoutingCHGraph> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cacheSize = 10;
+
+    public CustomizableCH(BaseGraph graph) {
+        this.graph = graph;
+        this.da = graph.getDirectory().create("cch", graph.getDirectory().getDefaultType("cch", true), graph.getSegmentSize());
+    }
+
+    /**
+     * Sets the number of threads of the pool that is shared by all customizations. Default is 1, which means the
+     * weights are calculated in the calling thread.
+     */
+    public CustomizableCH setCustomizationThreads(int customizationThreads) {
+        if (customizationThreads < 1)
+            throw new IllegalArgumentException("customization threads must be positive, got: " + customizationThreads);
+        if (pool != null)
+            pool.shutdown();
+        this.customizationThreads = customizationThreads;
+        this.pool = customizationThreads == 1 ? null : new ForkJoinPool(customizationThreads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of customizations that {@link #customize(String, Supplier)} runs at the same time.
+     * Default is 2.
+     */
+    public CustomizableCH setMaxConcurrentCustomizations(int maxConcurrentCustomizations) {
+        if (maxConcurrentCustomizations < 1)
+            throw new IllegalArgumentException("max concurrent customizations must be positive, got: " + maxConcurrentCustomizations);
+        this.customizationPermits = new Semaphore(maxConcurrentCustomizations);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of customizations that are kept in memory, 0 disables the cache. Default is 10.
+     */
+    public CustomizableCH setCacheSize(int cacheSize) {
+        synchronized (cache) {
+            cache.clear();
+            this.cacheSize = cacheSize;
+        }
+        return this;
+    }
+
+    /**
+     * Calculates the node order and the metric-independent arcs. This is the expensive part of the preparation.
+     */
+    public void prepare() {
+        if (nodeCount >= 0)
+            throw new IllegalStateException("CustomizableCH was already prepared or loaded");
+        if (!graph.isFrozen())
+            throw new IllegalStateException("graph must be frozen before we can prepare CCH");
+        StopWatch sw = new StopWatch().start();
+        nodeCount = graph.getNodes();
+        ranks = new NestedDissectionOrdering(graph).calcRanks();
+        int[] nodesByRank = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++)
+            nodesByRank[ranks[node]] = node;
+        float orderSeconds = sw.stop().getSeconds();
+
+        // we contract the nodes in the order of their ranks. without witness searches contracting a node connects all
+        // its upward neighbors, but it is sufficient to add them to the upward neighbors of the lowest one, because
+        // the others are connected when this one is contracted
+        sw = new StopWatch().start();
+        IntArrayList[] up = new IntArrayList[nodeCount];
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < nodeCount; node++) {
+            up[node] = new IntArrayList(4);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                if (ranks[iter.getAdjNode()] > ranks[node])
+                    up[node].add(iter.getAdjNode());
+        }
+        firstUp = new int[nodeCount + 1];
+        for (int rank = 0; rank < nodeCount; rank++) {
+            int node = nodesByRank[rank];
+            int[] heads = distinct(up[node]);
+            up[node] = IntArrayList.from(heads);
+            if (heads.length == 0)
+                continue;
+            int parent = heads[0];
+            for (int head : heads)
+                if (ranks[head] < ranks[parent])
+                    parent = head;
+            for (int head : heads)
+                if (head != parent)
+                    up[parent].add(head);
+        }
+        for (int node = 0; node < nodeCount; node++)
+            firstUp[node + 1] = firstUp[node] + up[node].size();
+        arcCount = firstUp[nodeCount];
+        upHeads = new int[arcCount];
+        for (int node = 0; node < nodeCount; node++) {
+            System.arraycopy(up[node].buffer, 0, upHeads, firstUp[node], up[node].size());
+            up[node] = null;
+        }
+        initDownArcsAndDepths();
+
+        da.create(4L * (2L * nodeCount + 1 + arcCount));
+        long pointer = 0;
+        for (int node = 0; node < nodeCount; node++, pointer += 4)
+            da.setInt(pointer, ranks[node]);
+        for (int node = 0; node <= nodeCount; node++, pointer += 4)
+            da.setInt(pointer, firstUp[node]);
+        for (int arc = 0; arc < arcCount; arc++, pointer += 4)
+            da.setInt(pointer, upHeads[arc]);
+        LOGGER.info("Prepared CCH, nodes: " + nf(nodeCount) + ", arcs: " + nf(arcCount) + ", edges: " + nf(graph.getEdges())
+                + ", depth: " + (firstNodeOfDepth.length - 1) + ", order: " + orderSeconds + "s, contraction: "
+                + sw.stop().getSeconds() + "s, " + getMemInfo());
+    }
+
+    private static int[] distinct(IntArrayList list) {
+        int[] values = list.toArray();
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++)
+            if (i == 0 || values[i] != values[i - 1])
+                values[size++] = values[i];
+        return Arrays.copyOf(values, size);
+    }
+
+    private void initDownArcsAndDepths() {
+        firstDown = new int[nodeCount + 1];
+        for (int arc = 0; arc < arcCount; arc++)
+            firstDown[upHeads[arc] + 1]++;
+        for (int node = 0; node < nodeCount; node++)
+            firstDown[node + 1] += firstDown[node];
+        downTails = new int[arcCount];
+        downArcs = new int[arcCount];
+        int[] next = Arrays.copyOf(firstDown, nodeCount);
+        // iterating the tails in ascending order keeps the down arcs of each node sorted by tail
+        for (int tail = 0; tail < nodeCount; tail++) {
+            for (int arc = firstUp[tail]; arc < firstUp[tail + 1]; arc++) {
+                int pos = next[upHeads[arc]]++;
+                downTails[pos] = tail;
+                downArcs[pos] = arc;
+            }
+        }
+
+        int[] nodesByRank = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++)
+            nodesByRank[ranks[node]] = node;
+        int[] depths = new int[nodeCount];
+        int maxDepth = -1;
+        for (int rank = 0; rank < nodeCount; rank++) {
+            int node = nodesByRank[rank];
+            int depth = 0;
+            for (int i = firstDown[node]; i < firstDown[node + 1]; i++)
+                depth = Math.max(depth, depths[downTails[i]] + 1);
+            depths[node] = depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        firstNodeOfDepth = new int[maxDepth + 2];
+        for (int node = 0; node < nodeCount; node++)
+            firstNodeOfDepth[depths[node] + 1]++;
+        for (int depth = 0; depth <= maxDepth; depth++)
+            firstNodeOfDepth[depth + 1] += firstNodeOfDepth[depth];
+        nodesByDepth = new int[nodeCount];
+        int[] nextOfDepth = Arrays.copyOf(firstNodeOfDepth, maxDepth + 1);
+        for (int node = 0; node < nodeCount; node++)
+            nodesByDepth[nextOfDepth[depths[node]]++] = node;
+    }
+
+    /**
+     * Returns the customization for the given key from the cache or creates it with the given weighting. The key
+     * must identify the weighting, e.g. it can be the profile name plus the custom model of a request.
+     *
+     * @return the customization or null if it is not cached and the maximum number of concurrent customizations is
+     * already running, see {@link #setMaxConcurrentCustomizations(int)}
+     */
+    public RoutingCHGraph customize(String key, Supplier<Weighting> weightingSupplier) {
+        synchronized (cache) {
+            RoutingCHGraph chGraph = cache.get(key);
+            if (chGraph != null)
+                return chGraph;
+        }
+        Semaphore permits = customizationPermits;
+        if (!permits.tryAcquire())
+            return null;
+        // concurrent requests for the same key might customize twice, but this way we do not block other keys
+        RoutingCHGraph chGraph;
+        try {
+            chGraph = customize(weightingSupplier.get());
+        } finally {
+            permits.release();
+        }
+        synchronized (cache) {
+            if (cacheSize > 0) {
+                cache.put(key, chGraph);
+                // we do not close the evicted graphs, because they might still be in use. they only live in memory.
+                while (cache.size() > cacheSize)
+                    cache.remove(cache.keySet().iterator().next());
+            }
+        }
+        return chGraph;
+    }
+
+    /**
+     * Calculates the weights of all arcs for the given weighting and returns a node-based CH graph using them.
+     */
+    public RoutingCHGraph customize(Weighting weighting) {
+        if (nodeCount < 0)
+            throw new IllegalStateException("CustomizableCH needs to be prepared or loaded before it can be customized");
+        if (weighting.hasTurnCosts())
+            throw new IllegalArgumentException("CustomizableCH does not support turn costs");
+        StopWatch sw = new StopWatch().start();
+        Metric metric = new Metric();
+        ForkJoinPool pool = this.pool;
+        try {
+            int edges = graph.getEdges();
+            double[] fwdWeights = new double[edges];
+            double[] bwdWeights = new double[edges];
+            IntConsumer calcEdgeWeights = edge -> {
+                EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+                fwdWeights[edge] = weighting.calcEdgeWeight(edgeState, false);
+                bwdWeights[edge] = weighting.calcEdgeWeight(edgeState, true);
+            };
+            if (pool == null)
+                IntStream.range(0, edges).forEach(calcEdgeWeights);
+            else
+                pool.submit(() -> IntStream.range(0, edges).parallel().forEach(calcEdgeWeights)).get();
+            metric.initDirectArcs(fwdWeights, bwdWeights);
+            for (int depth = 0; depth < firstNodeOfDepth.length - 1; depth++) {
+                int from = firstNodeOfDepth[depth], to = firstNodeOfDepth[depth + 1];
+                if (to - from < MIN_PARALLEL_LEVEL_SIZE || pool == null) {
+                    for (int i = from; i < to; i++)
+                        metric.relaxLowerTriangles(nodesByDepth[i]);
+                } else {
+                    pool.submit(() -> IntStream.range(from, to).parallel().forEach(i -> metric.relaxLowerTriangles(nodesByDepth[i]))).get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        float customizeSeconds = sw.stop().getSeconds();
+        sw = new StopWatch().start();
+        CHConfig chConfig = CHConfig.nodeBased("cch", weighting);
+        CHStorage chStorage = metric.createCHStorage();
+        LOGGER.info("Customized CCH, shortcuts: " + nf(chStorage.getShortcuts()) + ", threads: " + customizationThreads
+                + ", weights: " + customizeSeconds + "s, shortcuts: " + sw.stop().getSeconds() + "s");
+        return RoutingCHGraphImpl.fromGraph(graph, chStorage, chConfig);
+    }
+
+    private int findArc(int tail, int head) {
+        int arc = Arrays.binarySearch(upHeads, firstUp[tail], firstUp[tail + 1], head);
+        if (arc < 0)
+            throw new IllegalStateException("There is no arc " + tail + "->" + head);
+        return arc;
+    }
+
+    /**
+     * The weights of the arcs for one weighting. For each arc (tail,head) we store the weight of the upward direction
+     * tail->head and the downward direction head->tail separately, as well as the middle node of the lower triangle
+     * the weight was found with, or the original edge if the arc is an original edge and no triangle is better.
+     */
+    private class Metric {
+        final double[] upWeights = new double[arcCount];
+        final double[] downWeights = new double[arcCount];
+        final int[] upVia = new int[arcCount];
+        final int[] downVia = new int[arcCount];
+
+        void initDirectArcs(double[] fwdWeights, double[] bwdWeights) {
+            Arrays.fill(upWeights, Double.POSITIVE_INFINITY);
+            Arrays.fill(downWeights, Double.POSITIVE_INFINITY);
+            // a non-negative value is an original edge, -1 means the arc has no weight so far
+            Arrays.fill(upVia, -1);
+            Arrays.fill(downVia, -1);
+            AllEdgesIterator iter = graph.getAllEdges();
+            while (iter.next()) {
+                int a = iter.getBaseNode(), b = iter.getAdjNode();
+                if (a == b)
+                    continue;
+                int edge = iter.getEdge();
+                boolean aIsLower = ranks[a] < ranks[b];
+                int arc = aIsLower ? findArc(a, b) : findArc(b, a);
+                double up = aIsLower ? fwdWeights[edge] : bwdWeights[edge];
+                double down = aIsLower ? bwdWeights[edge] : fwdWeights[edge];
+                if (up < upWeights[arc]) {
+                    upWeights[arc] = up;
+                    upVia[arc] = edge;
+                }
+                if (down < downWeights[arc]) {
+                    downWeights[arc] = down;
+                    downVia[arc] = edge;
+                }
+            }
+        }
+
+        /**
+         * Updates the weights of the upward arcs of the given node. The lower triangles of an arc (node,head) are the
+         * nodes x with the arcs (x,node) and (x,head), and all of them have a smaller depth than node.
+         */
+        void relaxLowerTriangles(int node) {
+            for (int arc = firstUp[node]; arc < firstUp[node + 1]; arc++) {
+                int head = upHeads[arc];
+                int i = firstDown[node], iEnd = firstDown[node + 1];
+                int j = firstDown[head], jEnd = firstDown[head + 1];
+                while (i < iEnd && j < jEnd) {
+                    int x = downTails[i], y = downTails[j];
+                    if (x < y) {
+                        i++;
+                    } else if (x > y) {
+                        j++;
+                    } else {
+                        int toNode = downArcs[i], toHead = downArcs[j];
+                        // node->x->head
+                        double weight = downWeights[toNode] + upWeights[toHead];
+                        if (weight < upWeights[arc]) {
+                            upWeights[arc] = weight;
+                            upVia[arc] = -2 - x;
+                        }
+                        // head->x->node
+                        weight = downWeights[toHead] + upWeights[toNode];
+                        if (weight < downWeights[arc]) {
+                            downWeights[arc] = weight;
+                            downVia[arc] = -2 - x;
+                        }
+                        i++;
+                        j++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds a shortcut for every arc direction whose weight is not the one of an original edge. The arcs are
+         * visited in the order of the ranks of their tails, which is the order required by {@link CHStorageBuilder}.
+         */
+        CHStorage createCHStorage() {
+            CHStorage chStorage = new CHStorage(new RAMDirectory(), "cch", graph.getSegmentSize(), false);
+            chStorage.create(nodeCount, arcCount / 2);
+            CHStorageBuilder builder = new CHStorageBuilder(chStorage);
+            int[] nodesByRank = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                builder.setLevel(node, ranks[node]);
+                nodesByRank[ranks[node]] = node;
+            }
+            int origEdges = graph.getEdges();
+            // the CH edge ids of both directions of each arc, or -1 if a direction cannot be used
+            int[] upEdges = new int[arcCount];
+            int[] downEdges = new int[arcCount];
+            for (int rank = 0; rank < nodeCount; rank++) {
+                int node = nodesByRank[rank];
+                for (int arc = firstUp[node]; arc < firstUp[node + 1]; arc++) {
+                    int head = upHeads[arc];
+                    upEdges[arc] = downEdges[arc] = -1;
+                    int upSkip1 = -1, upSkip2 = -1, downSkip1 = -1, downSkip2 = -1;
+                    if (Double.isFinite(upWeights[arc])) {
+                        if (upVia[arc] >= 0) {
+                            upEdges[arc] = upVia[arc];
+                        } else {
+                            int x = -2 - upVia[arc];
+                            upSkip1 = downEdges[findArc(x, node)];
+                            upSkip2 = upEdges[findArc(x, head)];
+                        }
+                    }
+                    if (Double.isFinite(downWeights[arc])) {
+                        if (downVia[arc] >= 0) {
+                            downEdges[arc] = downVia[arc];
+                        } else {
+                            int x = -2 - downVia[arc];
+                            downSkip1 = upEdges[findArc(x, node)];
+                            downSkip2 = downEdges[findArc(x, head)];
+                        }
+                    }
+                    boolean upShortcut = upSkip1 >= 0, downShortcut = downSkip1 >= 0;
+                    if (upShortcut && downShortcut && upWeights[arc] == downWeights[arc]
+                            && upSkip1 == downSkip1 && upSkip2 == downSkip2) {
+                        int shortcut = builder.addShortcutNodeBased(node, head, PrepareEncoder.getScDirMask(), upWeights[arc], upSkip1, upSkip2);
+                        upEdges[arc] = downEdges[arc] = origEdges + shortcut;
+                        continue;
+                    }
+                    if (upShortcut)
+                        upEdges[arc] = origEdges + builder.addShortcutNodeBased(node, head, PrepareEncoder.getScFwdDir(), upWeights[arc], upSkip1, upSkip2);
+                    if (downShortcut)
+                        downEdges[arc] = origEdges + builder.addShortcutNodeBased(node, head, PrepareEncoder.getScBwdDir(), downWeights[arc], downSkip2, downSkip1);
+                }
+            }
+            return chStorage;
+        }
+    }
+
+    public void flush() {
+        da.setHeader(0, Constants.VERSION_CCH);
+        da.setHeader(4, nodeCount);
+        da.setHeader(8, arcCount);
+        da.flush();
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(da.getName(), Constants.VERSION_CCH, da.getHeader(0));
+        nodeCount = da.getHeader(4);
+        arcCount = da.getHeader(8);
+        if (nodeCount != graph.getNodes())
+            throw new IllegalStateException("CCH was created for " + nodeCount + " nodes, but the graph has " + graph.getNodes());
+        ranks = new int[nodeCount];
+        firstUp = new int[nodeCount + 1];
+        upHeads = new int[arcCount];
+        long pointer = 0;
+        for (int node = 0; node < nodeCount; node++, pointer += 4)
+            ranks[node] = da.getInt(pointer);
+        for (int node = 0; node <= nodeCount; node++, pointer += 4)
+            firstUp[node] = da.getInt(pointer);
+        for (int arc = 0; arc < arcCount; arc++, pointer += 4)
+            upHeads[arc] = da.getInt(pointer);
+        initDownArcsAndDepths();
+        return true;
+    }
+
+    public void close() {
+        da.close();
+        if (pool != null)
+            pool.shutdown();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public int getArcs() {
+        return arcCount;
+    }
+}
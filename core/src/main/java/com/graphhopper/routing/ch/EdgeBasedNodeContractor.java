@@ -28,6 +28,9 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Locale;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
@@ -54,7 +57,10 @@ class EdgeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
     private PrepareGraphOrigEdgeExplorer sourceNodeOrigInEdgeExplorer;
     private CHStorageBuilder chBuilder;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor that contracts the nodes, this is not the same as this contractor for workers
+    private final EdgeBasedNodeContractor main;
+    private final BitSet ignoredNodes;
     private final StopWatch dijkstraSW = new StopWatch();
     // temporary data used during node contraction
     private final IntSet sourceNodes = new IntHashSet(10);
@@ -85,7 +91,20 @@ class EdgeBasedNodeContractor implements NodeContractor {
     public EdgeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
         this.chBuilder = chBuilder;
+        this.params = new Params();
         extractParams(pMap);
+        this.main = this;
+        this.ignoredNodes = null;
+    }
+
+    private EdgeBasedNodeContractor(EdgeBasedNodeContractor main, BitSet ignoredNodes) {
+        this.prepareGraph = main.prepareGraph;
+        this.params = main.params;
+        this.main = main;
+        this.ignoredNodes = ignoredNodes;
+        createExplorersAndSearchers();
+        // the hierarchy depths are updated by the main contractor
+        hierarchyDepths = main.hierarchyDepths;
     }
 
     private void extractParams(PMap pMap) {
@@ -98,14 +117,19 @@ class EdgeBasedNodeContractor implements NodeContractor {
 
     @Override
     public void initFromGraph() {
+        createExplorersAndSearchers();
+        hierarchyDepths = new int[prepareGraph.getNodes()];
+        meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
+    }
+
+    private void createExplorersAndSearchers() {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
         sourceNodeOrigInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
-        hierarchyDepths = new int[prepareGraph.getNodes()];
         witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph);
+        witnessPathSearcher.setIgnoredNodes(ignoredNodes);
         bridgePathFinder = new BridgePathFinder(prepareGraph);
-        meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
     @Override
@@ -118,7 +142,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
             // no shortcuts will be introduced
             return Float.NEGATIVE_INFINITY;
         stats().stopWatch.start();
-        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
+        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (main.meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
         stats().stopWatch.stop();
         // the higher the priority the later (!) this node will be contracted
         float edgeQuotient = numShortcuts / (float) (prepareGraph.getDegree(node));
@@ -151,6 +175,36 @@ class EdgeBasedNodeContractor implements NodeContractor {
         return neighbors;
     }
 
+    @Override
+    public NodeContractor createWorker(BitSet ignoredNodes) {
+        return new EdgeBasedNodeContractor(this, ignoredNodes);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node) {
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        EdgeBasedPendingShortcuts pending = new EdgeBasedPendingShortcuts();
+        findAndHandlePrepareShortcuts(node, pending::add, (int) (main.meanDegree * params.maxPollFactorContraction), wpsStatsContr);
+        stats().stopWatch.stop();
+        return pending;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts shortcuts) {
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        EdgeBasedPendingShortcuts pending = (EdgeBasedPendingShortcuts) shortcuts;
+        for (int i = 0; i < pending.edgesFrom.size(); i++)
+            addShortcutsToPrepareGraph(pending.edgesFrom.get(i), pending.edgesTo.get(i), pending.origEdgeCounts.get(i));
+        insertShortcuts(node);
+        IntContainer neighbors = prepareGraph.disconnect(node);
+        meanDegree = (meanDegree * 2 + neighbors.size()) / 3;
+        updateHierarchyDepthsOfNeighbors(node, neighbors);
+        stats().stopWatch.stop();
+        return neighbors;
+    }
+
     @Override
     public void finishContraction() {
         chBuilder.replaceSkippedEdges(prepareGraph::getShortcutForPrepareEdge);
@@ -389,6 +443,19 @@ class EdgeBasedNodeContractor implements NodeContractor {
         void handleShortcut(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount);
     }
 
+    private static class EdgeBasedPendingShortcuts implements PendingShortcuts {
+        // the entries of the bridge paths are not re-used by the bridge path finder, so we can keep them
+        private final List<PrepareCHEntry> edgesFrom = new ArrayList<>();
+        private final List<PrepareCHEntry> edgesTo = new ArrayList<>();
+        private final IntArrayList origEdgeCounts = new IntArrayList();
+
+        private void add(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount) {
+            edgesFrom.add(edgeFrom);
+            edgesTo.add(edgeTo);
+            origEdgeCounts.add(origEdgeCount);
+        }
+    }
+
     private void countShortcuts(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount) {
         int fromNode = edgeFrom.parent.adjNode;
         int toNode = edgeTo.adjNode;
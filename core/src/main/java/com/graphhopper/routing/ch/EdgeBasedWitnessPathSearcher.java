@@ -22,6 +22,7 @@ import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
 import com.graphhopper.util.GHUtility;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Locale;
 
 import static com.graphhopper.util.Helper.nf;
@@ -59,6 +60,7 @@ public class EdgeBasedWitnessPathSearcher {
 
     private int sourceNode;
     private int centerNode;
+    private BitSet ignoredNodes;
 
     // various counters
     private int numPolls;
@@ -85,6 +87,13 @@ public class EdgeBasedWitnessPathSearcher {
         initCollections();
     }
 
+    /**
+     * @param ignoredNodes the searches do not visit these nodes, except the center node, can be null
+     */
+    public void setIgnoredNodes(BitSet ignoredNodes) {
+        this.ignoredNodes = ignoredNodes;
+    }
+
     /**
      * Deletes the shortest path tree that has been found so far and initializes a new witness path search for a given
      * node to be contracted and source edge key.
@@ -151,6 +160,8 @@ public class EdgeBasedWitnessPathSearcher {
                 // being recognized as witnesses when there are double zero weight loops at the source node
                 if (currNode == sourceNode && iter.getAdjNode() == sourceNode && iter.getWeight() < MAX_ZERO_WEIGHT_LOOP)
                     continue;
+                if (ignoredNodes != null && iter.getAdjNode() != centerNode && ignoredNodes.get(iter.getAdjNode()))
+                    continue;
                 final double weight = weights[currKey] + calcTurnWeight(currKey, currNode, iter.getOrigEdgeKeyFirst()) + iter.getWeight();
                 if (Double.isInfinite(weight))
                     continue;
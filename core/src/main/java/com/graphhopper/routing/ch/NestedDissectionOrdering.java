@@ -0,0 +1,288 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Calculates a metric-independent node order for {@link CustomizableCH} using nested dissection: the nodes of a cell
+ * are split into two halves at the median of their coordinates along one of four directions and the separator of the
+ * cell is a minimum vertex cover of the edges between the two halves. We use the direction that yields the smallest
+ * separator. The separator nodes get the highest ranks of the cell and the two halves are split recursively, so no
+ * shortcut can ever connect two different halves.
+ * <p>
+ * The edge directions and the weights are ignored, so the order can be used for every metric of the graph.
+ */
+public class NestedDissectionOrdering {
+    private static final int DIRECTIONS = 4;
+    private final BaseGraph graph;
+    private final NodeAccess nodeAccess;
+    private final EdgeExplorer explorer;
+    private final int[] cells;
+    private int cellCount;
+
+    public NestedDissectionOrdering(BaseGraph graph) {
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+        this.explorer = graph.createEdgeExplorer();
+        this.cells = new int[graph.getNodes()];
+    }
+
+    /**
+     * @return the rank of every node, i.e. a permutation of 0..nodes-1 where nodes with higher ranks are contracted
+     * later
+     */
+    public int[] calcRanks() {
+        int nodes = graph.getNodes();
+        int[] ranks = new int[nodes];
+        // nodes with a single neighbor, like dead ends, are contracted first, because they do not create shortcuts
+        int peeled = peelTrees(ranks);
+        int[] cellNodes = new int[nodes - peeled];
+        int cellNodeCount = 0;
+        for (int node = 0; node < nodes; node++) {
+            if (cells[node] == 0) {
+                cells[node] = ++cellCount;
+                cellNodes[cellNodeCount++] = node;
+            }
+        }
+        long[] keys = new long[cellNodeCount];
+        int nextRank = nodes - 1;
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, cellNodeCount});
+        while (!stack.isEmpty()) {
+            int[] cell = stack.pop();
+            int from = cell[0], to = cell[1];
+            if (to - from <= 2) {
+                for (int i = from; i < to; i++)
+                    ranks[cellNodes[i]] = nextRank--;
+                continue;
+            }
+            int mid = (from + to) >>> 1;
+            int leftCell = ++cellCount;
+            int rightCell = ++cellCount;
+            int bestDirection = -1;
+            IntArrayList separator = null;
+            for (int direction = 0; direction < DIRECTIONS; direction++) {
+                sortAlongDirection(cellNodes, keys, from, to, direction);
+                IntArrayList s = findSeparator(cellNodes, from, mid, to, leftCell, rightCell);
+                if (separator == null || s.size() < separator.size()) {
+                    separator = s;
+                    bestDirection = direction;
+                }
+            }
+            if (bestDirection != DIRECTIONS - 1) {
+                sortAlongDirection(cellNodes, keys, from, to, bestDirection);
+                markCells(cellNodes, from, mid, to, leftCell, rightCell);
+            }
+            // the separator nodes leave their cell and get the highest ranks of the current cell
+            for (int i = 0; i < separator.size(); i++) {
+                cells[separator.get(i)] = 0;
+                ranks[separator.get(i)] = nextRank--;
+            }
+            int leftEnd = compact(cellNodes, from, mid, leftCell);
+            int rightEnd = compact(cellNodes, mid, to, rightCell);
+            stack.push(new int[]{from, leftEnd});
+            stack.push(new int[]{mid, rightEnd});
+        }
+        if (nextRank != peeled - 1)
+            throw new IllegalStateException("Not all nodes were ranked: " + (nextRank + 1 - peeled));
+        return ranks;
+    }
+
+    /**
+     * Repeatedly removes the nodes with at most one neighbor, assigns them the lowest ranks and marks them with cell
+     * id -1. All other nodes keep the cell id 0.
+     *
+     * @return the number of removed nodes
+     */
+    private int peelTrees(int[] ranks) {
+        int nodes = graph.getNodes();
+        int[] neighbors = new int[nodes];
+        IntArrayList queue = new IntArrayList();
+        for (int node = 0; node < nodes; node++) {
+            neighbors[node] = countNeighbors(node);
+            if (neighbors[node] <= 1)
+                queue.add(node);
+        }
+        int rank = 0;
+        for (int i = 0; i < queue.size(); i++) {
+            int node = queue.get(i);
+            cells[node] = -1;
+            ranks[node] = rank++;
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                if (cells[adj] == 0 && adj != node && --neighbors[adj] == 1)
+                    queue.add(adj);
+            }
+        }
+        return rank;
+    }
+
+    private int countNeighbors(int node) {
+        IntArrayList adjNodes = new IntArrayList();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            if (iter.getAdjNode() != node && !adjNodes.contains(iter.getAdjNode()))
+                adjNodes.add(iter.getAdjNode());
+        return adjNodes.size();
+    }
+
+    private void sortAlongDirection(int[] cellNodes, long[] keys, int from, int to, int direction) {
+        for (int i = from; i < to; i++) {
+            int node = cellNodes[i];
+            // we do not care about the distortion of longitudes here, this only affects the quality of the separators
+            double lat = nodeAccess.getLat(node), lon = nodeAccess.getLon(node);
+            double value = direction == 0 ? lat : direction == 1 ? lon : direction == 2 ? lat + lon : lat - lon;
+            int coordinate = (int) Math.round(value * 1e6);
+            keys[i] = ((long) coordinate << 32) | (node & 0xFFFF_FFFFL);
+        }
+        Arrays.sort(keys, from, to);
+        for (int i = from; i < to; i++)
+            cellNodes[i] = (int) keys[i];
+    }
+
+    private void markCells(int[] cellNodes, int from, int mid, int to, int leftCell, int rightCell) {
+        for (int i = from; i < to; i++)
+            cells[cellNodes[i]] = i < mid ? leftCell : rightCell;
+    }
+
+    /**
+     * Splits cellNodes[from..to) at mid and returns a minimum vertex cover of the edges between the two halves, which
+     * we find with a maximum matching and König's theorem.
+     */
+    private IntArrayList findSeparator(int[] cellNodes, int from, int mid, int to, int leftCell, int rightCell) {
+        markCells(cellNodes, from, mid, to, leftCell, rightCell);
+        // the bipartite graph of the cut edges, the left and right nodes are numbered by their first appearance
+        IntIntHashMap rightIndex = new IntIntHashMap();
+        IntArrayList leftNodes = new IntArrayList(), rightNodes = new IntArrayList();
+        IntArrayList firstAdj = new IntArrayList(), adj = new IntArrayList();
+        for (int i = from; i < mid; i++) {
+            int node = cellNodes[i];
+            int adjStart = adj.size();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int other = iter.getAdjNode();
+                if (cells[other] != rightCell)
+                    continue;
+                int r = rightIndex.getOrDefault(other, -1);
+                if (r < 0) {
+                    r = rightNodes.size();
+                    rightIndex.put(other, r);
+                    rightNodes.add(other);
+                }
+                adj.add(r);
+            }
+            if (adj.size() > adjStart) {
+                leftNodes.add(node);
+                firstAdj.add(adjStart);
+            }
+        }
+        firstAdj.add(adj.size());
+        int leftCount = leftNodes.size(), rightCount = rightNodes.size();
+        int[] matchOfLeft = new int[leftCount], matchOfRight = new int[rightCount];
+        Arrays.fill(matchOfLeft, -1);
+        Arrays.fill(matchOfRight, -1);
+        int[] parentOfRight = new int[rightCount];
+        int[] queue = new int[leftCount];
+        for (int start = 0; start < leftCount; start++) {
+            // breadth-first search for an augmenting path starting at the unmatched left node 'start'
+            Arrays.fill(parentOfRight, -1);
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            int freeRight = -1;
+            while (head < tail && freeRight < 0) {
+                int l = queue[head++];
+                for (int k = firstAdj.get(l); k < firstAdj.get(l + 1); k++) {
+                    int r = adj.get(k);
+                    if (parentOfRight[r] >= 0)
+                        continue;
+                    parentOfRight[r] = l;
+                    if (matchOfRight[r] < 0) {
+                        freeRight = r;
+                        break;
+                    }
+                    queue[tail++] = matchOfRight[r];
+                }
+            }
+            // flip the edges along the augmenting path
+            for (int r = freeRight; r >= 0; ) {
+                int l = parentOfRight[r];
+                int next = matchOfLeft[l];
+                matchOfLeft[l] = r;
+                matchOfRight[r] = l;
+                r = next;
+            }
+        }
+        // König: Z are the nodes reachable from unmatched left nodes via alternating paths. The cover consists of the
+        // left nodes that are not in Z and the right nodes that are in Z.
+        boolean[] leftInZ = new boolean[leftCount], rightInZ = new boolean[rightCount];
+        int head = 0, tail = 0;
+        for (int l = 0; l < leftCount; l++) {
+            if (matchOfLeft[l] < 0) {
+                leftInZ[l] = true;
+                queue[tail++] = l;
+            }
+        }
+        while (head < tail) {
+            int l = queue[head++];
+            for (int k = firstAdj.get(l); k < firstAdj.get(l + 1); k++) {
+                int r = adj.get(k);
+                if (rightInZ[r])
+                    continue;
+                rightInZ[r] = true;
+                int next = matchOfRight[r];
+                if (next >= 0 && !leftInZ[next]) {
+                    leftInZ[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        IntArrayList separator = new IntArrayList();
+        for (int l = 0; l < leftCount; l++)
+            if (!leftInZ[l])
+                separator.add(leftNodes.get(l));
+        for (int r = 0; r < rightCount; r++)
+            if (rightInZ[r])
+                separator.add(rightNodes.get(r));
+        return separator;
+    }
+
+    /**
+     * Moves the nodes in cellNodes[from..to) that still belong to the given cell to the front and returns the end of
+     * this range
+     */
+    private int compact(int[] cellNodes, int from, int to, int cell) {
+        int end = from;
+        for (int i = from; i < to; i++) {
+            int node = cellNodes[i];
+            if (cells[node] == cell)
+                cellNodes[end++] = node;
+        }
+        return end;
+    }
+}
@@ -17,12 +17,15 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -31,7 +34,10 @@ import static com.graphhopper.util.Helper.nf;
 
 class NodeBasedNodeContractor implements NodeContractor {
     private final CHPreparationGraph prepareGraph;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor that contracts the nodes, this is not the same as this contractor for workers
+    private final NodeBasedNodeContractor main;
+    private final BitSet ignoredNodes;
     // todo: maybe use a set to prevent duplicates instead?
     private List<Shortcut> shortcuts = new ArrayList<>();
     private CHStorageBuilder chBuilder;
@@ -51,8 +57,19 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
+        this.params = new Params();
         extractParams(pMap);
         this.chBuilder = chBuilder;
+        this.main = this;
+        this.ignoredNodes = null;
+    }
+
+    private NodeBasedNodeContractor(NodeBasedNodeContractor main, BitSet ignoredNodes) {
+        this.prepareGraph = main.prepareGraph;
+        this.params = main.params;
+        this.main = main;
+        this.ignoredNodes = ignoredNodes;
+        initFromGraph();
     }
 
     private void extractParams(PMap pMap) {
@@ -68,6 +85,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
         witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        witnessPathSearcher.setIgnoredNodes(ignoredNodes);
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
@@ -97,7 +115,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
         shortcutsCount = 0;
         originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+        findAndHandleShortcuts(node, this::countShortcuts, (int) (main.meanDegree * params.maxPollFactorHeuristic));
 
         // from shortcuts we can compute the edgeDifference
         // # low influence: with it the shortcut creation is slightly faster
@@ -123,6 +141,30 @@ class NodeBasedNodeContractor implements NodeContractor {
         return prepareGraph.disconnect(node);
     }
 
+    @Override
+    public NodeContractor createWorker(BitSet ignoredNodes) {
+        return new NodeBasedNodeContractor(this, ignoredNodes);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node) {
+        NodeBasedPendingShortcuts pending = new NodeBasedPendingShortcuts();
+        pending.degree = findAndHandleShortcuts(node, pending::add, (int) (main.meanDegree * params.maxPollFactorContraction));
+        return pending;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts shortcuts) {
+        NodeBasedPendingShortcuts pending = (NodeBasedPendingShortcuts) shortcuts;
+        IntArrayList s = pending.shortcuts;
+        for (int i = 0; i < pending.weights.size(); i++)
+            addOrUpdateShortcut(s.get(6 * i), s.get(6 * i + 1), pending.weights.get(i),
+                    s.get(6 * i + 2), s.get(6 * i + 3), s.get(6 * i + 4), s.get(6 * i + 5));
+        insertShortcuts(node);
+        meanDegree = (meanDegree * 2 + pending.degree) / 3;
+        return prepareGraph.disconnect(node);
+    }
+
     /**
      * Calls the shortcut handler for all edges and shortcuts adjacent to the given node. After this method is called
      * these edges and shortcuts will be removed from the prepare graph, so this method offers the last chance to deal
@@ -310,6 +352,20 @@ class NodeBasedNodeContractor implements NodeContractor {
         private double maxPollFactorContraction = 200;
     }
 
+    private static class NodeBasedPendingShortcuts implements PendingShortcuts {
+        // fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge and inOrigEdgeCount of every shortcut
+        private final IntArrayList shortcuts = new IntArrayList();
+        private final DoubleArrayList weights = new DoubleArrayList();
+        private long degree;
+
+        private void add(int fromNode, int toNode, double weight,
+                         int outgoingEdge, int outOrigEdgeCount,
+                         int incomingEdge, int inOrigEdgeCount) {
+            shortcuts.add(fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge, inOrigEdgeCount);
+            weights.add(weight);
+        }
+    }
+
     private static class Shortcut {
         int prepareEdgeFwd;
         int prepareEdgeBwd;
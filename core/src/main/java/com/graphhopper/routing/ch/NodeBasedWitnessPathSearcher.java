@@ -23,6 +23,7 @@ import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
 import com.graphhopper.util.Helper;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Used to perform witness searches during node-based CH preparation. Witness searches at node B determine if there is a
@@ -34,6 +35,7 @@ public class NodeBasedWitnessPathSearcher {
     private final IntArrayList changedNodes;
     private final IntFloatBinaryHeap heap;
     private int ignoreNode = -1;
+    private BitSet ignoredNodes;
     private int settledNodes = 0;
 
     public NodeBasedWitnessPathSearcher(CHPreparationGraph graph) {
@@ -44,6 +46,14 @@ public class NodeBasedWitnessPathSearcher {
         changedNodes = new IntArrayList();
     }
 
+    /**
+     * @param ignoredNodes the searches do not visit these nodes (in addition to the ignored node given in init()), can
+     *                     be null
+     */
+    public void setIgnoredNodes(BitSet ignoredNodes) {
+        this.ignoredNodes = ignoredNodes;
+    }
+
     /**
      * Sets up a search for given start node and an ignored node. The shortest path tree will be re-used for different
      * target nodes until this method is called again.
@@ -85,7 +95,7 @@ public class NodeBasedWitnessPathSearcher {
             PrepareGraphEdgeIterator iter = outEdgeExplorer.setBaseNode(node);
             while (iter.next()) {
                 int adjNode = iter.getAdjNode();
-                if (adjNode == ignoreNode)
+                if (adjNode == ignoreNode || (ignoredNodes != null && ignoredNodes.get(adjNode)))
                     continue;
                 double weight = weights[node] + iter.getWeight();
                 if (Double.isInfinite(weight))
@@ -20,6 +20,8 @@ package com.graphhopper.routing.ch;
 
 import com.carrotsearch.hppc.IntContainer;
 
+import java.util.BitSet;
+
 public interface NodeContractor {
     void initFromGraph();
 
@@ -37,6 +39,30 @@ public interface NodeContractor {
      */
     IntContainer contractNode(int node);
 
+    /**
+     * Creates a contractor that can calculate priorities and find shortcuts concurrently to other workers. It shares
+     * the graph and the state that is updated when nodes are contracted with this contractor, but uses its own
+     * explorers and witness path searchers. Workers must only be used while the graph is not changed.
+     *
+     * @param ignoredNodes witness paths found by the worker do not visit these nodes. This way nodes that are not
+     *                     adjacent to each other can be contracted at the same time.
+     */
+    NodeContractor createWorker(BitSet ignoredNodes);
+
+    /**
+     * Finds the shortcuts that are required to contract the given node like {@link #contractNode(int)}, but does not
+     * change the graph.
+     */
+    PendingShortcuts findShortcuts(int node);
+
+    /**
+     * Adds the given shortcuts which were found by {@link #findShortcuts} (of this contractor or one of its workers)
+     * and disconnects the node.
+     *
+     * @return the set of nodes adjacent to this node (before contraction)
+     */
+    IntContainer contractNode(int node, PendingShortcuts shortcuts);
+
     void finishContraction();
 
     long getAddedShortcutsCount();
@@ -45,4 +71,10 @@ public interface NodeContractor {
 
     float getDijkstraSeconds();
 
+    /**
+     * The shortcuts found for a node that are not yet added to the graph.
+     */
+    interface PendingShortcuts {
+    }
+
 }
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -28,8 +29,13 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -61,6 +67,7 @@ public class PrepareContractionHierarchies {
     private final StopWatch contractionSW = new StopWatch();
     private final Params params;
     private final BaseGraph graph;
+    private CHPreparationGraph prepareGraph;
     private NodeContractor nodeContractor;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
@@ -100,6 +107,7 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        params.setContractionThreads(pMap.getInt(CONTRACTION_THREADS, params.getContractionThreads()));
         return this;
     }
 
@@ -159,6 +167,8 @@ public class PrepareContractionHierarchies {
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (params.getContractionThreads() > 1) {
+            contractNodesInParallel();
         } else {
             contractNodesUsingHeuristicNodeOrdering();
         }
@@ -173,7 +183,6 @@ public class PrepareContractionHierarchies {
         // not simply prepare contraction hierarchies, but instead it also serves as some kind of 'container' to give
         // access to the preparations in the GraphHopper class. If this was not so we could make this a lot cleaner here,
         // declare variables final and would not need all these close() methods...
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null) {
@@ -322,6 +331,179 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Contracts the nodes in rounds. In every round we contract all nodes whose priority is smaller than the priority
+     * of all their neighbors. These nodes are not adjacent to each other, so we can search the shortcuts for all of
+     * them concurrently. The witness searches do not visit any of the nodes contracted in the same round, which
+     * guarantees that the shortest paths between the remaining nodes are preserved. Afterwards the shortcuts are added
+     * one node after the other and we update the priorities of all the neighbors of the contracted nodes. There are no
+     * lazy updates in this mode.
+     */
+    private void contractNodesInParallel() {
+        final int threads = params.getContractionThreads();
+        final BitSet contracting = new BitSet(nodes);
+        final NodeContractor[] workers = new NodeContractor[threads];
+        final PrepareGraphEdgeExplorer[] outExplorers = new PrepareGraphEdgeExplorer[threads];
+        final PrepareGraphEdgeExplorer[] inExplorers = new PrepareGraphEdgeExplorer[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = nodeContractor.createWorker(contracting);
+            outExplorers[i] = prepareGraph.createOutEdgeExplorer();
+            inExplorers[i] = prepareGraph.createInEdgeExplorer();
+        }
+        final float[] priorities = new float[nodes];
+        final boolean[] selected = new boolean[nodes];
+        IntArrayList remaining = new IntArrayList(nodes);
+        for (int node = 0; node < nodes; node++)
+            remaining.add(node);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            StopWatch sw = new StopWatch().start();
+            logger.info("Calculating initial node priorities: {} nodes, threads: {}, {}", nodes, threads, getMemInfo());
+            periodicUpdateSW.start();
+            IntArrayList allNodes = remaining;
+            runInParallel(pool, threads, remaining.size(), (w, i) -> priorities[allNodes.get(i)] = workers[w].calculatePriority(allNodes.get(i)));
+            periodicUpdateSW.stop();
+            logger.info("Finished calculating priorities, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+
+            final long nodesToAvoidContract = Math.round(nodes * ((100 - params.getNodesContractedPercentage()) / 100d));
+            final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, nodes * (params.getPeriodicUpdatesPercentage() / 100d)));
+            final long logSize = params.getLogMessagesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, nodes * (params.getLogMessagesPercentage() / 100d)));
+            long nextPeriodicUpdate = periodicUpdatesCount;
+            long nextLog = 0;
+            int level = 0;
+            int rounds = 0;
+            int updateCounter = 0;
+            IntArrayList batch = new IntArrayList();
+            IntArrayList neighbors = new IntArrayList();
+            BitSet isNeighbor = new BitSet(nodes);
+            while (!remaining.isEmpty() && remaining.size() >= nodesToAvoidContract) {
+                stopIfInterrupted();
+                if (level >= nextPeriodicUpdate) {
+                    periodicUpdateSW.start();
+                    IntArrayList currRemaining = remaining;
+                    runInParallel(pool, threads, remaining.size(), (w, i) -> priorities[currRemaining.get(i)] = workers[w].calculatePriority(currRemaining.get(i)));
+                    periodicUpdateSW.stop();
+                    nextPeriodicUpdate += periodicUpdatesCount;
+                    updateCounter++;
+                }
+                if (level >= nextLog) {
+                    logParallelStats(remaining.size(), rounds, updateCounter);
+                    nextLog += logSize;
+                }
+                rounds++;
+
+                // select the nodes with a locally minimal priority
+                IntArrayList currRemaining = remaining;
+                runInParallel(pool, threads, remaining.size(), (w, i) -> {
+                    int node = currRemaining.get(i);
+                    selected[node] = isLocalMinimum(node, priorities, outExplorers[w]) && isLocalMinimum(node, priorities, inExplorers[w]);
+                });
+                batch.clear();
+                IntArrayList nextRemaining = new IntArrayList(remaining.size());
+                for (int i = 0; i < remaining.size(); i++) {
+                    int node = remaining.get(i);
+                    if (selected[node]) {
+                        batch.add(node);
+                        contracting.set(node);
+                        selected[node] = false;
+                    } else {
+                        nextRemaining.add(node);
+                    }
+                }
+                remaining = nextRemaining;
+
+                // find the shortcuts concurrently and add them afterwards
+                contractionSW.start();
+                NodeContractor.PendingShortcuts[] shortcuts = new NodeContractor.PendingShortcuts[batch.size()];
+                runInParallel(pool, threads, batch.size(), (w, i) -> shortcuts[i] = workers[w].findShortcuts(batch.get(i)));
+                neighbors.clear();
+                for (int i = 0; i < batch.size(); i++) {
+                    int node = batch.get(i);
+                    chBuilder.setLevel(node, level++);
+                    for (IntCursor neighbor : nodeContractor.contractNode(node, shortcuts[i])) {
+                        if (!isNeighbor.get(neighbor.value)) {
+                            isNeighbor.set(neighbor.value);
+                            neighbors.add(neighbor.value);
+                        }
+                    }
+                    shortcuts[i] = null;
+                }
+                contracting.clear();
+                contractionSW.stop();
+
+                neighborUpdateSW.start();
+                runInParallel(pool, threads, neighbors.size(), (w, i) -> priorities[neighbors.get(i)] = workers[w].calculatePriority(neighbors.get(i)));
+                for (IntCursor neighbor : neighbors)
+                    isNeighbor.clear(neighbor.value);
+                neighborUpdateSW.stop();
+            }
+            checkCounter = level;
+            logParallelStats(remaining.size(), rounds, updateCounter);
+        } finally {
+            pool.shutdown();
+        }
+
+        nodeContractor.finishContraction();
+        logger.info(
+                "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                        + ", initSize:" + nf(nodes)
+                        + ", " + chConfig.getWeighting()
+                        + ", threads:" + threads
+                        + ", periodic:" + params.getPeriodicUpdatesPercentage()
+                        + ", " + getTimesAsString()
+                        + ", " + Helper.getMemInfo());
+        _close();
+    }
+
+    /**
+     * @return true if the priority of the given node is smaller than the priorities of all adjacent nodes, the node ids
+     * break ties
+     */
+    private static boolean isLocalMinimum(int node, float[] priorities, PrepareGraphEdgeExplorer explorer) {
+        PrepareGraphEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            int adjNode = iter.getAdjNode();
+            if (adjNode == node)
+                continue;
+            int cmp = Float.compare(priorities[node], priorities[adjNode]);
+            if (cmp > 0 || (cmp == 0 && adjNode < node))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs the given task for all indices in [0, count) using the given number of threads. The tasks running in the
+     * same thread get the same worker index.
+     */
+    private static void runInParallel(ForkJoinPool pool, int threads, int count, WorkerTask task) {
+        if (count == 0)
+            return;
+        final int chunkSize = 16;
+        AtomicInteger nextChunk = new AtomicInteger();
+        try {
+            pool.submit(() -> IntStream.range(0, threads).parallel().forEach(w -> {
+                int from;
+                while ((from = nextChunk.getAndIncrement() * chunkSize) < count) {
+                    int to = Math.min(count, from + chunkSize);
+                    for (int i = from; i < to; i++)
+                        task.run(w, i);
+                }
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask {
+        void run(int worker, int index);
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -373,6 +555,19 @@ public class PrepareContractionHierarchies {
                 Helper.getMemInfo()));
     }
 
+    private void logParallelStats(int remainingNodes, int rounds, int updateCounter) {
+        logger.info(String.format(Locale.ROOT,
+                "%s, nodes: %10s, shortcuts: %10s, updates: %2d, rounds: %6d, %s, %s, %s",
+                (isEdgeBased() ? "edge" : "node"),
+                nf(remainingNodes),
+                nf(nodeContractor.getAddedShortcutsCount()),
+                updateCounter,
+                rounds,
+                getTimesAsString(),
+                nodeContractor.getStatisticsString(),
+                Helper.getMemInfo()));
+    }
+
     private void logFixedNodeOrderingStats(int nodesContracted, int logSize, StopWatch stopWatch) {
         logger.info(String.format(Locale.ROOT,
                 "nodes: %10s / %10s (%6.2f%%), shortcuts: %10s, speed = %6.2f nodes/ms, %s, %s",
@@ -520,6 +715,11 @@ public class PrepareContractionHierarchies {
          * @see #periodicUpdatesPercentage
          */
         private int logMessagesPercentage;
+        /**
+         * The number of threads used to contract the nodes. If this is larger than one we contract the nodes in rounds
+         * of independent nodes, see {@link #contractNodesInParallel()}. This does not apply to a fixed node ordering.
+         */
+        private int contractionThreads = 1;
 
         static Params forTraversalMode(TraversalMode traversalMode) {
             // Lower values for the neighbor update percentage (and/or max neighbor updates) yield a slower
@@ -594,6 +794,16 @@ public class PrepareContractionHierarchies {
             this.logMessagesPercentage = logMessagesPercentage;
         }
 
+        int getContractionThreads() {
+            return contractionThreads;
+        }
+
+        void setContractionThreads(int contractionThreads) {
+            if (contractionThreads < 1)
+                throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be positive, got: " + contractionThreads);
+            this.contractionThreads = contractionThreads;
+        }
+
         private void checkPercentage(String name, int value) {
             if (value < 0 || value > 100) {
                 throw new IllegalArgumentException(name + " has to be in [0, 100], to disable it use 0");
@@ -48,7 +48,22 @@ public class LMRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
         int activeLM = Math.max(1, opts.getHints().getInt(Parameters.Landmark.ACTIVE_COUNT, defaultActiveLandmarks));
         final String algoStr = opts.getAlgorithm();
         final Weighting weighting = g.wrapWeighting(w);
-        if (ASTAR.equalsIgnoreCase(algoStr)) {
+        boolean primitive = opts.getHints().getBool(Parameters.Routing.PRIMITIVE_SEARCH_STATE, false);
+        if (primitive && ASTAR.equalsIgnoreCase(algoStr)) {
+            double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStar.EPSILON, 1);
+            PrimitiveAStar algo = new PrimitiveAStar(g, weighting, opts.getTraversalMode());
+            algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
+        } else if (primitive && (ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr))) {
+            double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStarBi.EPSILON, 1);
+            PrimitiveAStarBidirection algo = new PrimitiveAStarBidirection(g, weighting, opts.getTraversalMode());
+            algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
+        } else if (ASTAR.equalsIgnoreCase(algoStr)) {
             double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStar.EPSILON, 1);
             AStar algo = new AStar(g, weighting, opts.getTraversalMode());
             algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
@@ -48,8 +48,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * This class stores the landmark nodes and the weights from and to all other nodes in every
@@ -94,6 +98,7 @@ public class LandmarkStorage {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private AreaIndex<SplitArea> areaIndex;
     private boolean logDetails = false;
+    private int threads = 1;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
@@ -169,6 +174,16 @@ public class LandmarkStorage {
         this.logDetails = logDetails;
     }
 
+    /**
+     * Sets the number of threads used to calculate the weights of the landmarks of one subnetwork. Every thread
+     * explores the whole subnetwork, so the memory usage of the preparation grows with this number. Default is 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive, got: " + threads);
+        this.threads = threads;
+    }
+
     /**
      * This method forces the landmark preparation to skip the landmark search and uses the specified landmark list instead.
      * Useful for manual tuning of larger areas to safe import time or improve quality.
@@ -379,13 +394,15 @@ public class LandmarkStorage {
                 }
 
                 // starting
-                for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
-                    int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-                    explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
-                    explorer.setStartNode(lmNodeId);
-                    explorer.runAlgo();
-                    maxWeight = Math.max(maxWeight, explorer.getLastEntry().weight);
-                }
+                double[] maxWeights = new double[tmpLandmarkNodeIds.length];
+                runConcurrently(0, tmpLandmarkNodeIds.length, lmIdx -> {
+                    LandmarkExplorer lmExplorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
+                    lmExplorer.setStartNode(tmpLandmarkNodeIds[lmIdx]);
+                    lmExplorer.runAlgo();
+                    maxWeights[lmIdx] = lmExplorer.getLastEntry().weight;
+                });
+                for (double weight : maxWeights)
+                    maxWeight = Math.max(maxWeight, weight);
                 break;
             }
         }
@@ -445,42 +462,74 @@ public class LandmarkStorage {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
-        for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
-            }
-            int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
-
-            // set subnetwork id to all explored nodes, but do this only for the first landmark
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
-
-            explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
-
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
+        // set subnetwork id to all explored nodes, but do this only for the first landmark
+        if (Thread.currentThread().isInterrupted())
+            throw new RuntimeException("Thread was interrupted for landmark 0");
+        if (!initLandmarkWeights(0, tmpLandmarkNodeIds[0], accessFilter, subnetworks, subnetworkId))
+            return false;
 
+        // the other landmarks only write into their own column of the landmark weights so we can do them concurrently
+        final Thread caller = Thread.currentThread();
+        runConcurrently(1, tmpLandmarkNodeIds.length, lmIdx -> {
+            if (caller.isInterrupted())
+                throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
+            initLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], accessFilter, null, subnetworkId);
             if (logDetails && lmIdx % logOffset == 0)
                 LOGGER.info("Set landmarks weights [" + weighting + "]. "
                         + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
-        }
+        });
 
         // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
         landmarkIDs.add(tmpLandmarkNodeIds);
         return true;
     }
 
+    /**
+     * Calculates the 'from' and 'to' weights of the given landmark. The 'from' and 'to' weights of one landmark share
+     * four bytes of every row, so both have to be written by the same thread.
+     *
+     * @param subnetworks if not null the subnetwork id is set for all explored nodes
+     * @return false if the explored nodes already belong to another subnetwork
+     */
+    private boolean initLandmarkWeights(int lmIdx, int lmNodeId, EdgeFilter accessFilter, byte[] subnetworks, int subnetworkId) {
+        LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
+        if (subnetworks != null && explorer.setSubnetworks(subnetworks, subnetworkId))
+            return false;
+
+        explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
+        return subnetworks == null || !explorer.setSubnetworks(subnetworks, subnetworkId);
+    }
+
+    /**
+     * Runs the given task for all landmark indices in [from, to) using the configured number of threads.
+     */
+    private void runConcurrently(int from, int to, IntConsumer task) {
+        if (threads == 1 || to - from <= 1) {
+            for (int lmIdx = from; lmIdx < to; lmIdx++)
+                task.accept(lmIdx);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, to - from));
+        try {
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(task)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -91,6 +91,14 @@ public class PrepareLandmarks {
         lms.setMinimumNodes(nodes);
     }
 
+    /**
+     * @see LandmarkStorage#setThreads(int)
+     */
+    public PrepareLandmarks setLandmarkThreads(int threads) {
+        lms.setThreads(threads);
+        return this;
+    }
+
     public PrepareLandmarks setLogDetails(boolean logDetails) {
         lms.setLogDetails(logDetails);
         return this;
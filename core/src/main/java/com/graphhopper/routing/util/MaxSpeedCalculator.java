@@ -95,16 +95,23 @@ public class MaxSpeedCalculator {
         return new EdgeIntAccess() {
 
             public int getInt(int edgeId, int index) {
-                dataAccess.ensureCapacity(edgeId * 2L + 2L);
+                ensureCapacity(edgeId);
                 return dataAccess.getShort(edgeId * 2L);
             }
 
             public void setInt(int edgeId, int index, int value) {
-                dataAccess.ensureCapacity(edgeId * 2L + 2L);
+                ensureCapacity(edgeId);
                 if (value > Short.MAX_VALUE)
                     throw new IllegalStateException("value too large for short: " + value);
                 dataAccess.setShort(edgeId * 2L, (short) value);
             }
+
+            private void ensureCapacity(int edgeId) {
+                // the tag parsers can run in parallel for different edges
+                synchronized (dataAccess) {
+                    dataAccess.ensureCapacity(edgeId * 2L + 2L);
+                }
+            }
         };
     }
 
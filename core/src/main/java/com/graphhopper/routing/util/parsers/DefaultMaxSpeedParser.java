@@ -48,26 +48,30 @@ public class DefaultMaxSpeedParser implements TagParser {
                 // Workaround for GBR. Default is used for "urban" but ignored for "rural".
                 if (country == Country.GBR) tags.put("lit", "yes");
 
-                // with computeIfAbsent we calculate the expensive hashCode of the key only once
-                Result result = cache.computeIfAbsent(tags, (key) -> {
-                    Result internRes = new Result();
-                    LegalDefaultSpeeds.Result tmpResult = speeds.getSpeedLimits(code,
-                            tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "rural".equals(name));
-                    if (tmpResult != null) {
-                        internRes.rural = parseInt(tmpResult.getTags().get("maxspeed"));
-                        if (internRes.rural == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
-                            internRes.rural = (int) UNLIMITED_SIGN_SPEED;
-                    }
+                Result result;
+                // the LRU cache is modified even for reads, and the tag parsers can run in parallel
+                synchronized (cache) {
+                    // with computeIfAbsent we calculate the expensive hashCode of the key only once
+                    result = cache.computeIfAbsent(tags, (key) -> {
+                        Result internRes = new Result();
+                        LegalDefaultSpeeds.Result tmpResult = speeds.getSpeedLimits(code,
+                                tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "rural".equals(name));
+                        if (tmpResult != null) {
+                            internRes.rural = parseInt(tmpResult.getTags().get("maxspeed"));
+                            if (internRes.rural == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
+                                internRes.rural = (int) UNLIMITED_SIGN_SPEED;
+                        }
 
-                    tmpResult = speeds.getSpeedLimits(code,
-                            tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "urban".equals(name));
-                    if (tmpResult != null) {
-                        internRes.urban = parseInt(tmpResult.getTags().get("maxspeed"));
-                        if (internRes.urban == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
-                            internRes.urban = (int) UNLIMITED_SIGN_SPEED;
-                    }
-                    return internRes;
-                });
+                        tmpResult = speeds.getSpeedLimits(code,
+                                tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "urban".equals(name));
+                        if (tmpResult != null) {
+                            internRes.urban = parseInt(tmpResult.getTags().get("maxspeed"));
+                            if (internRes.urban == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
+                                internRes.urban = (int) UNLIMITED_SIGN_SPEED;
+                        }
+                        return internRes;
+                    });
+                }
 
                 ruralSpeedInt = result.rural;
                 urbanSpeedInt = result.urban;
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Reads the edge weights and times from {@link PrecomputedWeights}. Virtual edges (which may also carry a heading
+ * penalty) and turn costs are delegated to the weighting the weights were calculated with.
+ */
+public class PrecomputedWeighting implements Weighting {
+    private final Weighting weighting;
+    private final PrecomputedWeights weights;
+    private final int firstVirtualEdgeId;
+
+    PrecomputedWeighting(Weighting weighting, PrecomputedWeights weights, int firstVirtualEdgeId) {
+        this.weighting = weighting;
+        this.weights = weights;
+        this.firstVirtualEdgeId = firstVirtualEdgeId;
+    }
+
+    @Override
+    public double calcMinWeightPerDistance() {
+        return weighting.calcMinWeightPerDistance();
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        if (edgeState.getEdge() >= firstVirtualEdgeId)
+            return weighting.calcEdgeWeight(edgeState, reverse);
+        return weights.getWeight(reverse ? edgeState.getReverseEdgeKey() : edgeState.getEdgeKey());
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        if (edgeState.getEdge() >= firstVirtualEdgeId)
+            return weighting.calcEdgeMillis(edgeState, reverse);
+        int millis = weights.getMillis(reverse ? edgeState.getReverseEdgeKey() : edgeState.getEdgeKey());
+        return millis == PrecomputedWeights.NO_MILLIS ? weighting.calcEdgeMillis(edgeState, reverse) : millis;
+    }
+
+    @Override
+    public double calcTurnWeight(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnWeight(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public long calcTurnMillis(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnMillis(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public boolean hasTurnCosts() {
+        return weighting.hasTurnCosts();
+    }
+
+    @Override
+    public String getName() {
+        return weighting.getName();
+    }
+
+    @Override
+    public String toString() {
+        return "precomputed|" + weighting;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * Stores the weight and the time of every edge key (i.e. both directions of every edge) of the base graph as
+ * calculated by the {@link Weighting} of a profile. The weights are stored as floats and the times as ints (in
+ * milliseconds), so reading them is much cheaper than evaluating the encoded values and the custom model of the
+ * profile for every visited edge. Use {@link #createWeighting(Weighting)} to route with the stored values.
+ */
+public class PrecomputedWeights {
+    // the weight (float bits) and the time of every edge key
+    private static final int BYTES_PER_EDGE_KEY = 8;
+    // used for times that do not fit into an int, e.g. for inaccessible edges. these are calculated on the fly
+    static final int NO_MILLIS = -1;
+    private final BaseGraph graph;
+    private final String profileName;
+    private final DataAccess da;
+    private int edges = -1;
+
+    public PrecomputedWeights(BaseGraph graph, String profileName) {
+        this.graph = graph;
+        this.profileName = profileName;
+        String name = "weights_" + profileName;
+        this.da = graph.getDirectory().create(name, graph.getDirectory().getDefaultType(name, true), graph.getSegmentSize());
+    }
+
+    /**
+     * Calculates the weights and times of all edges of the base graph using the given weighting. Turn costs are not
+     * stored.
+     */
+    public void prepare(Weighting weighting) {
+        edges = graph.getEdges();
+        da.create(2L * edges * BYTES_PER_EDGE_KEY);
+        for (int edgeKey = 0; edgeKey < 2 * edges; edgeKey++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeKey);
+            long pointer = (long) edgeKey * BYTES_PER_EDGE_KEY;
+            da.setInt(pointer, Float.floatToRawIntBits((float) weighting.calcEdgeWeight(edge, false)));
+            long millis = weighting.calcEdgeMillis(edge, false);
+            da.setInt(pointer + 4, millis >= 0 && millis < Integer.MAX_VALUE ? (int) millis : NO_MILLIS);
+        }
+    }
+
+    /**
+     * @return a weighting that uses the stored edge weights and times for the edges of the base graph and the given
+     * weighting for everything else, i.e. for turn costs and virtual edges
+     */
+    public Weighting createWeighting(Weighting weighting) {
+        if (edges != graph.getEdges())
+            throw new IllegalStateException("The weights of profile '" + profileName + "' were calculated for " + edges
+                    + " edges, but the graph has " + graph.getEdges());
+        return new PrecomputedWeighting(weighting, this, edges);
+    }
+
+    double getWeight(int edgeKey) {
+        return Float.intBitsToFloat(da.getInt((long) edgeKey * BYTES_PER_EDGE_KEY));
+    }
+
+    int getMillis(int edgeKey) {
+        return da.getInt((long) edgeKey * BYTES_PER_EDGE_KEY + 4);
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public void flush() {
+        da.setHeader(0, Constants.VERSION_PRECOMPUTED_WEIGHTS);
+        da.setHeader(4, edges);
+        da.flush();
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(da.getName(), Constants.VERSION_PRECOMPUTED_WEIGHTS, da.getHeader(0));
+        edges = da.getHeader(4);
+        if (edges != graph.getEdges())
+            throw new IllegalStateException("The weights of profile '" + profileName + "' were calculated for " + edges
+                    + " edges, but the graph has " + graph.getEdges());
+        return true;
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.search;
 
+import com.carrotsearch.hppc.LongLongHashMap;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.BitUtil;
@@ -26,6 +27,7 @@ import com.graphhopper.util.Helper;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class stores key-value pairs in an append-only manner.
@@ -39,6 +41,11 @@ public class KVStorage {
     static final int MAX_UNIQUE_KEYS = (1 << 14);
     // Store string value as byte array and store the length into 1 byte
     private static final int MAX_LENGTH = (1 << 8) - 1;
+    // The deduplication index maps the hash of the serialized entries to their pointer. To limit the memory usage
+    // during import it is cleared when it gets too big.
+    private static final int MAX_DEDUP_ENTRIES = 1 << 21;
+    // number of slots of the cache for decoded entries
+    private static final int CACHE_BITS = 14;
 
     private final Directory dir;
     // It stores the mapping of "key to index" in the keys DataAccess. E.g. if your first key is "some" then we will
@@ -82,6 +89,10 @@ public class KVStorage {
     private long bytePointer = START_POINTER;
     private long lastEntryPointer = -1;
     private Map<String, KValue> lastEntries;
+    private final LongLongHashMap dedupIndex = new LongLongHashMap();
+    // A direct mapped cache for the decoded entries. The cached maps are immutable and so can be shared between
+    // threads. As the storage is append-only the entries at a pointer never change and there is no invalidation.
+    private final AtomicReferenceArray<CachedEntries> cache = new AtomicReferenceArray<>(1 << CACHE_BITS);
 
     /**
      * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
@@ -223,7 +234,8 @@ public class KVStorage {
             throw new IllegalArgumentException("Cannot store more than 200 entries per entry");
 
         // This is a very important "compression" mechanism because one OSM way is split into multiple edges and so we
-        // can often re-use the serialized key-value pairs of the previous edge.
+        // can often re-use the serialized key-value pairs of the previous edge. Identical entries of other ways, e.g.
+        // with the same street name, are found via the dedupIndex below.
         if (entries.equals(lastEntries)) return lastEntryPointer;
 
         int entryCount = 0;
@@ -246,22 +258,70 @@ public class KVStorage {
             }
         }
 
-        lastEntries = entries;
-        lastEntryPointer = bytePointer;
-        vals.ensureCapacity(bytePointer + 1);
-        vals.setByte(bytePointer, (byte) entryCount);
-        bytePointer = setKVList(bytePointer, entries);
-        if (bytePointer < 0)
+        long entryPointer = bytePointer;
+        vals.ensureCapacity(entryPointer + 1);
+        vals.setByte(entryPointer, (byte) entryCount);
+        long newBytePointer = setKVList(entryPointer, entries);
+        if (newBytePointer < 0)
             throw new IllegalStateException("Negative bytePointer in KVStorage");
-        return lastEntryPointer;
+
+        byte[] bytes = new byte[(int) (newBytePointer - entryPointer)];
+        vals.getBytes(entryPointer, bytes, bytes.length);
+        long hash = hash(bytes);
+        long existingPointer = dedupIndex.getOrDefault(hash, -1);
+        if (existingPointer >= 0 && existingPointer + bytes.length <= entryPointer && equalBytes(existingPointer, bytes)) {
+            // the entries were already stored -> do not advance the bytePointer and overwrite the new bytes later
+            entryPointer = existingPointer;
+        } else {
+            if (dedupIndex.size() >= MAX_DEDUP_ENTRIES)
+                dedupIndex.clear();
+            dedupIndex.put(hash, entryPointer);
+            bytePointer = newBytePointer;
+        }
+        lastEntries = entries;
+        lastEntryPointer = entryPointer;
+        return entryPointer;
+    }
+
+    private boolean equalBytes(long pointer, byte[] bytes) {
+        byte[] existing = new byte[bytes.length];
+        vals.getBytes(pointer, existing, existing.length);
+        return Arrays.equals(existing, bytes);
+    }
+
+    /**
+     * 64 bit FNV-1a hash. Collisions are possible but harmless as the bytes are compared before an entry is reused.
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
+    /**
+     * @return the key-value pairs stored at the specified pointer. The returned Map is shared with other callers and
+     * cannot be modified.
+     */
     public Map<String, KValue> getAll(final long entryPointer) {
         if (entryPointer < 0)
             throw new IllegalStateException("Pointer to access KVStorage cannot be negative:" + entryPointer);
 
         if (entryPointer == EMPTY_POINTER) return Collections.emptyMap();
 
+        int slot = (int) ((entryPointer * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+        CachedEntries cached = cache.get(slot);
+        if (cached != null && cached.pointer == entryPointer)
+            return cached.map;
+
+        Map<String, KValue> map = Collections.unmodifiableMap(decodeAll(entryPointer));
+        cache.set(slot, new CachedEntries(entryPointer, map));
+        return map;
+    }
+
+    private Map<String, KValue> decodeAll(final long entryPointer) {
         int keyCount = vals.getByte(entryPointer) & 0xFF;
         if (keyCount == 0) return Collections.emptyMap();
 
@@ -417,30 +477,11 @@ public class KVStorage {
         Integer keyIndex = keyToIndex.get(key);
         if (keyIndex == null) return null; // key wasn't stored before
 
-        int keyCount = vals.getByte(entryPointer) & 0xFF;
-        if (keyCount == 0) return null; // no entries
-
-        long tmpPointer = entryPointer + 1;
-        for (int i = 0; i < keyCount; i++) {
-            int currentKeyIndexRaw = vals.getShort(tmpPointer);
-            boolean bwd = (currentKeyIndexRaw & 1) == 1;
-            boolean fwd = (currentKeyIndexRaw & 2) == 2;
-            int currentKeyIndex = currentKeyIndexRaw >>> 2;
-
-            assert currentKeyIndex < indexToKey.size() : "invalid key index " + currentKeyIndex + ">=" + indexToKey.size() + ", entryPointer=" + entryPointer + ", max=" + bytePointer;
-            tmpPointer += 2;
-            if ((!reverse && fwd || reverse && bwd) && currentKeyIndex == keyIndex) {
-                return deserializeObj(null, tmpPointer, indexToClass.get(keyIndex));
-            }
-
-            // skip to next entry of same edge via skipping the real value
-            Class<?> clazz = indexToClass.get(currentKeyIndex);
-            int valueLength = hasDynLength(clazz) ? 1 + vals.getByte(tmpPointer) & 0xFF : getFixLength(clazz);
-            tmpPointer += valueLength;
-        }
-
-        // value for specified key does not exist for the specified pointer
-        return null;
+        // the same entries are usually requested for several keys, e.g. for the instructions, so we decode and cache
+        // all of them at once
+        KValue value = getAll(entryPointer).get(key);
+        if (value == null) return null;
+        return reverse ? value.bwdValue : value.fwdValue;
     }
 
     public void flush() {
@@ -477,11 +518,20 @@ public class KVStorage {
     public void clear() {
         dir.remove(keys.getName());
         dir.remove(vals.getName());
+        clearCaches();
     }
 
     public void close() {
         keys.close();
         vals.close();
+        clearCaches();
+    }
+
+    private void clearCaches() {
+        dedupIndex.release();
+        for (int i = 0; i < cache.length(); i++) {
+            cache.set(i, null);
+        }
     }
 
     public boolean isClosed() {
@@ -492,6 +542,16 @@ public class KVStorage {
         return vals.getCapacity() + keys.getCapacity();
     }
 
+    private static final class CachedEntries {
+        final long pointer;
+        final Map<String, KValue> map;
+
+        CachedEntries(long pointer, Map<String, KValue> map) {
+            this.pointer = pointer;
+            this.map = map;
+        }
+    }
+
     public static class KValue {
         private final Object fwdValue;
         private final Object bwdValue;
@@ -27,6 +27,7 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 
 import java.io.Closeable;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
@@ -54,6 +55,7 @@ public class BaseGraph implements Graph, Closeable {
     final TurnCostStorage turnCostStorage;
     final BitUtil bitUtil;
     // length | nodeA | nextNode | ... | nodeB
+    // or, for compressed geometries: length | payload length | zigzag varint deltas of lat, lon(, ele)
     private final DataAccess wayGeometry;
     private final Directory dir;
     private final int segmentSize;
@@ -61,9 +63,21 @@ public class BaseGraph implements Graph, Closeable {
     private long minGeoRef;
     private long maxGeoRef;
     private final int eleBytesPerCoord;
+    private boolean compressedGeometry;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags, false);
+    }
+
+    /**
+     * @param compressedGeometry if true the pillar nodes of new graphs are stored delta-encoded as zigzag varints,
+     *                           which usually shrinks the geometry storage by roughly 40%. When loading
+     *                           an existing graph the encoding stored in the graph is used and this flag is ignored.
+     */
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags,
+                     boolean compressedGeometry) {
         this.dir = dir;
+        this.compressedGeometry = compressedGeometry;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
         this.edgeKVStorage = new KVStorage(dir, true);
@@ -123,6 +137,7 @@ public class BaseGraph implements Graph, Closeable {
                 wayGeometry.getHeader(12),
                 wayGeometry.getHeader(16)
         );
+        compressedGeometry = wayGeometry.getHeader(20) == 1;
     }
 
     private void setWayGeometryHeader() {
@@ -131,6 +146,7 @@ public class BaseGraph implements Graph, Closeable {
         wayGeometry.setHeader(8, bitUtil.getIntHigh(minGeoRef));
         wayGeometry.setHeader(12, bitUtil.getIntLow(maxGeoRef));
         wayGeometry.setHeader(16, bitUtil.getIntHigh(maxGeoRef));
+        wayGeometry.setHeader(20, compressedGeometry ? 1 : 0);
     }
 
     private void setInitialized() {
@@ -171,6 +187,80 @@ public class BaseGraph implements Graph, Closeable {
         return store.getFrozen();
     }
 
+    /**
+     * Renumbers the nodes along a Hilbert curve and the edges by their (renumbered) first node. Afterwards nodes and
+     * edges that are close to each other geographically are mostly close to each other in the underlying storage, which
+     * reduces cache misses and page faults for the graph explorations of the routing algorithms. The way geometry,
+     * the key values and the turn cost entries are not moved, only the references to them are updated.
+     * <p>
+     * All node and edge ids change, so this must be called right after the import, i.e. before the graph is frozen and
+     * before the location index or any CH or LM preparation is created.
+     */
+    public void sortGraph() {
+        if (isFrozen())
+            throw new IllegalStateException("Cannot sort the graph if it is already frozen");
+        if (supportsTurnCosts() && turnCostStorage.isFrozen())
+            throw new IllegalStateException("Cannot sort the graph if the turn cost storage is already frozen");
+        int nodes = getNodes();
+        int edges = getEdges();
+        BBox bounds = getBounds();
+        // we use 15 bits per axis, so the Hilbert index and the node id fit into one (positive) long
+        final int bits = 15;
+        final int maxCell = (1 << bits) - 1;
+        double latFactor = bounds.maxLat > bounds.minLat ? maxCell / (bounds.maxLat - bounds.minLat) : 0;
+        double lonFactor = bounds.maxLon > bounds.minLon ? maxCell / (bounds.maxLon - bounds.minLon) : 0;
+        long[] keys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int x = Math.max(0, Math.min(maxCell, (int) ((nodeAccess.getLon(node) - bounds.minLon) * lonFactor)));
+            int y = Math.max(0, Math.min(maxCell, (int) ((nodeAccess.getLat(node) - bounds.minLat) * latFactor)));
+            keys[node] = hilbertIndex(x, y, bits) << 32 | node;
+        }
+        Arrays.parallelSort(keys);
+        int[] newNodeIds = new int[nodes];
+        for (int i = 0; i < nodes; i++)
+            newNodeIds[(int) keys[i]] = i;
+        keys = null;
+
+        // counting sort of the edges by their new nodeA, edges with the same nodeA keep their relative order
+        int[] edgeOffsets = new int[nodes + 1];
+        for (int edge = 0; edge < edges; edge++)
+            edgeOffsets[newNodeIds[store.getNodeA(store.toEdgePointer(edge))] + 1]++;
+        for (int node = 0; node < nodes; node++)
+            edgeOffsets[node + 1] += edgeOffsets[node];
+        int[] newEdgeIds = new int[edges];
+        for (int edge = 0; edge < edges; edge++)
+            newEdgeIds[edge] = edgeOffsets[newNodeIds[store.getNodeA(store.toEdgePointer(edge))]]++;
+        edgeOffsets = null;
+
+        store.relabel(newNodeIds, newEdgeIds);
+        if (supportsTurnCosts())
+            turnCostStorage.relabelEdges(newEdgeIds);
+    }
+
+    /**
+     * @return the distance of the cell (x, y) along a Hilbert curve filling a square grid with 2^bits cells per side
+     */
+    static long hilbertIndex(int x, int y, int bits) {
+        final int n = 1 << bits;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return d;
+    }
+
     public BaseGraph create(long initSize) {
         checkNotInitialized();
         dir.create();
@@ -244,6 +334,10 @@ public class BaseGraph implements Graph, Closeable {
         return maxGeoRef;
     }
 
+    public boolean isCompressedGeometry() {
+        return compressedGeometry;
+    }
+
     public boolean loadExisting() {
         checkNotInitialized();
 
@@ -438,6 +532,11 @@ public class BaseGraph implements Graph, Closeable {
                 // longer possible to find the copies corresponding to an edge, so we deny this
                 throw new IllegalStateException("This edge has already been copied so we can no longer change the geometry, pointer=" + edgePointer);
 
+            if (compressedGeometry) {
+                setCompressedWayGeometry(pillarNodes, edgePointer, reverse, existingGeoRef);
+                return;
+            }
+
             int len = pillarNodes.size();
             if (existingGeoRef > 0) {
                 final int count = getPillarCount(existingGeoRef);
@@ -460,7 +559,10 @@ public class BaseGraph implements Graph, Closeable {
     }
 
     private void setWayGeometryAtGeoRef(PointList pillarNodes, long edgePointer, boolean reverse, long geoRef) {
-        byte[] wayGeometryBytes = createWayGeometryBytes(pillarNodes, reverse);
+        setWayGeometryAtGeoRef(createWayGeometryBytes(pillarNodes, reverse), edgePointer, geoRef);
+    }
+
+    private void setWayGeometryAtGeoRef(byte[] wayGeometryBytes, long edgePointer, long geoRef) {
         wayGeometry.ensureCapacity(geoRef + wayGeometryBytes.length);
         wayGeometry.setBytes(geoRef, wayGeometryBytes, wayGeometryBytes.length);
         store.setGeoRef(edgePointer, geoRef);
@@ -494,6 +596,108 @@ public class BaseGraph implements Graph, Closeable {
         return bytes;
     }
 
+    private void setCompressedWayGeometry(PointList pillarNodes, long edgePointer, boolean reverse, long existingGeoRef) {
+        byte[] wayGeometryBytes = createCompressedWayGeometryBytes(pillarNodes, reverse);
+        if (existingGeoRef > 0) {
+            if (pillarNodes.size() > getPillarCount(existingGeoRef))
+                throw new IllegalStateException("This edge already has a way geometry so it cannot be changed to a bigger geometry, pointer=" + edgePointer);
+            int payloadLength = getCompressedPayloadLength(existingGeoRef);
+            if (wayGeometryBytes.length <= 3 + varIntLength(payloadLength) + payloadLength) {
+                // the new geometry fits into the old slot, so it is shared with all copies of this edge as before
+                wayGeometry.setBytes(existingGeoRef, wayGeometryBytes, wayGeometryBytes.length);
+                return;
+            }
+            // The new geometry can be bigger even for the same number of points, because bigger deltas need more
+            // bytes, e.g. after smoothing the elevation. So we move it and update the edge and all its copies.
+            long newGeoRef = nextGeoRef(wayGeometryBytes.length);
+            wayGeometry.ensureCapacity(newGeoRef + wayGeometryBytes.length);
+            wayGeometry.setBytes(newGeoRef, wayGeometryBytes, wayGeometryBytes.length);
+            int nodeA = store.getNodeA(edgePointer);
+            int edge = store.getEdgeRef(store.toNodePointer(nodeA));
+            while (EdgeIterator.Edge.isValid(edge)) {
+                long pointer = store.toEdgePointer(edge);
+                if (store.getGeoRef(pointer) == existingGeoRef)
+                    store.setGeoRef(pointer, newGeoRef);
+                edge = store.getNodeA(pointer) == nodeA ? store.getLinkA(pointer) : store.getLinkB(pointer);
+            }
+            return;
+        }
+        long nextGeoRef = nextGeoRef(wayGeometryBytes.length);
+        setWayGeometryAtGeoRef(wayGeometryBytes, edgePointer, nextGeoRef);
+    }
+
+    /**
+     * The first pillar node is stored with its absolute coordinates (and not relative to the tower node), because the
+     * tower node coordinates might still change after the geometry was written, e.g. by the elevation interpolation.
+     * All other pillar nodes are stored relative to their predecessor.
+     */
+    private byte[] createCompressedWayGeometryBytes(PointList pillarNodes, boolean reverse) {
+        int len = pillarNodes.size();
+        if ((len & 0xFF00_0000) != 0)
+            throw new IllegalArgumentException("too long way geometry " + len);
+
+        boolean is3D = nodeAccess.is3D();
+        VLongStorage payload = new VLongStorage(len * (is3D ? 6 : 4));
+        long prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < len; i++) {
+            int index = reverse ? len - 1 - i : i;
+            long lat = Helper.degreeToInt(pillarNodes.getLat(index));
+            long lon = Helper.degreeToInt(pillarNodes.getLon(index));
+            payload.writeVLong(zigZagEncode(lat - prevLat));
+            payload.writeVLong(zigZagEncode(lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D) {
+                long ele = Helper.eleToUInt(pillarNodes.getEle(index));
+                payload.writeVLong(zigZagEncode(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+
+        int payloadLength = (int) payload.getPosition();
+        int headerLength = 3 + varIntLength(payloadLength);
+        byte[] bytes = new byte[headerLength + payloadLength];
+        bitUtil.fromUInt3(bytes, len, 0);
+        int tmpOffset = 3;
+        for (int value = payloadLength; ; value >>>= 7) {
+            if ((value & ~0x7F) == 0) {
+                bytes[tmpOffset] = (byte) value;
+                break;
+            }
+            bytes[tmpOffset++] = (byte) ((value & 0x7F) | 0x80);
+        }
+        System.arraycopy(payload.getBytes(), 0, bytes, headerLength, payloadLength);
+        return bytes;
+    }
+
+    private int getCompressedPayloadLength(long geoRef) {
+        long pointer = geoRef + 3;
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = wayGeometry.getByte(pointer++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     private int getPillarCount(long geoRef) {
         return (wayGeometry.getByte(geoRef + 2) & 0xFF << 16) | wayGeometry.getShort(geoRef);
     }
@@ -511,8 +715,14 @@ public class BaseGraph implements Graph, Closeable {
         byte[] bytes = null;
         if (geoRef > 0) {
             count = getPillarCount(geoRef);
-            geoRef += 3L;
-            bytes = new byte[count * (8 + eleBytesPerCoord)];
+            if (compressedGeometry) {
+                int payloadLength = getCompressedPayloadLength(geoRef);
+                geoRef += 3L + varIntLength(payloadLength);
+                bytes = new byte[payloadLength];
+            } else {
+                geoRef += 3L;
+                bytes = new byte[count * (8 + eleBytesPerCoord)];
+            }
             wayGeometry.getBytes(geoRef, bytes, bytes.length);
         } else if (mode == FetchMode.PILLAR_ONLY)
             return PointList.EMPTY;
@@ -524,17 +734,32 @@ public class BaseGraph implements Graph, Closeable {
         } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
             pillarNodes.add(nodeAccess, baseNode);
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.uIntToEle(bitUtil.toUInt3(bytes, index)));
-                index += 3;
-            } else {
-                pillarNodes.add(lat, lon);
+        if (compressedGeometry) {
+            VLongStorage payload = new VLongStorage(bytes);
+            long lat = 0, lon = 0, ele = 0;
+            for (int i = 0; i < count; i++) {
+                lat += zigZagDecode(payload.readVLong());
+                lon += zigZagDecode(payload.readVLong());
+                if (nodeAccess.is3D()) {
+                    ele += zigZagDecode(payload.readVLong());
+                    pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon), Helper.uIntToEle((int) ele));
+                } else {
+                    pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon));
+                }
+            }
+        } else {
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D()) {
+                    pillarNodes.add(lat, lon, Helper.uIntToEle(bitUtil.toUInt3(bytes, index)));
+                    index += 3;
+                } else {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -589,6 +814,7 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private boolean compressedGeometry = false;
 
         public Builder(EncodingManager em) {
             this(em.getBytesForFlags());
@@ -622,13 +848,18 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        public Builder withCompressedGeometry(boolean compressedGeometry) {
+            this.compressedGeometry = compressedGeometry;
+            return this;
+        }
+
         public Builder setBytes(long bytes) {
             this.bytes = bytes;
             return this;
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags, compressedGeometry);
         }
 
         public BaseGraph create() {
@@ -18,6 +18,8 @@
 
 package com.graphhopper.storage;
 
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
@@ -417,6 +419,96 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         return frozen;
     }
 
+    /**
+     * Renumbers all nodes and edges according to the given mappings, i.e. the node with id n gets the id
+     * newNodeIds[n] and the edge with id e gets the id newEdgeIds[e]. Both mappings must be permutations. The entries
+     * are moved in-place (following the cycles of the permutations), so only one additional bit per entry is needed.
+     * The adjacency lists are rebuilt afterwards. Everything that is referenced from an entry (turn cost entries,
+     * the way geometry and the key values) stays valid, but the edge ids stored in the turn cost entries have to be
+     * updated separately.
+     */
+    void relabel(int[] newNodeIds, int[] newEdgeIds) {
+        if (frozen)
+            throw new IllegalStateException("Cannot relabel nodes and edges of a frozen graph");
+        if (newNodeIds.length != nodeCount || newEdgeIds.length != edgeCount)
+            throw new IllegalArgumentException("Mappings must have the size of the graph: " + newNodeIds.length + " vs. "
+                    + nodeCount + " and " + newEdgeIds.length + " vs. " + edgeCount);
+
+        // the nodes DataAccess might be int-based, so we have to move node entries int-wise
+        int[] nodeEntry = new int[nodeEntryBytes / 4], tmpNodeEntry = new int[nodeEntryBytes / 4];
+        GHBitSet moved = new GHBitSetImpl(nodeCount);
+        for (int start = 0; start < nodeCount; start++) {
+            if (moved.contains(start))
+                continue;
+            readNodeEntry(start, nodeEntry);
+            int node = start;
+            do {
+                int target = newNodeIds[node];
+                if (moved.contains(target))
+                    throw new IllegalArgumentException("newNodeIds is not a permutation, duplicate target: " + target);
+                readNodeEntry(target, tmpNodeEntry);
+                writeNodeEntry(target, nodeEntry);
+                moved.add(target);
+                int[] swap = nodeEntry;
+                nodeEntry = tmpNodeEntry;
+                tmpNodeEntry = swap;
+                node = target;
+            } while (node != start);
+        }
+
+        byte[] edgeEntry = new byte[edgeEntryBytes], tmpEdgeEntry = new byte[edgeEntryBytes];
+        moved = new GHBitSetImpl(edgeCount);
+        for (int start = 0; start < edgeCount; start++) {
+            if (moved.contains(start))
+                continue;
+            edges.getBytes(toEdgePointer(start), edgeEntry, edgeEntryBytes);
+            int edge = start;
+            do {
+                int target = newEdgeIds[edge];
+                if (moved.contains(target))
+                    throw new IllegalArgumentException("newEdgeIds is not a permutation, duplicate target: " + target);
+                long targetPointer = toEdgePointer(target);
+                edges.getBytes(targetPointer, tmpEdgeEntry, edgeEntryBytes);
+                edges.setBytes(targetPointer, edgeEntry, edgeEntryBytes);
+                moved.add(target);
+                byte[] swap = edgeEntry;
+                edgeEntry = tmpEdgeEntry;
+                tmpEdgeEntry = swap;
+                edge = target;
+            } while (edge != start);
+        }
+
+        // now update the node references of the edges and rebuild the linked lists of edges at each node just like
+        // they would have been created by edge(nodeA, nodeB)
+        for (int node = 0; node < nodeCount; node++)
+            setEdgeRef(toNodePointer(node), NO_EDGE);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long edgePointer = toEdgePointer(edge);
+            int nodeA = newNodeIds[getNodeA(edgePointer)];
+            int nodeB = newNodeIds[getNodeB(edgePointer)];
+            setNodeA(edgePointer, nodeA);
+            setNodeB(edgePointer, nodeB);
+            long nodePointerA = toNodePointer(nodeA);
+            setLinkA(edgePointer, getEdgeRef(nodePointerA));
+            setEdgeRef(nodePointerA, edge);
+            long nodePointerB = toNodePointer(nodeB);
+            setLinkB(edgePointer, getEdgeRef(nodePointerB));
+            setEdgeRef(nodePointerB, edge);
+        }
+    }
+
+    private void readNodeEntry(int node, int[] entry) {
+        long nodePointer = toNodePointer(node);
+        for (int i = 0; i < entry.length; i++)
+            entry[i] = nodes.getInt(nodePointer + i * 4L);
+    }
+
+    private void writeNodeEntry(int node, int[] entry) {
+        long nodePointer = toNodePointer(node);
+        for (int i = 0; i < entry.length; i++)
+            nodes.setInt(nodePointer + i * 4L, entry[i]);
+    }
+
     public void debugPrint() {
         final int printMax = 100;
         System.out.println("nodes:");
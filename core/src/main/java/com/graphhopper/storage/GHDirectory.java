@@ -17,8 +17,14 @@
  */
 package com.graphhopper.storage;
 
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphhopper.storage.DAType.RAM_INT;
 import static com.graphhopper.storage.DAType.RAM_INT_STORE;
@@ -30,6 +36,7 @@ import static com.graphhopper.util.Helper.*;
  * @author Peter Karich
  */
 public class GHDirectory implements Directory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GHDirectory.class);
     protected final String location;
     private final DAType typeFallback;
     // first rule matches => LinkedHashMap
@@ -86,13 +93,55 @@ public class GHDirectory implements Directory {
     }
 
     public void loadMMap() {
-        for (DataAccess da : map.values()) {
-            if (!(da instanceof MMapDataAccess))
-                continue;
-            int preload = getPreload(da.getName());
-            if (preload > 0)
-                ((MMapDataAccess) da).load(preload);
+        loadMMap(1);
+    }
+
+    /**
+     * Loads the configured percentage of all memory mapped DataAccess objects into physical memory (see
+     * {@link #configure(LinkedHashMap)}). The segments are touched concurrently using the specified number of threads
+     * and the progress is logged. This method returns when all segments have been loaded.
+     */
+    public void loadMMap(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        List<Runnable> runnables = new ArrayList<>();
+        List<MMapDataAccess> preloaded = new ArrayList<>();
+        synchronized (map) {
+            for (DataAccess da : map.values()) {
+                if (!(da instanceof MMapDataAccess))
+                    continue;
+                int preload = getPreload(da.getName());
+                if (preload <= 0)
+                    continue;
+                MMapDataAccess mmapDA = (MMapDataAccess) da;
+                preloaded.add(mmapDA);
+                int segments = mmapDA.getSegmentsToLoad(preload);
+                for (int s = 0; s < segments; s++) {
+                    final int segment = s;
+                    runnables.add(() -> mmapDA.loadSegment(segment));
+                }
+            }
+        }
+        if (runnables.isEmpty())
+            return;
+
+        StopWatch sw = new StopWatch().start();
+        LOGGER.info("preloading " + runnables.size() + " segments of " + preloaded.size() + " memory mapped files with "
+                + threads + " thread(s), " + getMemInfo());
+        AtomicInteger done = new AtomicInteger();
+        int total = runnables.size();
+        int logStep = Math.max(1, total / 10);
+        GHUtility.runConcurrently(runnables.stream().map(r -> (Runnable) () -> {
+            r.run();
+            int count = done.incrementAndGet();
+            if (count % logStep == 0 && count < total)
+                LOGGER.info("preloaded " + count + " of " + total + " segments (" + Math.round(count * 100f / total) + "%)");
+        }), threads);
+        for (MMapDataAccess da : preloaded) {
+            LOGGER.info("preloaded " + da.getName() + ", resident: " + da.getResidentPercentage() + "% of "
+                    + (da.getCapacity() / MB) + "MB");
         }
+        LOGGER.info("finished preloading in " + sw.stop().getSeconds() + "s, " + getMemInfo());
     }
 
     @Override
@@ -139,6 +188,8 @@ public class GHDirectory implements Directory {
                 da = new RAMDataAccess(name, location, false, segmentSize);
         } else if (type.isMMap()) {
             da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
+        } else if (type.isOffHeap()) {
+            da = new OffHeapDataAccess(name, location, type.isStoring(), segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
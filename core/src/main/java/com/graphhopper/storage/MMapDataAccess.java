@@ -234,12 +234,42 @@ public final class MMapDataAccess extends AbstractDataAccess {
      * Load memory mapped files into physical memory.
      */
     public void load(int percentage) {
+        int max = getSegmentsToLoad(percentage);
+        for (int i = 0; i < max; i++) {
+            loadSegment(i);
+        }
+    }
+
+    /**
+     * @return the number of segments (counted from the beginning) that have to be loaded to preload the specified
+     * percentage of this DataAccess
+     */
+    int getSegmentsToLoad(int percentage) {
         if (percentage < 0 || percentage > 100)
             throw new IllegalArgumentException("Percentage for MMapDataAccess.load for " + getName() + " must be in [0,100] but was " + percentage);
-        int max = Math.round(segments.size() * percentage / 100f);
-        for (int i = 0; i < max; i++) {
-            segments.get(i).load();
+        return Math.round(segments.size() * percentage / 100f);
+    }
+
+    /**
+     * Loads the specified segment into physical memory. Different segments can be loaded concurrently.
+     */
+    void loadSegment(int index) {
+        segments.get(index).load();
+    }
+
+    /**
+     * @return the percentage of segments that are likely resident in physical memory. This is only a hint, see
+     * {@link MappedByteBuffer#isLoaded()}.
+     */
+    public int getResidentPercentage() {
+        if (segments.isEmpty())
+            return 100;
+        int loaded = 0;
+        for (MappedByteBuffer bb : segments) {
+            if (bb.isLoaded())
+                loaded++;
         }
+        return Math.round(loaded * 100f / segments.size());
     }
 
     @Override
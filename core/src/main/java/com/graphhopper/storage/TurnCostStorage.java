@@ -25,9 +25,16 @@ import com.graphhopper.util.Constants;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
 
+import java.util.Arrays;
+
 /**
  * A key/value store, where the unique keys are triples (fromEdge, viaNode, toEdge) and the values
  * are integers that can be used to store encoded values.
+ * <p>
+ * While the entries are added they are kept in a linked list per via node. After the import {@link #freeze()}
+ * reorders them into a compressed-sparse-row layout: all entries of a via node are stored consecutively and are
+ * sorted by from- and to-edge, and the turn cost index of a node points to the first entry of the node. The entries
+ * of a node end where the entries of the next node start, so the lookup is a binary search without pointer chasing.
  *
  * @author Karl Hübner
  * @author Peter Karich
@@ -41,10 +48,13 @@ public class TurnCostStorage {
     private static final int TC_FLAGS = 8;
     private static final int TC_NEXT = 12;
     private static final int BYTES_PER_ENTRY = 16;
+    // for fewer entries a linear scan is faster than the binary search
+    private static final int MAX_LINEAR_SEARCH = 8;
 
     private final BaseGraph baseGraph;
     private final DataAccess turnCosts;
     private int turnCostsCount;
+    private boolean frozen;
 
     public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
         this.baseGraph = baseGraph;
@@ -60,6 +70,7 @@ public class TurnCostStorage {
         turnCosts.setHeader(0, Constants.VERSION_TURN_COSTS);
         turnCosts.setHeader(4, BYTES_PER_ENTRY);
         turnCosts.setHeader(2 * 4, turnCostsCount);
+        turnCosts.setHeader(3 * 4, frozen ? 1 : 0);
         turnCosts.flush();
     }
 
@@ -80,6 +91,7 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(8);
+        frozen = turnCosts.getHeader(3 * 4) == 1;
         return true;
     }
 
@@ -103,6 +115,9 @@ public class TurnCostStorage {
     private long findOrCreateTurnCostEntry(int fromEdge, int viaNode, int toEdge) {
         long pointer = findPointer(fromEdge, viaNode, toEdge);
         if (pointer < 0) {
+            if (frozen)
+                throw new IllegalStateException("Cannot add turn cost entries after the turn cost storage was frozen, at ("
+                        + fromEdge + ", " + viaNode + ", " + toEdge + ")");
             // create a new entry
             ensureTurnCostIndex(turnCostsCount);
             int prevIndex = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
@@ -149,6 +164,8 @@ public class TurnCostStorage {
             throw new IllegalArgumentException("from and to edge cannot be NO_EDGE");
         if (viaNode < 0)
             throw new IllegalArgumentException("via node cannot be negative");
+        if (frozen)
+            return findPointerFrozen(fromEdge, viaNode, toEdge);
 
         final int maxEntries = 1000;
         int index = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
@@ -162,12 +179,144 @@ public class TurnCostStorage {
         throw new IllegalStateException("Turn cost list for node: " + viaNode + " is longer than expected, max: " + maxEntries);
     }
 
+    private long findPointerFrozen(int fromEdge, int viaNode, int toEdge) {
+        int low = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+        if (low == NO_TURN_ENTRY)
+            // the node was added after the freeze
+            return -1;
+        int high = getEndIndex(viaNode) - 1;
+        if (high - low < MAX_LINEAR_SEARCH) {
+            for (int index = low; index <= high; index++) {
+                long pointer = (long) index * BYTES_PER_ENTRY;
+                int from = turnCosts.getInt(pointer + TC_FROM);
+                if (from == fromEdge && toEdge == turnCosts.getInt(pointer + TC_TO))
+                    return pointer;
+                if (from > fromEdge)
+                    return -1;
+            }
+            return -1;
+        }
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long pointer = (long) mid * BYTES_PER_ENTRY;
+            int cmp = compare(turnCosts.getInt(pointer + TC_FROM), turnCosts.getInt(pointer + TC_TO), fromEdge, toEdge);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return pointer;
+        }
+        return -1;
+    }
+
+    private static int compare(int fromA, int toA, int fromB, int toB) {
+        int cmp = Integer.compare(fromA, fromB);
+        return cmp != 0 ? cmp : Integer.compare(toA, toB);
+    }
+
+    /**
+     * @return the index after the last entry of the given node, only valid for the frozen layout. Every node that
+     * existed when the storage was frozen has a turn cost index, so if the next node has none it was added after the
+     * freeze, and so were all following nodes.
+     */
+    private int getEndIndex(int node) {
+        if (node + 1 >= baseGraph.getNodes())
+            return turnCostsCount;
+        int nextIndex = baseGraph.getNodeAccess().getTurnCostIndex(node + 1);
+        return nextIndex == NO_TURN_ENTRY ? turnCostsCount : nextIndex;
+    }
+
+    /**
+     * Reorders the entries such that the entries of each via node are stored consecutively and sorted by from- and
+     * to-edge. Afterwards the existing entries can still be changed, but no new entries can be added. This should be
+     * called once after the import (and after the graph was sorted, see BaseGraph#sortGraph), because the node ids
+     * and edge ids must not change afterwards.
+     */
+    public void freeze() {
+        if (frozen)
+            throw new IllegalStateException("turn cost storage already frozen");
+        NodeAccess nodeAccess = baseGraph.getNodeAccess();
+        int[] froms = new int[turnCostsCount];
+        int[] tos = new int[turnCostsCount];
+        int[] flags = new int[turnCostsCount];
+        // entries of a single node are sorted by their (from, to) key, the lower 32 bits keep the old index
+        long[] nodeEntries = new long[16];
+        int newIndex = 0;
+        for (int node = 0; node < baseGraph.getNodes(); node++) {
+            int count = 0;
+            int index = nodeAccess.getTurnCostIndex(node);
+            while (index != NO_TURN_ENTRY) {
+                if (count == nodeEntries.length)
+                    nodeEntries = Arrays.copyOf(nodeEntries, count * 2);
+                nodeEntries[count++] = index;
+                index = turnCosts.getInt((long) index * BYTES_PER_ENTRY + TC_NEXT);
+            }
+            for (int i = 0; i < count; i++) {
+                long pointer = nodeEntries[i] * BYTES_PER_ENTRY;
+                froms[newIndex + i] = turnCosts.getInt(pointer + TC_FROM);
+                tos[newIndex + i] = turnCosts.getInt(pointer + TC_TO);
+                flags[newIndex + i] = turnCosts.getInt(pointer + TC_FLAGS);
+            }
+            sortByKey(froms, tos, flags, newIndex, newIndex + count);
+            nodeAccess.setTurnCostIndex(node, newIndex);
+            newIndex += count;
+        }
+        if (newIndex != turnCostsCount)
+            throw new IllegalStateException("Found " + newIndex + " turn cost entries in the node lists, but expected " + turnCostsCount);
+
+        for (int i = 0; i < turnCostsCount; i++) {
+            long pointer = (long) i * BYTES_PER_ENTRY;
+            turnCosts.setInt(pointer + TC_FROM, froms[i]);
+            turnCosts.setInt(pointer + TC_TO, tos[i]);
+            turnCosts.setInt(pointer + TC_FLAGS, flags[i]);
+            turnCosts.setInt(pointer + TC_NEXT, NO_TURN_ENTRY);
+        }
+        frozen = true;
+    }
+
+    private static void sortByKey(int[] froms, int[] tos, int[] flags, int start, int end) {
+        // insertion sort, there are only a few entries per node
+        for (int i = start + 1; i < end; i++) {
+            int from = froms[i], to = tos[i], flag = flags[i];
+            int j = i - 1;
+            for (; j >= start && compare(froms[j], tos[j], from, to) > 0; j--) {
+                froms[j + 1] = froms[j];
+                tos[j + 1] = tos[j];
+                flags[j + 1] = flags[j];
+            }
+            froms[j + 1] = from;
+            tos[j + 1] = to;
+            flags[j + 1] = flag;
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Updates the from- and to-edges of all entries after the edges of the graph were renumbered, i.e. the edge with
+     * id e now has the id newEdgeIds[e]. The entries stay attached to their via node, see BaseGraph#sortGraph.
+     */
+    void relabelEdges(int[] newEdgeIds) {
+        if (frozen)
+            throw new IllegalStateException("Cannot relabel the edges of a frozen turn cost storage");
+        for (int i = 0; i < turnCostsCount; i++) {
+            long pointer = (long) i * BYTES_PER_ENTRY;
+            turnCosts.setInt(pointer + TC_FROM, newEdgeIds[turnCosts.getInt(pointer + TC_FROM)]);
+            turnCosts.setInt(pointer + TC_TO, newEdgeIds[turnCosts.getInt(pointer + TC_TO)]);
+        }
+    }
+
     public int getTurnCostsCount() {
         return turnCostsCount;
     }
 
     public int getTurnCostsCount(int node) {
         int index = baseGraph.getNodeAccess().getTurnCostIndex(node);
+        if (frozen)
+            return index == NO_TURN_ENTRY ? 0 : getEndIndex(node) - index;
         int count = 0;
         while (index != NO_TURN_ENTRY) {
             long pointer = (long) index * BYTES_PER_ENTRY;
@@ -271,6 +420,8 @@ public class TurnCostStorage {
                 return false;
             }
             turnCostIndex = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+            if (frozen && turnCostIndex == getEndIndex(viaNode))
+                turnCostIndex = NO_TURN_ENTRY;
             return true;
         }
 
@@ -278,7 +429,13 @@ public class TurnCostStorage {
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
-            turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            if (frozen) {
+                turnCostIndex++;
+                if (turnCostIndex == getEndIndex(viaNode))
+                    turnCostIndex = NO_TURN_ENTRY;
+            } else {
+                turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            }
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
@@ -134,4 +134,28 @@ public class InMemConstructionIndex {
             put(keyPart, subentry, depth, value);
         }
     }
+
+    /**
+     * Appends the entries of the given index to the entries of this index. If both indices were filled with disjoint
+     * edge ranges and the given index contains the higher edge ids, the result is the same as if all edges were
+     * added to this index. The given index must not be used afterwards.
+     */
+    public void merge(InMemConstructionIndex other) {
+        merge(root, other.root);
+    }
+
+    private void merge(InMemTreeEntry target, InMemTreeEntry source) {
+        for (int index = 0; index < source.subEntries.length; index++) {
+            InMemEntry sourceEntry = source.getSubEntry(index);
+            if (sourceEntry == null)
+                continue;
+            InMemEntry targetEntry = target.getSubEntry(index);
+            if (targetEntry == null)
+                target.setSubEntry(index, sourceEntry);
+            else if (targetEntry.isLeaf())
+                ((InMemLeafEntry) targetEntry).addAll((InMemLeafEntry) sourceEntry);
+            else
+                merge((InMemTreeEntry) targetEntry, (InMemTreeEntry) sourceEntry);
+        }
+    }
 }
@@ -20,6 +20,7 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectMap;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
@@ -240,6 +241,15 @@ public class LineIntIndex {
      * <p>
      */
     public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, IntConsumer foundEntries) {
+        findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, null, foundEntries);
+    }
+
+    /**
+     * The same as {@link #findEdgeIdsInNeighborhood(double, double, int, IntConsumer)}, but the edge ids of every
+     * visited tile are read from and stored in the given cache, if it is not null. This is useful for many queries
+     * close to each other.
+     */
+    void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, LongObjectMap<int[]> tileCache, IntConsumer foundEntries) {
         int x = keyAlgo.x(queryLon);
         int y = keyAlgo.y(queryLat);
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
@@ -247,12 +257,10 @@ public class LineIntIndex {
             int subqueryXA = x - iteration;
             int subqueryXB = x + iteration;
             if (subqueryXA >= 0 && subqueryY >= 0 && subqueryXA < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXA, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryXA, subqueryY, tileCache, foundEntries);
             }
             if (iteration > 0 && subqueryXB >= 0 && subqueryY >= 0 && subqueryXB < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXB, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryXB, subqueryY, tileCache, foundEntries);
             }
         }
 
@@ -261,16 +269,32 @@ public class LineIntIndex {
             int subqueryYA = y - iteration;
             int subqueryYB = y + iteration;
             if (subqueryX >= 0 && subqueryYA >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYA < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYA) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryX, subqueryYA, tileCache, foundEntries);
             }
             if (subqueryX >= 0 && subqueryYB >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYB < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYB) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryX, subqueryYB, tileCache, foundEntries);
             }
         }
     }
 
+    private void fillIDs(int x, int y, LongObjectMap<int[]> tileCache, IntConsumer foundEntries) {
+        long tileKey = keyAlgo.encode(x, y);
+        long keyPart = tileKey << (64 - keyAlgo.getBits());
+        if (tileCache == null) {
+            fillIDs(keyPart, foundEntries);
+            return;
+        }
+        int[] edgeIds = tileCache.get(tileKey);
+        if (edgeIds == null) {
+            IntArrayList list = new IntArrayList();
+            fillIDs(keyPart, list::add);
+            edgeIds = list.toArray();
+            tileCache.put(tileKey, edgeIds);
+        }
+        for (int edgeId : edgeIds)
+            foundEntries.accept(edgeId);
+    }
+
     public int getChecksum() {
         return checksum;
     }
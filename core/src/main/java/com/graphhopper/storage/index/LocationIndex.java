@@ -20,6 +20,9 @@ package com.graphhopper.storage.index;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.shapes.BBox;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Provides a way to map real world data "lat,lon" to internal ids/indices of a memory efficient graph
  * - often just implemented as an array.
@@ -46,6 +49,20 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * This method returns the closest Snap for every specified location, in the same order as the locations. The
+     * result is the same as calling {@link #findClosest(double, double, EdgeFilter)} for every location, but
+     * implementations can share work between nearby locations.
+     */
+    default List<Snap> findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be the same, but was: " + lats.length + " vs. " + lons.length);
+        List<Snap> snaps = new ArrayList<>(lats.length);
+        for (int i = 0; i < lats.length; i++)
+            snaps.add(findClosest(lats[i], lons[i], edgeFilter));
+        return snaps;
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -17,8 +17,8 @@
  */
 package com.graphhopper.storage.index;
 
-import com.carrotsearch.hppc.IntHashSet;
-import com.graphhopper.routing.util.AllEdgesIterator;
+import com.carrotsearch.hppc.*;
+import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.Graph;
@@ -28,7 +28,13 @@ import com.graphhopper.util.shapes.BBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -56,8 +62,11 @@ public class LocationIndexTree implements LocationIndex {
     private final Graph graph;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final NodeAccess nodeAccess;
+    // the minimum number of points per chunk for a parallel batch of queries
+    private static final int MIN_BATCH_CHUNK_SIZE = 64;
     private int maxRegionSearch = 4;
     private int minResolutionInMeter = 300;
+    private int threads = 1;
     private boolean initialized = false;
 
     LineIntIndex lineIntIndex;
@@ -119,6 +128,17 @@ public class LocationIndexTree implements LocationIndex {
     }
 
 
+    /**
+     * Sets the number of threads used to build the index in {@link #prepareIndex()}. The created index is the same
+     * for any number of threads, but every thread needs memory for its own part of the index during the preparation.
+     */
+    public LocationIndexTree setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("The number of threads must be at least 1 but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
     public LocationIndex setResolution(int minResolutionInMeter) {
         if (minResolutionInMeter <= 0)
             throw new IllegalStateException("Negative precision is not allowed!");
@@ -176,6 +196,7 @@ public class LocationIndexTree implements LocationIndex {
                 + ", precision:" + minResolutionInMeter
                 + ", depth:" + indexStructureInfo.getEntries().length
                 + ", checksum:" + checksum()
+                + ", threads:" + threads
                 + ", entries:" + Arrays.toString(indexStructureInfo.getEntries())
                 + ", entriesPerLeaf:" + (float) lineIntIndex.getSize() / lineIntIndex.getLeafs());
 
@@ -184,20 +205,50 @@ public class LocationIndexTree implements LocationIndex {
 
     InMemConstructionIndex prepareInMemConstructionIndex(BBox bounds, EdgeFilter edgeFilter) {
         indexStructureInfo = IndexStructureInfo.create(bounds, minResolutionInMeter);
-        InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
-        AllEdgesIterator allIter = graph.getAllEdges();
+        int edges = graph.getEdges();
+        if (threads == 1 || edges < 2 * threads) {
+            InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
+            addEdges(inMem, 0, edges, edgeFilter);
+            return inMem;
+        }
+
+        // Every thread fills its own index with a contiguous range of edges. Merging these indices in the order of
+        // the edge ranges yields the same leaf entries as adding all edges to a single index.
+        InMemConstructionIndex[] inMems = new InMemConstructionIndex[threads];
+        ForkJoinPool pool = new ForkJoinPool(threads);
         try {
-            while (allIter.next()) {
-                if (!edgeFilter.accept(allIter))
+            pool.submit(() -> IntStream.range(0, threads).parallel().forEach(t -> {
+                inMems[t] = new InMemConstructionIndex(indexStructureInfo);
+                addEdges(inMems[t], (int) ((long) edges * t / threads), (int) ((long) edges * (t + 1) / threads), edgeFilter);
+            })).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        for (int t = 1; t < threads; t++) {
+            inMems[0].merge(inMems[t]);
+            inMems[t] = null;
+        }
+        return inMems[0];
+    }
+
+    private void addEdges(InMemConstructionIndex inMem, int fromEdge, int toEdge, EdgeFilter edgeFilter) {
+        for (int edge = fromEdge; edge < toEdge; edge++) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(edge * 2);
+            try {
+                if (!edgeFilter.accept(edgeState))
                     continue;
-                int edge = allIter.getEdge();
-                int nodeA = allIter.getBaseNode();
-                int nodeB = allIter.getAdjNode();
+                int nodeA = edgeState.getBaseNode();
+                int nodeB = edgeState.getAdjNode();
                 double lat1 = nodeAccess.getLat(nodeA);
                 double lon1 = nodeAccess.getLon(nodeA);
                 double lat2;
                 double lon2;
-                PointList points = allIter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+                PointList points = edgeState.fetchWayGeometry(FetchMode.PILLAR_ONLY);
                 int len = points.size();
                 for (int i = 0; i < len; i++) {
                     lat2 = points.getLat(i);
@@ -209,12 +260,12 @@ public class LocationIndexTree implements LocationIndex {
                 lat2 = nodeAccess.getLat(nodeB);
                 lon2 = nodeAccess.getLon(nodeB);
                 inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+            } catch (Exception ex1) {
+                logger.error("Problem! base:" + edgeState.getBaseNode() + ", adj:" + edgeState.getAdjNode()
+                        + ", edge:" + edge, ex1);
+                return;
             }
-        } catch (Exception ex1) {
-            logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
-                    + ", edge:" + allIter.getEdge(), ex1);
         }
-        return inMem;
     }
 
     int checksum() {
@@ -308,6 +359,198 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Finds the edges closest to the specified location, ranked by their distance. Unlike
+     * {@link #findClosest(double, double, EdgeFilter)} this method returns one Snap for every accepted edge, except
+     * that edges snapped to the same tower node only yield a single Snap. The tiles are visited in rings of increasing
+     * distance and the search stops as soon as no unvisited edge can be closer than the k-th Snap or the radius.
+     *
+     * @param k      the maximum number of returned Snaps, use Integer.MAX_VALUE to find all edges within the radius
+     * @param radius the maximum distance in meters, use Double.POSITIVE_INFINITY to find the k nearest edges anywhere
+     * @return the Snaps sorted by their query distance, or an empty list if no edge was found
+     */
+    public List<Snap> findNearest(final double queryLat, final double queryLon, int k, double radius, final EdgeFilter edgeFilter) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (k < 1)
+            throw new IllegalArgumentException("The number of nearest edges must be positive, was: " + k);
+        if (!(radius > 0))
+            throw new IllegalArgumentException("The radius must be positive, was: " + radius);
+
+        List<Snap> candidates = new ArrayList<>();
+        IntHashSet seenEdges = new IntHashSet();
+        IntHashSet seenNodes = new IntHashSet();
+        // after this many iterations all tiles were visited
+        int maxIteration = indexStructureInfo.getParts();
+        for (int iteration = 0; iteration < maxIteration; iteration++) {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+                if (!seenEdges.add(edgeId))
+                    return;
+                EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (!edgeFilter.accept(edge))
+                    return;
+                Snap snap = new Snap(queryLat, queryLon);
+                traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < snap.getQueryDistance()) {
+                        snap.setQueryDistance(normedDist);
+                        snap.setClosestNode(node);
+                        snap.setWayIndex(wayIndex);
+                        snap.setSnappedPosition(pos);
+                    }
+                });
+                if (!snap.isValid())
+                    return;
+                snap.setClosestEdge(edge);
+                snap.setQueryDistance(DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+                if (snap.getQueryDistance() <= radius && (snap.getSnappedPosition() != Snap.Position.TOWER || seenNodes.add(snap.getClosestNode())))
+                    candidates.add(snap);
+            });
+
+            double rMin = calculateRMin(queryLat, queryLon, iteration);
+            if (rMin >= radius)
+                break;
+            if (candidates.size() >= k) {
+                candidates.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+                // no edge in the remaining tiles can be closer than the k-th candidate
+                if (candidates.get(k - 1).getQueryDistance() < rMin)
+                    break;
+            }
+        }
+
+        candidates.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        List<Snap> result = candidates.size() > k ? new ArrayList<>(candidates.subList(0, k)) : candidates;
+        for (Snap snap : result) {
+            snap.calcSnappedPoint(DIST_PLANE);
+            snap.setQueryDistance(DIST_PLANE.calcDist(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon, queryLat, queryLon));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Snap> findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        return findClosestBatch(lats, lons, edgeFilter, false);
+    }
+
+    /**
+     * Finds the closest Snaps for many points at once. The result is the same as calling
+     * {@link #findClosest(double, double, EdgeFilter)} for every point, but the points are processed in spatial order
+     * so nearby points share the tile reads of the index and the decoded geometries of the edges.
+     *
+     * @param parallel if true the points are split into spatially coherent chunks that are processed concurrently, in
+     *                 this case the edge filter must be thread-safe
+     * @return the Snaps in the same order as the given points
+     */
+    public List<Snap> findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter, boolean parallel) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be the same, but was: " + lats.length + " vs. " + lons.length);
+
+        // sort the points along the z-curve of their tiles
+        SpatialKeyAlgo keyAlgo = indexStructureInfo.getKeyAlgo();
+        int parts = indexStructureInfo.getParts();
+        long[] tileKeys = new long[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            int x = Math.max(0, Math.min(parts - 1, keyAlgo.x(lons[i])));
+            int y = Math.max(0, Math.min(parts - 1, keyAlgo.y(lats[i])));
+            tileKeys[i] = keyAlgo.encode(x, y);
+        }
+        int[] order = IntStream.range(0, lats.length).boxed()
+                .sorted(Comparator.comparingLong(i -> tileKeys[i]))
+                .mapToInt(Integer::intValue).toArray();
+
+        Snap[] snaps = new Snap[lats.length];
+        int chunks = parallel ? Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), lats.length / MIN_BATCH_CHUNK_SIZE)) : 1;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        (chunks > 1 ? chunkStream.parallel() : chunkStream).forEach(chunk -> {
+            int from = (int) ((long) order.length * chunk / chunks);
+            int to = (int) ((long) order.length * (chunk + 1) / chunks);
+            BatchCache cache = new BatchCache();
+            for (int i = from; i < to; i++) {
+                int point = order[i];
+                snaps[point] = findClosest(lats[point], lons[point], edgeFilter, cache);
+            }
+        });
+        return Arrays.asList(snaps);
+    }
+
+    /**
+     * The same as {@link #findClosest(double, double, EdgeFilter)}, but the edges of the visited tiles and the
+     * geometries of the visited edges are cached.
+     */
+    private Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, BatchCache cache) {
+        cache.shrink();
+        final Snap closestMatch = new Snap(queryLat, queryLon);
+        IntHashSet seenEdges = new IntHashSet();
+        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, cache.tiles, edgeId -> {
+                if (!seenEdges.add(edgeId))
+                    return;
+                CachedEdge edge = cache.edges.get(edgeId);
+                if (edge == null) {
+                    EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                    edge = edgeFilter.accept(edgeIteratorState)
+                            ? new CachedEdge(edgeIteratorState.detach(false), edgeIteratorState.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ))
+                            : CachedEdge.REJECTED;
+                    cache.edges.put(edgeId, edge);
+                }
+                if (edge == CachedEdge.REJECTED)
+                    return;
+                final CachedEdge acceptedEdge = edge;
+                traverseEdge(queryLat, queryLon, edge.edge.getBaseNode(), edge.edge.getAdjNode(), edge.geometry, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < closestMatch.getQueryDistance()) {
+                        closestMatch.setQueryDistance(normedDist);
+                        closestMatch.setClosestNode(node);
+                        closestMatch.setClosestEdge(acceptedEdge.edge.detach(false));
+                        closestMatch.setWayIndex(wayIndex);
+                        closestMatch.setSnappedPosition(pos);
+                    }
+                });
+            });
+            if (closestMatch.isValid()) {
+                double rMin = calculateRMin(queryLat, queryLon, iteration);
+                double minDistance = DIST_PLANE.calcDenormalizedDist(closestMatch.getQueryDistance());
+                if (minDistance < rMin)
+                    break;
+            }
+        }
+
+        if (closestMatch.isValid()) {
+            closestMatch.calcSnappedPoint(DIST_PLANE);
+            closestMatch.setQueryDistance(DIST_PLANE.calcDist(closestMatch.getSnappedPoint().lat, closestMatch.getSnappedPoint().lon, queryLat, queryLon));
+        }
+        return closestMatch;
+    }
+
+    private static class CachedEdge {
+        static final CachedEdge REJECTED = new CachedEdge(null, null);
+        final EdgeIteratorState edge;
+        final PointList geometry;
+
+        CachedEdge(EdgeIteratorState edge, PointList geometry) {
+            this.edge = edge;
+            this.geometry = geometry;
+        }
+    }
+
+    /**
+     * The tiles and edges seen by the previous queries of a batch. Since the queries are sorted spatially we simply
+     * start over when the cache gets too large.
+     */
+    private static class BatchCache {
+        private static final int MAX_TILES = 1_024;
+        private static final int MAX_EDGES = 16_384;
+        final LongObjectMap<int[]> tiles = new LongObjectHashMap<>();
+        final IntObjectMap<CachedEdge> edges = new IntObjectHashMap<>();
+
+        void shrink() {
+            if (tiles.size() > MAX_TILES)
+                tiles.clear();
+            if (edges.size() > MAX_EDGES)
+                edges.clear();
+        }
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -318,17 +561,18 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, EdgeCheck edgeCheck) {
-        int baseNode = currEdge.getBaseNode();
+        traverseEdge(queryLat, queryLon, currEdge.getBaseNode(), currEdge.getAdjNode(), currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ), edgeCheck);
+    }
+
+    private void traverseEdge(double queryLat, double queryLon, int baseNode, int adjNode, PointList pointList, EdgeCheck edgeCheck) {
         double baseLat = nodeAccess.getLat(baseNode);
         double baseLon = nodeAccess.getLon(baseNode);
         double baseDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, baseLat, baseLon);
 
-        int adjNode = currEdge.getAdjNode();
         double adjLat = nodeAccess.getLat(adjNode);
         double adjLon = nodeAccess.getLon(adjNode);
         double adjDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, adjLat, adjLon);
 
-        PointList pointList = currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
         final int len = pointList.size();
 
         int closestTowerNode;
@@ -64,6 +64,8 @@ public class Constants {
     public static final int VERSION_EM = 4;
     public static final int VERSION_SHORTCUT = 9;
     public static final int VERSION_NODE_CH = 0;
+    public static final int VERSION_CCH = 0;
+    public static final int VERSION_PRECOMPUTED_WEIGHTS = 0;
     public static final int VERSION_GEOMETRY = 7;
     public static final int VERSION_TURN_COSTS = 0;
     public static final int VERSION_LOCATION_IDX = 5;
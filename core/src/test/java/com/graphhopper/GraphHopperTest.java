@@ -24,6 +24,7 @@ import com.graphhopper.config.TurnCostsConfig;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.routing.RouteCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -32,6 +33,7 @@ import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
@@ -142,6 +144,170 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testMonacoSortedGraph(boolean withCH) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setSortGraph(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("profile"));
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        req.putHint(CH.DISABLE, !withCH);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // the same results as for the unsorted graph, see testMonacoDifferentAlgorithms
+        ResponsePath res = rsp.getBest();
+        assertEquals(3587.6, res.getDistance(), .1);
+        assertEquals(274255, res.getTime(), 10);
+        assertEquals(105, res.getPoints().size());
+        hopper.close();
+
+        // the sorted graph can be loaded again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("profile"));
+        assertTrue(hopper.load());
+        rsp = hopper.route(req);
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testMonacoCompressedGeometry() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setCompressGeometry(true).
+                setStoreOnFlush(true);
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // the same results as for the uncompressed graph, see testMonacoDifferentAlgorithms
+        ResponsePath res = rsp.getBest();
+        assertEquals(3587.6, res.getDistance(), .1);
+        assertEquals(274255, res.getTime(), 10);
+        assertEquals(105, res.getPoints().size());
+        PointList points = res.getPoints();
+        hopper.close();
+
+        // the encoding is stored in the graph and does not have to be configured again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        assertTrue(hopper.load());
+        assertTrue(hopper.getBaseGraph().isCompressedGeometry());
+        rsp = hopper.route(req);
+        assertEquals(points, rsp.getBest().getPoints());
+        hopper.close();
+    }
+
+    @Test
+    public void testPass1Cache() {
+        String cacheDir = GH_LOCATION + "/pass1-cache";
+        GraphHopper hopper = importWithPass1Cache(GH_LOCATION + "/1", cacheDir);
+        String[] cacheFiles = new File(cacheDir).list();
+        assertEquals(1, cacheFiles.length);
+        assertTrue(cacheFiles[0].startsWith("pass1_"), cacheFiles[0]);
+        long modified = new File(cacheDir, cacheFiles[0]).lastModified();
+
+        GraphHopper cached = importWithPass1Cache(GH_LOCATION + "/2", cacheDir);
+        assertArrayEquals(cacheFiles, new File(cacheDir).list());
+        assertEquals(modified, new File(cacheDir, cacheFiles[0]).lastModified());
+        assertEquals(hopper.getBaseGraph().getNodes(), cached.getBaseGraph().getNodes());
+        assertEquals(hopper.getBaseGraph().getEdges(), cached.getBaseGraph().getEdges());
+        assertEquals(hopper.getProperties().getAll().get("datareader.data.date"), cached.getProperties().getAll().get("datareader.data.date"));
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        assertEquals(hopper.route(req).getBest().getDistance(), cached.route(req).getBest().getDistance(), 1.e-6);
+        assertEquals(hopper.route(req).getBest().getPoints(), cached.route(req).getBest().getPoints());
+        hopper.close();
+        cached.close();
+    }
+
+    private GraphHopper importWithPass1Cache(String location, String cacheDir) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(location).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getReaderConfig().setPass1CacheDir(cacheDir);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
+    @Test
+    public void testParallelTagParsing() {
+        GraphHopper sequential = importForTagParsing(1);
+        GraphHopper parallel = importForTagParsing(4);
+        BaseGraph graph = sequential.getBaseGraph();
+        BaseGraph parallelGraph = parallel.getBaseGraph();
+        assertEquals(graph.getNodes(), parallelGraph.getNodes());
+        assertEquals(graph.getEdges(), parallelGraph.getEdges());
+        int ints = (int) Math.ceil(sequential.getEncodingManager().getBytesForFlags() / 4.0);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState edge = parallelGraph.getEdgeIteratorState(iter.getEdge(), Integer.MIN_VALUE);
+            assertEquals(iter.getBaseNode(), edge.getBaseNode());
+            assertEquals(iter.getAdjNode(), edge.getAdjNode());
+            assertEquals(iter.getDistance(), edge.getDistance());
+            for (int i = 0; i < ints; i++)
+                assertEquals(graph.getEdgeAccess().getInt(iter.getEdge(), i), parallelGraph.getEdgeAccess().getInt(iter.getEdge(), i), "edge " + iter.getEdge());
+            assertEquals(iter.getKeyValues(), edge.getKeyValues());
+        }
+        sequential.close();
+        parallel.close();
+    }
+
+    private GraphHopper importForTagParsing(int threads) {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", BAYREUTH).
+                putObject("graph.location", GH_LOCATION + "/" + threads).
+                putObject("graph.encoded_values", "car_access, car_average_speed, road_class, road_environment, " +
+                        "max_speed, country, urban_density, osm_way_id, car_temporal_access, max_weight").
+                putObject("import.osm.ignored_highways", "").
+                putObject("max_speed_calculator.enabled", true).
+                putObject("graph.urban_density.threads", 1).
+                putObject("datareader.tag_parser_threads", threads).
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car")));
+        GraphHopper hopper = new GraphHopper().init(config);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
+    @Test
+    public void testMonacoPagedNodeIdMap() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        hopper.getReaderConfig().setNodeIdMap("paged");
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        assertFalse(new File(GH_LOCATION, "tmp_node_ids").exists());
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // the same results as for the default b-tree, see testMonacoDifferentAlgorithms
+        ResponsePath res = rsp.getBest();
+        assertEquals(3587.6, res.getDistance(), .1);
+        assertEquals(274255, res.getTime(), 10);
+        assertEquals(105, res.getPoints().size());
+        hopper.close();
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
@@ -729,6 +895,172 @@ public class GraphHopperTest {
         assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100d), 14475);
     }
 
+    @Test
+    public void testCustomModelWithCCH() {
+        final String customCar = "custom_car";
+        final String emptyCar = "empty_car";
+        Profile p1 = TestProfiles.accessAndSpeed(customCar, "car");
+        p1.getCustomModel().addToSpeed(If("road_class == TERTIARY || road_class == TRACK", MULTIPLY, "0.1"));
+        Profile p2 = TestProfiles.accessAndSpeed(emptyCar, "car");
+        GraphHopper hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(p1, p2).
+                setCCHEnabled(true).
+                setStoreOnFlush(true).
+                importOrLoad();
+        assertNotNull(hopper.getCustomizableCH());
+
+        // the same routes as in testCustomModel, but the requests with a custom model are answered by the CCH
+        assertDistance(hopper, emptyCar, new CustomModel(p1.getCustomModel()), 13223);
+        CustomModel customModelWithUnclassifiedRule = new CustomModel().addToSpeed(
+                If("road_class == UNCLASSIFIED", MULTIPLY, "0.1")
+        );
+        assertDistance(hopper, customCar, customModelWithUnclassifiedRule, 19289);
+        assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(200d), 8725);
+        assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100d), 14475);
+
+        // speed mode does not support headings, pass_through or round trips, so these requests use the flexible mode
+        GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(customCar)
+                .setCustomModel(customModelWithUnclassifiedRule).setHeadings(Arrays.asList(90.0, Double.NaN));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        req.putHint(CH.DISABLE, true);
+        GHResponse flexRsp = hopper.route(req);
+        assertFalse(flexRsp.hasErrors(), flexRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), rsp.getBest().getDistance(), 1.e-6);
+        req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(customCar)
+                .setCustomModel(customModelWithUnclassifiedRule).putHint(Routing.PASS_THROUGH, true);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(19289, rsp.getBest().getDistance(), 1);
+        req = new GHRequest(Collections.singletonList(new GHPoint(50.008732, 11.596413))).setProfile(customCar)
+                .setCustomModel(customModelWithUnclassifiedRule).setAlgorithm(ROUND_TRIP);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        hopper.close();
+
+        // the CCH preparation is loaded from disk
+        hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(p1, p2).
+                setCCHEnabled(true);
+        assertTrue(hopper.load());
+        assertDistance(hopper, customCar, customModelWithUnclassifiedRule, 19289);
+        hopper.close();
+    }
+
+    @Test
+    public void testPrecomputedWeights() {
+        final String customCar = "custom_car";
+        final String emptyCar = "empty_car";
+        Profile p1 = TestProfiles.accessAndSpeed(customCar, "car");
+        p1.getCustomModel().addToSpeed(If("road_class == TERTIARY || road_class == TRACK", MULTIPLY, "0.1"));
+        Profile p2 = TestProfiles.accessAndSpeed(emptyCar, "car");
+        GraphHopper hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(p1, p2).
+                setPrecomputedWeightProfiles(Arrays.asList(customCar, emptyCar)).
+                setStoreOnFlush(true).
+                importOrLoad();
+        assertEquals(2, hopper.getPrecomputedWeights().size());
+
+        // the same routes as in testCustomModel, requests with a custom model still evaluate it on the fly
+        assertDistance(hopper, emptyCar, null, 8725);
+        assertDistance(hopper, customCar, null, 13223);
+        CustomModel customModelWithUnclassifiedRule = new CustomModel().addToSpeed(
+                If("road_class == UNCLASSIFIED", MULTIPLY, "0.1")
+        );
+        assertDistance(hopper, customCar, customModelWithUnclassifiedRule, 19289);
+        GHResponse rsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(customCar));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        long time = rsp.getBest().getTime();
+        hopper.close();
+
+        // the weights are loaded from disk and give the same result as the dynamic evaluation
+        hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(p1, p2).
+                setPrecomputedWeightProfiles(Collections.singletonList(customCar));
+        assertTrue(hopper.load());
+        assertEquals(1, hopper.getPrecomputedWeights().size());
+        rsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(customCar));
+        assertEquals(13223, rsp.getBest().getDistance(), 1);
+        assertEquals(time, rsp.getBest().getTime());
+        hopper.close();
+
+        hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(p1, p2);
+        assertTrue(hopper.load());
+        assertTrue(hopper.getPrecomputedWeights().isEmpty());
+        rsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(customCar));
+        assertEquals(13223, rsp.getBest().getDistance(), 1);
+        assertEquals(time, rsp.getBest().getTime());
+        hopper.close();
+    }
+
+    @Test
+    public void testRouteCache() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setRouteCache(10, 60_000).
+                importOrLoad();
+        RouteCache cache = hopper.getRouteCache();
+        GHResponse rsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // the same request is answered from the cache
+        GHResponse cachedRsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile));
+        assertEquals(1, cache.getHits());
+        assertEquals(rsp.getBest().getDistance(), cachedRsp.getBest().getDistance());
+        assertEquals(rsp.getBest().getTime(), cachedRsp.getBest().getTime());
+        assertTrue(cachedRsp.getDebugInfo().contains("route cache hit"), cachedRsp.getDebugInfo());
+
+        // changing a cached response does not change the cache entry
+        int points = rsp.getBest().getPoints().size();
+        int instructionPoints = rsp.getBest().getInstructions().get(0).getPoints().size();
+        cachedRsp.getBest().setDistance(0);
+        cachedRsp.getBest().getPoints().add(50, 11);
+        cachedRsp.getBest().getWaypoints().add(50, 11);
+        cachedRsp.getBest().getInstructions().get(0).setPoints(PointList.EMPTY);
+        GHResponse secondCachedRsp = hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile));
+        assertEquals(2, cache.getHits());
+        assertEquals(rsp.getBest().getDistance(), secondCachedRsp.getBest().getDistance());
+        assertEquals(points, secondCachedRsp.getBest().getPoints().size());
+        assertEquals(2, secondCachedRsp.getBest().getWaypoints().size());
+        assertEquals(instructionPoints, secondCachedRsp.getBest().getInstructions().get(0).getPoints().size());
+
+        // other hints or a custom model lead to a different cache entry
+        GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile)
+                .setCustomModel(new CustomModel().addToSpeed(If("road_class == UNCLASSIFIED", MULTIPLY, "0.1")));
+        req.putHint(CH.DISABLE, true);
+        GHResponse customRsp = hopper.route(req);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertNotEquals(rsp.getBest().getDistance(), customRsp.getBest().getDistance(), 1);
+        assertEquals(2, cache.size());
+        assertEquals(0.5, cache.getHitRatio(), 1.e-6);
+
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        hopper.route(new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile));
+        assertEquals(2, cache.getHits());
+        hopper.close();
+    }
+
     private void assertDistance(GraphHopper hopper, String profile, CustomModel customModel, double expectedDistance) {
         GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509);
         req.setProfile(profile);
@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedLongLongMapTest {
+
+    @Test
+    public void testEmptyValueIfMissing() {
+        PagedLongLongMap instance = new PagedLongLongMap(new GHDirectory("", DAType.RAM), "test", DAType.RAM, -1);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> instance.put(1, -1));
+        assertTrue(ex.getMessage().contains("Value cannot be the 'empty value' -1"));
+
+        assertEquals(-1, instance.get(404));
+        assertEquals(-1, instance.put(404, 21));
+        assertEquals(21, instance.get(404));
+        assertEquals(-1, instance.get(403));
+        assertEquals(-1, instance.get(9485854858458484L));
+        assertEquals(21, instance.put(404, 0));
+        assertEquals(0, instance.get(404));
+        assertEquals(1, instance.getSize());
+    }
+
+    @Test
+    public void testValueRange() {
+        PagedLongLongMap instance = new PagedLongLongMap(new GHDirectory("", DAType.RAM), "test", DAType.RAM, -1);
+        long max = instance.getMaxValue();
+        instance.put(1, max);
+        instance.put(2, -max);
+        instance.put(3, -2);
+        assertEquals(max, instance.get(1));
+        assertEquals(-max, instance.get(2));
+        assertEquals(-2, instance.get(3));
+        assertThrows(IllegalArgumentException.class, () -> instance.put(4, max + 1));
+    }
+
+    @Test
+    public void testRandom(@TempDir Path path) {
+        Directory dir = new GHDirectory(path.toString() + "/", DAType.RAM_STORE).create();
+        PagedLongLongMap instance = new PagedLongLongMap(dir, "test", DAType.MMAP, -1);
+        Random rand = new Random(0);
+        Map<Long, Long> map = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key;
+            if (i % 1000 == 0)
+                // negative and huge keys are stored separately
+                key = rand.nextBoolean() ? -rand.nextInt(1000) - 1 : Long.MAX_VALUE - rand.nextInt(1000);
+            else
+                // a few dense id ranges with big gaps between them
+                key = rand.nextInt(4) * 2_000_000_000L + rand.nextInt(1_000_000);
+            long value = rand.nextInt(1_000_000_000) * (rand.nextBoolean() ? 100L : -1L);
+            Long old = map.put(key, value);
+            assertEquals(old == null ? -1 : old, instance.put(key, value));
+        }
+        assertEquals(map.size(), instance.getSize());
+        for (Map.Entry<Long, Long> e : map.entrySet()) {
+            assertEquals(e.getValue(), instance.get(e.getKey()), "key " + e.getKey());
+        }
+        for (int i = 0; i < 1000; i++) {
+            long key = 1_000_000 + rand.nextInt(1_000_000_000);
+            assertEquals(map.getOrDefault(key, -1L), instance.get(key));
+        }
+        // only the pages for the used ranges are allocated, 4 x 16 pages of 320KB
+        assertTrue(instance.getMemoryUsage() < 30, "memory usage " + instance.getMemoryUsage());
+        assertTrue(new File(path.toFile(), "test").exists());
+
+        instance.clear();
+        assertFalse(new File(path.toFile(), "test").exists());
+        assertEquals(0, instance.getSize());
+        assertEquals(-1, instance.get(map.keySet().iterator().next()));
+        instance.put(5, 6);
+        assertEquals(6, instance.get(5));
+        instance.clear();
+    }
+}
@@ -0,0 +1,134 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PhastShortestPathTreeTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).build();
+
+    @Test
+    public void simple() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph);
+        assertTrue(PhastShortestPathTree.isSupported(chGraph));
+
+        QueryGraph queryGraph = QueryGraph.create(graph, new ArrayList<>());
+        PhastShortestPathTree tree = new PhastShortestPathTree(queryGraph, chGraph, false);
+        tree.setTimeLimit(55_000);
+        List<ShortestPathTree.IsoLabel> result = new ArrayList<>();
+        tree.search(0, result::add);
+        IntObjectHashMap<ShortestPathTree.IsoLabel> labels = new IntObjectHashMap<>();
+        result.forEach(l -> labels.put(l.node, l));
+        // the first label is the one of the start node, nodes 3 and 5 are too far away
+        assertEquals(0, result.get(0).node);
+        assertEquals(4, result.size());
+        assertFalse(labels.containsKey(3));
+        assertFalse(labels.containsKey(5));
+        assertEquals(30_000, labels.get(2).time);
+        assertEquals(300, labels.get(2).distance, 1.e-6);
+        assertEquals(1, labels.get(2).parent.node);
+        assertEquals(50, labels.get(4).weight, 1.e-6);
+        // 3->2 is not allowed, but we are looking at the paths leading to 3 here
+        tree = new PhastShortestPathTree(queryGraph, chGraph, true);
+        tree.setDistanceLimit(1000);
+        List<ShortestPathTree.IsoLabel> reverseResult = new ArrayList<>();
+        tree.search(3, reverseResult::add);
+        IntObjectHashMap<ShortestPathTree.IsoLabel> reverseLabels = new IntObjectHashMap<>();
+        reverseResult.forEach(l -> reverseLabels.put(l.node, l));
+        assertEquals(300, reverseLabels.get(2).distance, 1.e-6);
+        assertEquals(3, reverseLabels.get(2).parent.node);
+        assertEquals(500, reverseLabels.get(1).distance, 1.e-6);
+        assertEquals(2, reverseLabels.get(1).parent.node);
+        assertEquals(100, reverseLabels.get(5).distance, 1.e-6);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"false,123", "false,456", "false,789", "true,123", "true,456", "true,11941204353204"})
+    public void random(boolean reverseFlow, long seed) {
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph);
+
+        for (int i = 0; i < 20; i++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 1, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            int from = snaps.get(0).getClosestNode();
+            ShortestPathTree dijkstra = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(chGraph.getWeighting()), reverseFlow, TraversalMode.NODE_BASED);
+            PhastShortestPathTree phast = new PhastShortestPathTree(queryGraph, chGraph, reverseFlow);
+            double limit = rnd.nextInt(500_000);
+            dijkstra.setTimeLimit(limit);
+            phast.setTimeLimit(limit);
+            IntObjectHashMap<ShortestPathTree.IsoLabel> expected = new IntObjectHashMap<>();
+            dijkstra.search(from, l -> expected.put(l.node, l));
+            IntObjectHashMap<ShortestPathTree.IsoLabel> given = new IntObjectHashMap<>();
+            phast.search(from, l -> given.put(l.node, l));
+
+            int strictViolations = 0;
+            for (int node = 0; node < queryGraph.getNodes(); node++) {
+                ShortestPathTree.IsoLabel e = expected.get(node);
+                ShortestPathTree.IsoLabel g = given.get(node);
+                if (e == null || g == null) {
+                    // nodes close to the limit can be included or not if there are multiple shortest paths
+                    ShortestPathTree.IsoLabel l = e == null ? g : e;
+                    if (l != null && Math.abs(l.time - limit) > 1000)
+                        fail("seed: " + seed + ", node " + node + " is only found by one of the algorithms: " + l);
+                    continue;
+                }
+                // the weights of the shortcuts are rounded, so the weights of long paths can differ slightly
+                double tolerance = Math.max(1.e-2, 1.e-4 * e.weight);
+                assertEquals(e.weight, g.weight, tolerance, "seed: " + seed + ", node: " + node);
+                if (Math.abs(e.time - g.time) > 50 || Math.abs(e.distance - g.distance) > 0.1)
+                    strictViolations++;
+                if (g.parent != null)
+                    assertEquals(g.weight, given.get(g.parent.node).weight + queryGraph.wrapWeighting(chGraph.getWeighting())
+                            .calcEdgeWeight(queryGraph.getEdgeIteratorState(g.edge, g.node), reverseFlow), tolerance, "seed: " + seed);
+            }
+            assertTrue(strictViolations <= 0.05 * expected.size(), "seed: " + seed + ", too many strict violations: " + strictViolations);
+        }
+    }
+
+    private RoutingCHGraph prepareCH(BaseGraph graph) {
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Pass1CacheTest {
+
+    @Test
+    public void testWriteAndRead(@TempDir Path dir) throws IOException {
+        File osmFile = dir.resolve("test.osm").toFile();
+        Files.writeString(osmFile.toPath(), "<osm></osm>");
+        File cacheFile = Pass1Cache.getFile(dir.toFile(), osmFile, "key");
+        assertEquals(cacheFile, Pass1Cache.getFile(dir.toFile(), osmFile, "key"));
+        assertNotEquals(cacheFile, Pass1Cache.getFile(dir.toFile(), osmFile, "other key"));
+
+        LongArrayList way1 = LongArrayList.from(5, 3, 7_000_000_000L, 7_000_000_001L);
+        LongArrayList way2 = LongArrayList.from(7_000_000_001L, 1);
+        ReaderRelation relation = new ReaderRelation(12);
+        relation.setTag("type", "restriction");
+        relation.setTag("restriction", "no_left_turn");
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.WAY, 2, "from"));
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.NODE, 3, "via"));
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.WAY, 4, "to"));
+        ReaderRelation relationWithoutRole = new ReaderRelation(13);
+        relationWithoutRole.add(new ReaderRelation.Member(ReaderElement.Type.WAY, 5, null));
+        Date timestamp = new Date(1_700_000_000_000L);
+
+        try (Pass1Cache.Writer writer = new Pass1Cache.Writer(cacheFile)) {
+            writer.writeTimestamp(timestamp);
+            writer.writeWayNodes(way1);
+            writer.writeWayNodes(way2);
+            assertFalse(cacheFile.exists());
+            writer.writeRelation(relation);
+            writer.writeRelation(relationWithoutRole);
+            writer.finish();
+        }
+        assertTrue(cacheFile.exists());
+        assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+
+        List<LongArrayList> ways = new ArrayList<>();
+        List<ReaderRelation> relations = new ArrayList<>();
+        List<Date> timestamps = new ArrayList<>();
+        Pass1Cache.read(cacheFile, new Pass1Cache.Handler() {
+            @Override
+            public void handleWayNodes(LongArrayList nodes) {
+                ways.add(new LongArrayList(nodes));
+            }
+
+            @Override
+            public void handleRelation(ReaderRelation relation) {
+                relations.add(relation);
+            }
+
+            @Override
+            public void handleTimestamp(Date timestamp) {
+                timestamps.add(timestamp);
+            }
+        });
+        assertEquals(List.of(way1, way2), ways);
+        assertEquals(List.of(timestamp), timestamps);
+        assertEquals(2, relations.size());
+        assertEquals(relation.toString(), relations.get(0).toString());
+        assertEquals(relation.getTags(), relations.get(0).getTags());
+        assertEquals(5, relations.get(1).getMembers().get(0).getRef());
+        assertEquals("", relations.get(1).getMembers().get(0).getRole());
+    }
+
+    @Test
+    public void testAbortedWriteLeavesNoCache(@TempDir Path dir) {
+        File cacheFile = dir.resolve("cache.bin").toFile();
+        try (Pass1Cache.Writer writer = new Pass1Cache.Writer(cacheFile)) {
+            writer.writeWayNodes(LongArrayList.from(1, 2));
+        }
+        assertFalse(cacheFile.exists());
+        assertEquals(0, dir.toFile().list().length);
+    }
+
+    @Test
+    public void testZigZag() {
+        for (long value : new long[]{0, 1, -1, 63, -64, Long.MAX_VALUE, Long.MIN_VALUE})
+            assertEquals(value, Pass1Cache.zigZagDecode(Pass1Cache.zigZagEncode(value)));
+    }
+}
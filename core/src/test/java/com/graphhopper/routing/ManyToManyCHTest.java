@@ -0,0 +1,224 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManyToManyCHTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManyToManyCHTest.class);
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+
+    @Test
+    public void simpleNodeBased() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // 0-1-2-3
+        //   |
+        //   4
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).setCalcPaths(true).calcMatrix(new int[]{0, 3, -1}, new int[]{3, 4, 0});
+        assertEquals(600, result.getDistance(0, 0), 1.e-6);
+        assertEquals(60_000, result.getTime(0, 0));
+        assertEquals(500, result.getDistance(0, 1), 1.e-6);
+        assertEquals(0, result.getDistance(0, 2), 1.e-6);
+        assertEquals(0, result.getWeight(0, 2), 1.e-6);
+        // 2->3 is a one-way, so we cannot get from 3 anywhere but to itself
+        assertEquals(0, result.getDistance(1, 0), 1.e-6);
+        assertFalse(result.isConnected(1, 1));
+        assertFalse(result.isConnected(1, 2));
+        assertEquals(Long.MAX_VALUE, result.getTime(1, 2));
+        // invalid source
+        for (int t = 0; t < 3; t++)
+            assertFalse(result.isConnected(2, t));
+
+        ManyToManyCH.Result weightsOnly = new ManyToManyCH(chGraph).calcMatrix(new int[]{0}, new int[]{3});
+        assertEquals(result.getWeight(0, 0), weightsOnly.getWeight(0, 0), 1.e-6);
+        assertThrows(IllegalStateException.class, () -> weightsOnly.getDistance(0, 0));
+    }
+
+    @Test
+    public void oneToManyWithAlternatingTargets() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // 0-1-2-3
+        //   |
+        //   4
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+        int[] noRestrictions = {EdgeIterator.ANY_EDGE, EdgeIterator.ANY_EDGE};
+
+        ManyToManyCH manyToMany = new ManyToManyCH(chGraph);
+        List<Path> paths = manyToMany.calcPaths(0, EdgeIterator.ANY_EDGE, new int[]{3, 4}, noRestrictions);
+        int visitedNodes = manyToMany.getVisitedNodes();
+        assertEquals(600, paths.get(0).getDistance(), 1.e-6);
+        assertEquals(500, paths.get(1).getDistance(), 1.e-6);
+        paths = manyToMany.calcPaths(0, EdgeIterator.ANY_EDGE, new int[]{2, 3}, noRestrictions);
+        assertEquals(300, paths.get(0).getDistance(), 1.e-6);
+        // the buckets of the first targets are still there, so only the forward search is done
+        paths = manyToMany.calcPaths(0, EdgeIterator.ANY_EDGE, new int[]{3, 4}, noRestrictions);
+        assertTrue(manyToMany.getVisitedNodes() < visitedNodes, manyToMany.getVisitedNodes() + " vs. " + visitedNodes);
+        assertEquals(600, paths.get(0).getDistance(), 1.e-6);
+        assertEquals(500, paths.get(1).getDistance(), 1.e-6);
+
+        // the upward searches of two different nodes cannot meet if they only settle their start nodes
+        paths = new ManyToManyCH(chGraph).setMaxVisitedNodes(1).calcPaths(0, EdgeIterator.ANY_EDGE, new int[]{3, 4}, noRestrictions);
+        assertFalse(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"node", "edge", "edge_u_turns"})
+    public void random(String mode) {
+        boolean edgeBased = !mode.equals("node");
+        long seed = System.nanoTime();
+        LOGGER.info("seed: " + seed);
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 50, 2.5, true, speedEnc, null, 0.9, 0);
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+
+        CHConfig chConfig = edgeBased
+                ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), mode.equals("edge_u_turns") ? 40 : Double.POSITIVE_INFINITY))
+                : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+        TraversalMode traversalMode = edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+
+        for (int j = 0; j < 10; j++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            Weighting weighting = queryGraph.wrapWeighting(chConfig.getWeighting());
+            int[] sources = new int[8];
+            int[] targets = new int[12];
+            for (int i = 0; i < sources.length; i++)
+                sources[i] = rnd.nextInt(queryGraph.getNodes());
+            for (int i = 0; i < targets.length; i++)
+                targets[i] = rnd.nextInt(queryGraph.getNodes());
+
+            ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).setCalcPaths(true).calcMatrix(sources, targets);
+            int strictViolations = 0;
+            for (int s = 0; s < sources.length; s++) {
+                for (int t = 0; t < targets.length; t++) {
+                    // using plain dijkstra instead of bidirectional, because of #1592
+                    Path refPath = new Dijkstra(queryGraph, weighting, traversalMode).calcPath(sources[s], targets[t]);
+                    String msg = "seed: " + seed + ", " + sources[s] + "->" + targets[t];
+                    assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                    if (!refPath.isFound())
+                        continue;
+                    assertEquals(refPath.getWeight(), result.getWeight(s, t), 1.e-2, msg);
+                    // the distance and time can differ if there are multiple shortest paths
+                    if (Math.abs(refPath.getDistance() - result.getDistance(s, t)) > 1.e-1
+                            || Math.abs(refPath.getTime() - result.getTime(s, t)) > 50)
+                        strictViolations++;
+                }
+            }
+            assertTrue(strictViolations <= 0.05 * sources.length * targets.length, "too many strict violations: " + strictViolations + ", seed: " + seed);
+        }
+    }
+
+    @Test
+    public void randomOneToManyWithEdgeRestrictions() {
+        long seed = System.nanoTime();
+        LOGGER.info("seed: " + seed);
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 50, 2.5, true, speedEnc, null, 0.9, 0);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+
+        CHConfig chConfig = CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        for (int j = 0; j < 10; j++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            Weighting weighting = queryGraph.wrapWeighting(chConfig.getWeighting());
+            ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph));
+            int[] targets = new int[12];
+            int[] targetInEdges = new int[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = rnd.nextInt(queryGraph.getNodes());
+                targetInEdges[i] = randomAdjacentEdge(queryGraph, targets[i], rnd);
+            }
+            // the same targets for all sources, so the backward searches are reused
+            for (int s = 0; s < 8; s++) {
+                int source = rnd.nextInt(queryGraph.getNodes());
+                int sourceOutEdge = randomAdjacentEdge(queryGraph, source, rnd);
+                List<Path> paths = manyToMany.calcPaths(source, sourceOutEdge, targets, targetInEdges);
+                assertEquals(targets.length, paths.size());
+                for (int t = 0; t < targets.length; t++) {
+                    Path refPath = new DijkstraBidirectionRef(queryGraph, weighting, TraversalMode.EDGE_BASED)
+                            .calcPath(source, targets[t], sourceOutEdge, targetInEdges[t]);
+                    String msg = "seed: " + seed + ", " + source + "->" + targets[t] + ", edges: " + sourceOutEdge + "->" + targetInEdges[t];
+                    assertEquals(refPath.isFound(), paths.get(t).isFound(), msg);
+                    if (!refPath.isFound())
+                        continue;
+                    assertEquals(refPath.getWeight(), paths.get(t).getWeight(), 1.e-2, msg);
+                    List<EdgeIteratorState> edges = paths.get(t).calcEdges();
+                    if (sourceOutEdge != EdgeIterator.ANY_EDGE && !edges.isEmpty())
+                        assertEquals(sourceOutEdge, edges.get(0).getEdge(), msg);
+                    if (targetInEdges[t] != EdgeIterator.ANY_EDGE && !edges.isEmpty())
+                        assertEquals(targetInEdges[t], edges.get(edges.size() - 1).getEdge(), msg);
+                }
+            }
+        }
+    }
+
+    private static int randomAdjacentEdge(QueryGraph queryGraph, int node, Random rnd) {
+        EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(node);
+        int edge = EdgeIterator.ANY_EDGE;
+        while (iter.next())
+            if (rnd.nextInt(3) == 0)
+                edge = iter.getEdge();
+        return edge;
+    }
+}
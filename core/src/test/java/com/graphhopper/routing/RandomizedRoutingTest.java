@@ -27,6 +27,7 @@ import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
 import com.graphhopper.routing.weighting.SpeedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
@@ -53,6 +54,7 @@ import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 import static com.graphhopper.util.GHUtility.createRandomSnaps;
 import static com.graphhopper.util.Parameters.Algorithms.*;
 import static com.graphhopper.util.Parameters.Routing.ALGORITHM;
+import static com.graphhopper.util.Parameters.Routing.PRIMITIVE_SEARCH_STATE;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -77,6 +79,9 @@ public class RandomizedRoutingTest {
                     FixtureSupplier.create(Algo.CH_DIJKSTRA, true, false, NODE_BASED),
                     FixtureSupplier.create(Algo.LM_UNIDIR, false, true, NODE_BASED),
                     FixtureSupplier.create(Algo.LM_BIDIR, false, true, NODE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_DIJKSTRA, false, false, NODE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_ASTAR_BIDIR, false, false, NODE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_LM_BIDIR, false, true, NODE_BASED),
                     FixtureSupplier.create(Algo.DIJKSTRA, false, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_UNIDIR, false, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_BIDIR, false, false, EDGE_BASED),
@@ -84,6 +89,9 @@ public class RandomizedRoutingTest {
                     FixtureSupplier.create(Algo.CH_DIJKSTRA, true, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.LM_UNIDIR, false, true, EDGE_BASED),
                     FixtureSupplier.create(Algo.LM_BIDIR, false, true, EDGE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_DIJKSTRA, false, false, EDGE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_ASTAR_BIDIR, false, false, EDGE_BASED),
+                    FixtureSupplier.create(Algo.PRIMITIVE_LM_BIDIR, false, true, EDGE_BASED),
                     FixtureSupplier.create(Algo.PERFECT_ASTAR, false, false, NODE_BASED)
             ).map(Arguments::of);
         }
@@ -193,6 +201,14 @@ public class RandomizedRoutingTest {
                     return new LMRoutingAlgorithmFactory(lm).createAlgo(graph, weighting, new AlgorithmOptions().setAlgorithm(ASTAR_BI).setTraversalMode(traversalMode));
                 case LM_UNIDIR:
                     return new LMRoutingAlgorithmFactory(lm).createAlgo(graph, weighting, new AlgorithmOptions().setAlgorithm(ASTAR).setTraversalMode(traversalMode));
+                case PRIMITIVE_DIJKSTRA:
+                    return new PrimitiveAStar(graph, graph.wrapWeighting(weighting), traversalMode);
+                case PRIMITIVE_ASTAR_BIDIR:
+                    return new PrimitiveAStarBidirection(graph, graph.wrapWeighting(weighting), traversalMode)
+                            .setApproximation(new BeelineWeightApproximator(graph.getNodeAccess(), weighting));
+                case PRIMITIVE_LM_BIDIR:
+                    return new LMRoutingAlgorithmFactory(lm).createAlgo(graph, weighting, new AlgorithmOptions().setAlgorithm(ASTAR_BI).setTraversalMode(traversalMode)
+                            .setHints(new PMap().putObject(PRIMITIVE_SEARCH_STATE, true)));
                 case PERFECT_ASTAR: {
                     AStarBidirection perfectAStarBi = new AStarBidirection(graph, weighting, traversalMode);
                     perfectAStarBi.setApproximation(new PerfectApproximator(graph, weighting, traversalMode, false));
@@ -213,7 +229,10 @@ public class RandomizedRoutingTest {
         CH_DIJKSTRA,
         LM_BIDIR,
         LM_UNIDIR,
-        PERFECT_ASTAR
+        PERFECT_ASTAR,
+        PRIMITIVE_DIJKSTRA,
+        PRIMITIVE_ASTAR_BIDIR,
+        PRIMITIVE_LM_BIDIR
     }
 
     private static class RepeatedFixtureProvider implements ArgumentsProvider {
@@ -47,6 +47,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.stream.Stream;
@@ -55,10 +56,10 @@ import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
 import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.GHUtility.updateDistancesFor;
-import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
-import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static com.graphhopper.util.Parameters.Algorithms.*;
 import static com.graphhopper.util.Parameters.Routing.ALGORITHM;
 import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
+import static com.graphhopper.util.Parameters.Routing.PRIMITIVE_SEARCH_STATE;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -211,6 +212,14 @@ public class RoutingAlgorithmTest {
                     new Fixture(new AStarCalculator(), EDGE_BASED),
                     new Fixture(new BidirAStarCalculator(), NODE_BASED),
                     new Fixture(new BidirAStarCalculator(), EDGE_BASED),
+                    new Fixture(new PrimitiveCalculator(DIJKSTRA), NODE_BASED),
+                    new Fixture(new PrimitiveCalculator(DIJKSTRA), EDGE_BASED),
+                    new Fixture(new PrimitiveCalculator(DIJKSTRA_BI), NODE_BASED),
+                    new Fixture(new PrimitiveCalculator(DIJKSTRA_BI), EDGE_BASED),
+                    new Fixture(new PrimitiveCalculator(ASTAR), NODE_BASED),
+                    new Fixture(new PrimitiveCalculator(ASTAR), EDGE_BASED),
+                    new Fixture(new PrimitiveCalculator(ASTAR_BI), NODE_BASED),
+                    new Fixture(new PrimitiveCalculator(ASTAR_BI), EDGE_BASED),
                     // so far only supports node-based
                     new Fixture(new DijkstraOneToManyCalculator(), NODE_BASED),
                     new Fixture(new CHAStarCalculator(), NODE_BASED),
@@ -1180,6 +1189,26 @@ public class RoutingAlgorithmTest {
         }
     }
 
+    private static class PrimitiveCalculator extends SimpleCalculator {
+        private final String algorithm;
+
+        PrimitiveCalculator(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        RoutingAlgorithm createAlgo(Graph graph, Weighting weighting, TraversalMode traversalMode) {
+            return new RoutingAlgorithmFactorySimple().createAlgo(graph, weighting, new AlgorithmOptions()
+                    .setAlgorithm(algorithm).setTraversalMode(traversalMode)
+                    .setHints(new PMap().putObject(PRIMITIVE_SEARCH_STATE, true)));
+        }
+
+        @Override
+        public String toString() {
+            return "PRIMITIVE_" + algorithm.toUpperCase(Locale.ROOT);
+        }
+    }
+
     private static class DijkstraOneToManyCalculator extends SimpleCalculator {
         @Override
         RoutingAlgorithm createAlgo(Graph graph, Weighting weighting, TraversalMode traversalMode) {
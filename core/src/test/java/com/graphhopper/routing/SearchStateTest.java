@@ -0,0 +1,93 @@
+package com.graphhopper.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchStateTest {
+
+    @Test
+    public void pollInOrder() {
+        Random rnd = new Random(123);
+        SearchState state = new SearchState(2);
+        double[] heapWeights = new double[1000];
+        for (int i = 0; i < heapWeights.length; i++) {
+            heapWeights[i] = rnd.nextDouble() * 100;
+            assertEquals(i, state.add(i, i, i, i - 1, heapWeights[i], heapWeights[i]));
+        }
+        // update some of the labels, both decreasing and increasing their heap weights
+        for (int i = 0; i < 300; i++) {
+            int slot = rnd.nextInt(heapWeights.length);
+            heapWeights[slot] = rnd.nextDouble() * 100;
+            state.update(slot, slot, -1, heapWeights[slot], heapWeights[slot]);
+        }
+        double[] sorted = heapWeights.clone();
+        Arrays.sort(sorted);
+        for (double expected : sorted)
+            assertEquals(expected, state.getHeapWeight(state.poll()));
+        assertTrue(state.isHeapEmpty());
+        assertEquals(1000, state.size());
+    }
+
+    @Test
+    public void updateAfterPoll() {
+        SearchState state = new SearchState();
+        int a = state.add(5, 0, 1, -1, 1, 1);
+        int b = state.add(7, 1, 2, a, 2, 2);
+        assertEquals(a, state.poll());
+        // a was polled already, so the update pushes it again
+        state.update(a, 3, -1, 0.5, 3);
+        assertEquals(b, state.poll());
+        assertEquals(a, state.poll());
+        assertEquals(3, state.getEdge(a));
+        assertEquals(a, state.getSlot(5));
+        assertEquals(b, state.getSlot(7));
+        assertEquals(-1, state.getSlot(6));
+    }
+
+    @Test
+    public void createSPTEntry() {
+        SearchState state = new SearchState();
+        int root = state.add(-1, -1, 0, -1, 0, 0);
+        int s1 = state.add(1, 4, 1, root, 10, 10);
+        int s2 = state.add(2, 5, 2, s1, 30, 30);
+        SPTEntry entry = state.createSPTEntry(s2);
+        assertEquals(2, entry.adjNode);
+        assertEquals(5, entry.edge);
+        assertEquals(30, entry.weight);
+        assertEquals(1, entry.parent.adjNode);
+        assertEquals(0, entry.parent.parent.adjNode);
+        assertNull(entry.parent.parent.parent);
+        assertEquals(-1, state.getSlot(-1));
+        assertNull(state.createSPTEntry(-1));
+    }
+
+    @Test
+    public void recycle() {
+        SearchState state = SearchState.acquire();
+        state.add(3, 0, 3, -1, 0, 0);
+        assertNotSame(state, SearchState.acquire());
+        SearchState.release(state);
+        SearchState recycled = SearchState.acquire();
+        assertSame(state, recycled);
+        assertEquals(0, recycled.size());
+        assertEquals(-1, recycled.getSlot(3));
+        assertTrue(recycled.isHeapEmpty());
+        SearchState.release(recycled);
+    }
+
+    @Test
+    public void doNotRecycleLargeStates() {
+        SearchState state = SearchState.acquire();
+        for (int i = 0; i <= SearchState.MAX_POOLED_CAPACITY; i++)
+            state.add(i, i, i, -1, i, i);
+        assertTrue(state.getCapacity() > SearchState.MAX_POOLED_CAPACITY);
+        SearchState.release(state);
+        SearchState next = SearchState.acquire();
+        assertNotSame(state, next);
+        SearchState.release(next);
+    }
+}
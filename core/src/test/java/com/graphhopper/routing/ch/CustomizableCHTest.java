@@ -0,0 +1,192 @@
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomizableCHTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableCHTest.class);
+    private static final String DIR = "./target/cch-test-gh";
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(otherSpeedEnc).build();
+
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void ranksArePermutation() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, new Random(123), 200, 2.5, true, speedEnc, null, 0.9, 0);
+        int[] ranks = new NestedDissectionOrdering(graph).calcRanks();
+        int[] sorted = ranks.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++)
+            assertEquals(i, sorted[i]);
+    }
+
+    @Test
+    public void simple() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CustomizableCH cch = new CustomizableCH(graph);
+        cch.prepare();
+        RoutingCHGraph chGraph = cch.customize(new SpeedWeighting(speedEnc));
+        Path path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(0, 3);
+        assertEquals(IntArrayList.from(0, 1, 2, 3), path.calcNodes());
+        assertEquals(60, path.getWeight(), 1.e-6);
+        // 3->2 is a one-way
+        path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(3, 0);
+        assertEquals(IntArrayList.from(3, 5, 4, 1, 0), path.calcNodes());
+        assertEquals(70, path.getWeight(), 1.e-6);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void random(int threads) {
+        long seed = System.nanoTime();
+        LOGGER.info("seed: " + seed);
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0.1);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(otherSpeedEnc, 5 + rnd.nextInt(20), rnd.nextInt(4) == 0 ? 0 : 5 + rnd.nextInt(20));
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        CustomizableCH cch = new CustomizableCH(graph).setCustomizationThreads(threads);
+        cch.prepare();
+        for (Weighting weighting : Arrays.asList(new SpeedWeighting(speedEnc), new SpeedWeighting(otherSpeedEnc)))
+            compareWithDijkstra(graph, locationIndex, cch.customize(weighting), weighting, rnd, seed);
+    }
+
+    @Test
+    public void loadExisting() {
+        long seed = System.nanoTime();
+        LOGGER.info("seed: " + seed);
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).setDir(new GHDirectory(DIR, DAType.RAM_STORE)).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0.1);
+        graph.freeze();
+        CustomizableCH cch = new CustomizableCH(graph);
+        cch.prepare();
+        int arcs = cch.getArcs();
+        cch.flush();
+        graph.flush();
+        cch.close();
+        graph.close();
+
+        graph = new BaseGraph.Builder(encodingManager).setDir(new GHDirectory(DIR, DAType.RAM_STORE)).build();
+        assertTrue(graph.loadExisting());
+        cch = new CustomizableCH(graph);
+        assertTrue(cch.loadExisting());
+        assertEquals(arcs, cch.getArcs());
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        compareWithDijkstra(graph, locationIndex, cch.customize(weighting), weighting, rnd, seed);
+        graph.close();
+    }
+
+    @Test
+    public void cache() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, new Random(123), 50, 2.5, true, speedEnc, null, 0.9, 0);
+        graph.freeze();
+        CustomizableCH cch = new CustomizableCH(graph).setCacheSize(1);
+        cch.prepare();
+        RoutingCHGraph a = cch.customize("a", () -> new SpeedWeighting(speedEnc));
+        assertSame(a, cch.customize("a", () -> fail("the customization should be cached")));
+        RoutingCHGraph b = cch.customize("b", () -> new SpeedWeighting(otherSpeedEnc));
+        assertNotSame(a, b);
+        // a was evicted
+        assertNotSame(a, cch.customize("a", () -> new SpeedWeighting(speedEnc)));
+    }
+
+    @Test
+    public void maxConcurrentCustomizations() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, new Random(123), 50, 2.5, true, speedEnc, null, 0.9, 0);
+        graph.freeze();
+        CustomizableCH cch = new CustomizableCH(graph).setMaxConcurrentCustomizations(1);
+        cch.prepare();
+        RoutingCHGraph a = cch.customize("a", () -> {
+            // while a is customized there is no permit left for b
+            assertNull(cch.customize("b", () -> fail("b should not be customized")));
+            return new SpeedWeighting(speedEnc);
+        });
+        assertNotNull(a);
+        // a is cached, so it does not need a permit
+        assertSame(a, cch.customize("a", () -> fail("the customization should be cached")));
+        assertNotNull(cch.customize("b", () -> new SpeedWeighting(otherSpeedEnc)));
+    }
+
+    private void compareWithDijkstra(BaseGraph graph, LocationIndexTree locationIndex, RoutingCHGraph chGraph, Weighting weighting, Random rnd, long seed) {
+        int strictViolations = 0;
+        int queries = 0;
+        for (int i = 0; i < 50; i++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 2, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            int from = snaps.get(0).getClosestNode();
+            int to = snaps.get(1).getClosestNode();
+            Path refPath = new Dijkstra(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = new CHRoutingAlgorithmFactory(chGraph, queryGraph).createAlgo(new PMap()).calcPath(from, to);
+            String msg = "seed: " + seed + ", " + from + "->" + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            if (!refPath.isFound())
+                continue;
+            queries++;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, msg);
+            assertEquals(from, path.calcNodes().get(0), msg);
+            assertEquals(to, path.calcNodes().get(path.calcNodes().size() - 1), msg);
+            // the distance and time can differ if there are multiple shortest paths
+            if (Math.abs(refPath.getDistance() - path.getDistance()) > 1.e-1 || Math.abs(refPath.getTime() - path.getTime()) > 50)
+                strictViolations++;
+        }
+        assertTrue(strictViolations <= 0.05 * queries + 1, "too many strict violations: " + strictViolations + ", seed: " + seed);
+    }
+}
@@ -33,6 +33,8 @@ import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.Random;
 
@@ -577,6 +579,40 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testParallelContraction(boolean edgeBased) {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 3);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        int numNodes = 1_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 1.3, true, speedEnc, 60d, 0.9, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 3, graph.getTurnCostStorage());
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), edgeBased ? 40 : 0);
+        CHConfig config = edgeBased ? CHConfig.edgeBased("p", weighting) : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result result = PrepareContractionHierarchies.fromGraph(graph, config)
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 4))
+                .doWork();
+        RoutingCHGraph routingCHGraph = RoutingCHGraphImpl.fromGraph(graph, result.getCHStorage(), result.getCHConfig());
+        assertTrue(result.getShortcuts() > 0);
+        for (int node = 0; node < numNodes; node++)
+            assertTrue(result.getCHStorage().getLevel(result.getCHStorage().toNodePointer(node)) < numNodes, "node " + node + " was not contracted, seed: " + seed);
+
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            Dijkstra dijkstra = new Dijkstra(graph, config.getWeighting(), edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED);
+            RoutingAlgorithm chAlgo = new CHRoutingAlgorithmFactory(routingCHGraph).createAlgo(new PMap());
+            double dijkstraWeight = dijkstra.calcPath(from, to).getWeight();
+            double chWeight = chAlgo.calcPath(from, to).getWeight();
+            assertEquals(dijkstraWeight, chWeight, 1.e-1, "from: " + from + ", to: " + to + ", seed: " + seed);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
@@ -30,6 +30,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +38,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.*;
@@ -240,4 +242,30 @@ public class LandmarkStorageTest {
         storage.createLandmarks();
         assertEquals(3, storage.getSubnetworksWithLandmarks());
     }
+
+    @Test
+    public void testConcurrentLandmarkWeights() {
+        GHUtility.buildRandomGraph(graph, new Random(42), 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 1);
+
+        LandmarkStorage sequential = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 16);
+        sequential.setMinimumNodes(2);
+        sequential.createLandmarks();
+        LandmarkStorage concurrent = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 16);
+        concurrent.setMinimumNodes(2);
+        concurrent.setThreads(4);
+        concurrent.createLandmarks();
+
+        assertEquals(sequential.getSubnetworksWithLandmarks(), concurrent.getSubnetworksWithLandmarks());
+        assertEquals(sequential.getFactor(), concurrent.getFactor());
+        for (int sn = 1; sn < sequential.getSubnetworksWithLandmarks(); sn++)
+            assertArrayEquals(sequential.getLandmarks(sn), concurrent.getLandmarks(sn));
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < 16; lmIdx++) {
+                assertEquals(sequential.getFromWeight(lmIdx, node), concurrent.getFromWeight(lmIdx, node));
+                assertEquals(sequential.getToWeight(lmIdx, node), concurrent.getToWeight(lmIdx, node));
+            }
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrecomputedWeightsTest {
+
+    @Test
+    public void sameWeightsAsDynamicEvaluation() {
+        BooleanEncodedValue accessEnc = VehicleAccess.create("car");
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        EncodingManager em = new EncodingManager.Builder().add(accessEnc).add(speedEnc).add(RoadClass.create()).build();
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(42);
+        for (int node = 0; node < 50; node++)
+            graph.getNodeAccess().setNode(node, 49 + rnd.nextDouble() * 0.1, 11 + rnd.nextDouble() * 0.1);
+        for (int i = 0; i < 200; i++) {
+            int from = rnd.nextInt(50);
+            int to = (from + 1 + rnd.nextInt(49)) % 50;
+            EdgeIteratorState edge = graph.edge(from, to).setDistance(10 + rnd.nextDouble() * 500)
+                    .set(accessEnc, rnd.nextBoolean(), rnd.nextBoolean())
+                    .set(speedEnc, 5 + rnd.nextInt(20) * 5, 5 + rnd.nextInt(20) * 5)
+                    .set(roadClassEnc, rnd.nextBoolean() ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL);
+            // some edges have an infinite time
+            if (i % 20 == 0)
+                edge.set(speedEnc, 0, 0);
+        }
+        CustomModel customModel = new CustomModel()
+                .addToPriority(If("!car_access", MULTIPLY, "0"))
+                .addToPriority(If("road_class == RESIDENTIAL", MULTIPLY, "0.5"))
+                .addToSpeed(If("true", LIMIT, "car_average_speed"))
+                .setDistanceInfluence(70d);
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+        PrecomputedWeights weights = new PrecomputedWeights(graph, "car");
+        weights.prepare(weighting);
+        Weighting precomputed = weights.createWeighting(weighting);
+
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            for (EdgeIteratorState edge : new EdgeIteratorState[]{iter, iter.detach(true)}) {
+                for (boolean reverse : new boolean[]{false, true}) {
+                    double expected = weighting.calcEdgeWeight(edge, reverse);
+                    if (Double.isInfinite(expected))
+                        assertEquals(expected, precomputed.calcEdgeWeight(edge, reverse));
+                    else
+                        assertEquals(expected, precomputed.calcEdgeWeight(edge, reverse), expected * 1.e-6);
+                    assertEquals(weighting.calcEdgeMillis(edge, reverse), precomputed.calcEdgeMillis(edge, reverse));
+                }
+            }
+        }
+
+        // virtual edges are evaluated dynamically
+        EdgeIteratorState baseEdge = graph.getEdgeIteratorState(3, Integer.MIN_VALUE);
+        NodeAccess na = graph.getNodeAccess();
+        Snap snap = new Snap((na.getLat(baseEdge.getBaseNode()) + na.getLat(baseEdge.getAdjNode())) / 2,
+                (na.getLon(baseEdge.getBaseNode()) + na.getLon(baseEdge.getAdjNode())) / 2);
+        snap.setClosestEdge(baseEdge);
+        snap.setWayIndex(0);
+        snap.setSnappedPosition(Snap.Position.EDGE);
+        snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
+        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        EdgeIterator virtualIter = queryGraph.createEdgeExplorer().setBaseNode(graph.getNodes());
+        int virtualEdges = 0;
+        while (virtualIter.next()) {
+            assertTrue(virtualIter.getEdge() >= graph.getEdges());
+            assertEquals(weighting.calcEdgeWeight(virtualIter, false), precomputed.calcEdgeWeight(virtualIter, false));
+            assertEquals(weighting.calcEdgeWeight(virtualIter, true), precomputed.calcEdgeWeight(virtualIter, true));
+            virtualEdges++;
+        }
+        assertEquals(2, virtualEdges);
+    }
+}
@@ -303,6 +303,36 @@ public class KVStorageTest {
         assertEquals(pointerA, pointerB);
     }
 
+    @Test
+    public void testDeduplicateNonConsecutive() {
+        KVStorage index = create();
+        long pointerA = index.add(createMap("name", "Main Street", "ref", "B1"));
+        long pointerB = index.add(createMap("name", "Other Street"));
+        long pointerC = index.add(createMap("name", "Main Street", "ref", "B1"));
+        assertEquals(pointerA, pointerC);
+        assertNotEquals(pointerA, pointerB);
+        // the bytes of the duplicate were not kept, so the next entry starts directly after the second one
+        long pointerD = index.add(createMap("name", "Third Street"));
+        assertEquals(pointerB + 1 + 3 + "Other Street".getBytes(UTF_CS).length, pointerD);
+        assertEquals("Other Street", index.get(pointerB, "name", false));
+        assertEquals("Third Street", index.get(pointerD, "name", false));
+        assertEquals("B1", index.get(pointerC, "ref", true));
+
+        // different order results in different bytes, but this is still correct
+        long pointerE = index.add(createMap("ref", "B1", "name", "Main Street"));
+        assertEquals(createMap("name", "Main Street", "ref", "B1"), index.getAll(pointerE));
+    }
+
+    @Test
+    public void testGetAllIsCached() {
+        KVStorage index = create();
+        long pointer = index.add(createMap("name", "Main Street", "ref", "B1"));
+        Map<String, KValue> map = index.getAll(pointer);
+        assertSame(map, index.getAll(pointer));
+        assertEquals("B1", index.get(pointer, "ref", false));
+        assertThrows(UnsupportedOperationException.class, () -> map.put("other", new KValue("x")));
+    }
+
     @Test
     public void testUnknownValueClass() {
         KVStorage index = create();
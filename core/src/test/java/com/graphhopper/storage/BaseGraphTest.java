@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -407,4 +408,22 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertThrows(IllegalArgumentException.class, () -> ne.setGeoRef(0, 1L << 39));
         graph.close();
     }
+
+    @Test
+    public void testHilbertIndex() {
+        int bits = 3, n = 1 << bits;
+        int[] xs = new int[n * n], ys = new int[n * n];
+        Arrays.fill(xs, -1);
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                int d = (int) BaseGraph.hilbertIndex(x, y, bits);
+                assertEquals(-1, xs[d], "duplicate index " + d);
+                xs[d] = x;
+                ys[d] = y;
+            }
+        }
+        // consecutive cells on the curve are always neighbours
+        for (int d = 1; d < n * n; d++)
+            assertEquals(1, Math.abs(xs[d] - xs[d - 1]) + Math.abs(ys[d] - ys[d - 1]), "at " + d);
+    }
 }
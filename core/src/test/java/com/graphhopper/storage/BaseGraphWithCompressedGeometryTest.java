@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs all graph storage tests with delta-encoded way geometries.
+ */
+public class BaseGraphWithCompressedGeometryTest extends BaseGraphTest {
+
+    @Override
+    protected BaseGraph newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return new BaseGraph.Builder(encodingManager).setDir(dir).set3D(enabled3D).withCompressedGeometry(true).setSegmentSize(segmentSize).build();
+    }
+
+    @Test
+    public void testZigZag() {
+        for (long value : new long[]{0, 1, -1, 63, -64, 64, 1_800_000_000, -1_800_000_000, 3_600_000_000L, -3_600_000_000L}) {
+            long encoded = BaseGraph.zigZagEncode(value);
+            assertTrue(encoded >= 0);
+            assertEquals(value, BaseGraph.zigZagDecode(encoded));
+        }
+        assertEquals(1, BaseGraph.zigZagEncode(-1));
+        assertEquals(2, BaseGraph.zigZagEncode(1));
+        assertEquals(1, BaseGraph.varIntLength(127));
+        assertEquals(2, BaseGraph.varIntLength(128));
+    }
+
+    @Test
+    public void testGeometryIsSmaller() {
+        BaseGraph compressed = newGHStorage(new RAMDirectory(), true).create(defaultSize);
+        BaseGraph plain = new BaseGraph.Builder(encodingManager).set3D(true).create();
+        PointList pillars = new PointList(100, true);
+        for (int i = 0; i < 100; i++) {
+            pillars.add(49.0 + i * 1e-4, 11.0 - i * 2e-4, 300 + i % 7);
+        }
+        compressed.edge(0, 1).setWayGeometry(pillars);
+        plain.edge(0, 1).setWayGeometry(pillars);
+        assertTrue(compressed.getMaxGeoRef() < 0.6 * plain.getMaxGeoRef(), compressed.getMaxGeoRef() + " vs. " + plain.getMaxGeoRef());
+        assertEquals(pillars, compressed.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(plain.getEdgeIteratorState(0, 0).fetchWayGeometry(FetchMode.ALL),
+                compressed.getEdgeIteratorState(0, 0).fetchWayGeometry(FetchMode.ALL));
+        compressed.close();
+        plain.close();
+    }
+
+    @Override
+    @Test
+    public void testDontGrowOnUpdate() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+        EdgeIteratorState iter = graph.edge(0, 1).setDistance(100);
+        assertEquals(1, graph.getMaxGeoRef());
+        iter.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9));
+        long maxGeoRef = graph.getMaxGeoRef();
+        // the first point is stored absolute and every further point as three varint deltas
+        assertTrue(maxGeoRef < 1 + 3 + 4 * 11, "" + maxGeoRef);
+        iter.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7));
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+        iter.setWayGeometry(Helper.createPointList3D(1, 2, 3));
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+        assertThrows(IllegalStateException.class, () -> iter.setWayGeometry(Helper.createPointList3D(1.5, 1, 0, 2, 3, 0)));
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+    }
+
+    @Test
+    public void testChangeGeometryWithBiggerDeltas() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 11, 0);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(Helper.createPointList3D(10.1, 10.1, 1, 10.2, 10.2, 2));
+        EdgeIteratorState copy = graph.copyEdge(edge.getEdge(), true);
+        long geoRef = graph.getStore().getGeoRef(graph.getStore().toEdgePointer(edge.getEdge()));
+
+        // same number of points, but the deltas need more bytes -> the geometry has to be moved
+        PointList bigger = Helper.createPointList3D(-80, -170, 8000, 80, 170, -900);
+        graph.getEdgeIteratorState(edge.getEdge(), 1).setWayGeometry(bigger);
+        long newGeoRef = graph.getStore().getGeoRef(graph.getStore().toEdgePointer(edge.getEdge()));
+        assertNotEquals(geoRef, newGeoRef);
+        assertEquals(newGeoRef, graph.getStore().getGeoRef(graph.getStore().toEdgePointer(copy.getEdge())));
+        assertEquals(bigger, graph.getEdgeIteratorState(copy.getEdge(), 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+
+        // a smaller geometry is written in place, also in reverse direction
+        graph.getEdgeIteratorState(edge.getEdge(), 0).setWayGeometry(Helper.createPointList3D(10.5, 10.5, 5));
+        assertEquals(newGeoRef, graph.getStore().getGeoRef(graph.getStore().toEdgePointer(edge.getEdge())));
+        assertEquals(Helper.createPointList3D(10, 10, 0, 10.5, 10.5, 5, 11, 11, 0),
+                graph.getEdgeIteratorState(copy.getEdge(), 1).fetchWayGeometry(FetchMode.ALL));
+    }
+
+    @Test
+    public void testEncodingIsStored() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.edge(0, 1).setWayGeometry(Helper.createPointList(1.5, 1, 5, 4));
+        graph.flush();
+        graph.close();
+
+        // the stored encoding wins
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).build();
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isCompressedGeometry());
+        assertEquals(Helper.createPointList(1.5, 1, 5, 4), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+}
@@ -20,12 +20,13 @@ package com.graphhopper.storage;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.RoadClass;
 import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.search.KVStorage;
-import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.Helper;
+import com.graphhopper.util.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
@@ -165,6 +166,82 @@ public class BaseGraphWithTurnCostsTest extends BaseGraphTest {
         assertEquals(12, na.getTurnCostIndex(4000));
     }
 
+    @Test
+    public void testSortGraph() {
+        graph = createGHStorage();
+        NodeAccess na = graph.getNodeAccess();
+        Random rnd = new Random(42);
+        int nodes = 300;
+        for (int node = 0; node < nodes; node++)
+            na.setNode(node, 50 + rnd.nextDouble(), 10 + rnd.nextDouble());
+        for (int i = 0; i < 600; i++) {
+            int a = rnd.nextInt(nodes), b = rnd.nextInt(nodes);
+            if (a == b)
+                continue;
+            EdgeIteratorState edge = graph.edge(a, b).setDistance(i).set(carAccessEnc, true, rnd.nextBoolean())
+                    .setKeyValues(Map.of(STREET_NAME, new KVStorage.KValue("street" + i)));
+            if (rnd.nextBoolean())
+                edge.setWayGeometry(Helper.createPointList(50.5, 10.5, 50.6, 10.6 + i / 1000.0));
+        }
+        Map<String, String> edgesBefore = describeEdges();
+        Map<String, Double> turnCostsBefore = new HashMap<>();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < nodes; node++) {
+            EdgeIterator in = explorer.setBaseNode(node);
+            while (in.next()) {
+                EdgeIterator out = graph.createEdgeExplorer().setBaseNode(node);
+                while (out.next()) {
+                    if (in.getEdge() != out.getEdge() && rnd.nextInt(4) == 0) {
+                        setTurnCost(in.getEdge(), node, out.getEdge(), rnd.nextInt(100));
+                        turnCostsBefore.put(describeTurn(in, node, out), getTurnCost(out, node, in));
+                    }
+                }
+            }
+        }
+
+        graph.sortGraph();
+
+        assertEquals(edgesBefore, describeEdges());
+        Map<String, Double> turnCostsAfter = new HashMap<>();
+        for (int node = 0; node < nodes; node++) {
+            EdgeIterator in = explorer.setBaseNode(node);
+            while (in.next()) {
+                EdgeIterator out = graph.createEdgeExplorer().setBaseNode(node);
+                while (out.next()) {
+                    double turnCost = getTurnCost(out, node, in);
+                    if (turnCostsBefore.containsKey(describeTurn(in, node, out)))
+                        turnCostsAfter.put(describeTurn(in, node, out), turnCost);
+                    else
+                        assertEquals(0, turnCost);
+                }
+            }
+        }
+        assertEquals(turnCostsBefore, turnCostsAfter);
+
+        // nodes that are close to each other should now mostly have close ids
+        double sumDist = 0;
+        for (int node = 1; node < nodes; node++)
+            sumDist += Math.abs(na.getLat(node) - na.getLat(node - 1)) + Math.abs(na.getLon(node) - na.getLon(node - 1));
+        assertTrue(sumDist / (nodes - 1) < 0.2, "average distance between consecutive nodes: " + sumDist / (nodes - 1));
+    }
+
+    private Map<String, String> describeEdges() {
+        Map<String, String> result = new HashMap<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            NodeAccess na = graph.getNodeAccess();
+            result.put(iter.getName(), na.getLat(iter.getBaseNode()) + "," + na.getLon(iter.getBaseNode()) + "->"
+                    + na.getLat(iter.getAdjNode()) + "," + na.getLon(iter.getAdjNode()) + " " + iter.getDistance() + " "
+                    + iter.get(carAccessEnc) + "/" + iter.getReverse(carAccessEnc) + " " + iter.fetchWayGeometry(FetchMode.ALL)
+                    + " " + graph.getEdgeIteratorState(iter.getEdge(), iter.getBaseNode()).getName());
+        }
+        return result;
+    }
+
+    private String describeTurn(EdgeIteratorState in, int node, EdgeIteratorState out) {
+        return in.getName() + "," + graph.getNodeAccess().getLat(node) + "," + out.getName();
+    }
+
     private double getTurnCost(EdgeIteratorState fromEdge, int viaNode, EdgeIteratorState toEdge) {
         return graph.getTurnCostStorage().get(turnCostEnc, toEdge.getEdge(), viaNode, fromEdge.getEdge());
     }
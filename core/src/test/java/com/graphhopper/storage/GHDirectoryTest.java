@@ -1,7 +1,10 @@
 package com.graphhopper.storage;
 
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.util.LinkedHashMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -33,4 +36,30 @@ class GHDirectoryTest {
         assertEquals(DAType.MMAP, dir.getDefaultType("nodes_ch_car", false));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLoadMMapConcurrently() {
+        File folder = new File("./target/tmp/ghdirectory-preload");
+        Helper.removeDir(folder);
+        try {
+            GHDirectory dir = new GHDirectory(folder.getAbsolutePath(), DAType.MMAP);
+            dir.create();
+            DataAccess edges = dir.create("edges", 128);
+            edges.create(128 * 20);
+            edges.setInt(128 * 19, 42);
+            DataAccess nodes = dir.create("nodes", 128);
+            nodes.create(128 * 5);
+            LinkedHashMap<String, String> map = new LinkedHashMap<>();
+            map.put("preload.edges", "100");
+            dir.configure(map);
+            dir.loadMMap(4);
+            assertEquals(42, edges.getInt(128 * 19));
+            // isLoaded is only a hint in general, but on Linux it uses mincore, so a small file is fully resident right
+            // after it was preloaded
+            if (Constants.LINUX)
+                assertEquals(100, ((MMapDataAccess) edges).getResidentPercentage());
+            dir.close();
+        } finally {
+            Helper.removeDir(folder);
+        }
+    }
+}
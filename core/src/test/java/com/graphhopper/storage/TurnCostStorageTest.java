@@ -20,19 +20,18 @@ package com.graphhopper.storage;
 
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.stream.IntStream;
 
 import static com.graphhopper.util.GHUtility.getEdge;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TurnCostStorageTest {
 
@@ -185,4 +184,84 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void testFreeze(@TempDir Path path) {
+        Directory dir = new RAMDirectory(path.toAbsolutePath().toString(), true);
+        BaseGraph g = new BaseGraph.Builder(manager).setDir(dir).withTurnCosts(true).create();
+        // a star with many entries at node 0 (binary search) and a few entries at the other nodes (linear search)
+        for (int i = 1; i <= 12; i++)
+            g.edge(0, i);
+        for (int i = 1; i < 12; i++)
+            g.edge(i, i + 1);
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        Random rnd = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int node = rnd.nextInt(g.getNodes());
+            List<Integer> edges = new ArrayList<>();
+            EdgeIterator iter = g.createEdgeExplorer().setBaseNode(node);
+            while (iter.next())
+                edges.add(iter.getEdge());
+            turnCostStorage.set(carTurnCostEnc, edges.get(rnd.nextInt(edges.size())), node, edges.get(rnd.nextInt(edges.size())), rnd.nextInt(4));
+        }
+        int count = turnCostStorage.getTurnCostsCount();
+        Map<List<Integer>, Double> expected = getAllCarTurnCosts(g);
+        assertEquals(count, expected.size());
+
+        turnCostStorage.freeze();
+        assertTrue(turnCostStorage.isFrozen());
+        assertEquals(count, turnCostStorage.getTurnCostsCount());
+        assertEquals(count, IntStream.range(0, g.getNodes()).map(turnCostStorage::getTurnCostsCount).sum());
+        assertEquals(expected, getAllCarTurnCosts(g));
+
+        // existing entries can still be changed, but new ones cannot be added
+        List<Integer> first = expected.keySet().iterator().next();
+        turnCostStorage.set(carTurnCostEnc, first.get(0), first.get(1), first.get(2), Double.POSITIVE_INFINITY);
+        assertEquals(Double.POSITIVE_INFINITY, turnCostStorage.get(carTurnCostEnc, first.get(0), first.get(1), first.get(2)));
+        expected.put(first, Double.POSITIVE_INFINITY);
+        // edge 0-1 is not adjacent to node 2, so there cannot be an entry for it yet
+        int edge01 = getEdge(g, 0, 1).getEdge();
+        int edge12 = getEdge(g, 1, 2).getEdge();
+        assertThrows(IllegalStateException.class, () -> turnCostStorage.set(carTurnCostEnc, edge01, 2, edge12, 1));
+        assertThrows(IllegalStateException.class, turnCostStorage::freeze);
+
+        // nodes that are added after the freeze have no entries and do not change the entries of the other nodes
+        int[] counts = IntStream.range(0, g.getNodes()).map(turnCostStorage::getTurnCostsCount).toArray();
+        int edge1213 = g.edge(12, 13).getEdge();
+        int edge1314 = g.edge(13, 14).getEdge();
+        assertEquals(15, g.getNodes());
+        for (int node = 0; node < counts.length; node++)
+            assertEquals(counts[node], turnCostStorage.getTurnCostsCount(node), "node: " + node);
+        assertEquals(0, turnCostStorage.getTurnCostsCount(13));
+        assertEquals(0, turnCostStorage.getTurnCostsCount(14));
+        assertEquals(0, turnCostStorage.get(carTurnCostEnc, edge1213, 13, edge1314));
+        assertEquals(expected, getAllCarTurnCosts(g));
+        assertThrows(IllegalStateException.class, () -> turnCostStorage.set(carTurnCostEnc, edge1213, 13, edge1314, 1));
+
+        g.flush();
+        g.close();
+        g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(path.toAbsolutePath().toString(), true)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        assertTrue(g.getTurnCostStorage().isFrozen());
+        assertEquals(expected, getAllCarTurnCosts(g));
+        g.close();
+    }
+
+    private Map<List<Integer>, Double> getAllCarTurnCosts(BaseGraph g) {
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        Map<List<Integer>, Double> result = new HashMap<>();
+        TurnCostStorage.Iterator iterator = turnCostStorage.getAllTurnCosts();
+        while (iterator.next()) {
+            List<Integer> key = Arrays.asList(iterator.getFromEdge(), iterator.getViaNode(), iterator.getToEdge());
+            assertNull(result.put(key, iterator.getCost(carTurnCostEnc)));
+            // the lookup has to find every entry of the iterator
+            assertEquals(iterator.getCost(carTurnCostEnc), turnCostStorage.get(carTurnCostEnc, key.get(0), key.get(1), key.get(2)));
+        }
+        // ... and nothing else
+        for (int node = 0; node < g.getNodes(); node++)
+            for (int from = 0; from < g.getEdges(); from++)
+                for (int to = 0; to < g.getEdges(); to++)
+                    if (!result.containsKey(Arrays.asList(from, node, to)))
+                        assertEquals(0, turnCostStorage.get(carTurnCostEnc, from, node, to));
+        return result;
+    }
 }
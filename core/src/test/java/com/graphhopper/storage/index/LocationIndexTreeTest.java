@@ -18,6 +18,7 @@
 package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
@@ -515,6 +516,118 @@ public class LocationIndexTreeTest {
         g.close();
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testFindClosestBatch(boolean parallel) {
+        Random rand = new Random(42);
+        BaseGraph g = createRandomGraph(rand);
+        LocationIndexTree idx = createIndexNoPrepare(g, 5_000);
+        idx.prepareIndex();
+        EdgeFilter filter = edge -> edge.getEdge() % 5 != 0;
+
+        double[] lats = new double[1000];
+        double[] lons = new double[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 9.9 + rand.nextDouble() * 1.2;
+            lons[i] = 9.9 + rand.nextDouble() * 1.2;
+        }
+        List<Snap> snaps = idx.findClosestBatch(lats, lons, filter, parallel);
+        assertEquals(lats.length, snaps.size());
+        for (int i = 0; i < lats.length; i++) {
+            Snap expected = idx.findClosest(lats[i], lons[i], filter);
+            Snap snap = snaps.get(i);
+            assertEquals(expected.isValid(), snap.isValid());
+            if (!expected.isValid())
+                continue;
+            assertEquals(expected.getClosestNode(), snap.getClosestNode());
+            assertEquals(expected.getClosestEdge().getEdge(), snap.getClosestEdge().getEdge());
+            assertEquals(expected.getWayIndex(), snap.getWayIndex());
+            assertEquals(expected.getSnappedPosition(), snap.getSnappedPosition());
+            assertEquals(expected.getQueryDistance(), snap.getQueryDistance(), 1.e-6);
+            assertEquals(expected.getSnappedPoint(), snap.getSnappedPoint());
+        }
+        g.close();
+    }
+
+    private static BaseGraph createRandomGraph(Random rand) {
+        BaseGraph g = new BaseGraph.Builder(new EncodingManager.Builder().build()).create();
+        NodeAccess na = g.getNodeAccess();
+        int nodes = 2000;
+        for (int i = 0; i < nodes; i++)
+            na.setNode(i, 10 + rand.nextDouble(), 10 + rand.nextDouble());
+        for (int i = 0; i < 2 * nodes; i++) {
+            int from = rand.nextInt(nodes);
+            int to = rand.nextInt(nodes);
+            if (from == to)
+                continue;
+            PointList pillars = new PointList();
+            if (rand.nextBoolean())
+                pillars.add((na.getLat(from) + na.getLat(to)) / 2 + rand.nextDouble() * 0.01, (na.getLon(from) + na.getLon(to)) / 2);
+            g.edge(from, to).setWayGeometry(pillars);
+        }
+        return g;
+    }
+
+    @Test
+    public void testParallelPreparation() {
+        BaseGraph g = createRandomGraph(new Random(42));
+        LocationIndexTree sequential = createIndexNoPrepare(g, 5_000);
+        sequential.prepareIndex();
+        LocationIndexTree parallel = createIndexNoPrepare(g, 5_000).setThreads(4);
+        parallel.prepareIndex();
+        // the stored index must be the same
+        assertEquals(sequential.lineIntIndex.getSize(), parallel.lineIntIndex.getSize());
+        assertEquals(sequential.lineIntIndex.getLeafs(), parallel.lineIntIndex.getLeafs());
+        assertEquals(sequential.lineIntIndex.dataAccess.getCapacity(), parallel.lineIntIndex.dataAccess.getCapacity());
+        for (long pointer = 0; pointer < sequential.lineIntIndex.dataAccess.getCapacity(); pointer += 4)
+            assertEquals(sequential.lineIntIndex.dataAccess.getInt(pointer), parallel.lineIntIndex.dataAccess.getInt(pointer), "pointer " + pointer);
+        g.close();
+    }
+
+    @Test
+    public void testFindNearest() {
+        Random rand = new Random(42);
+        BaseGraph g = createRandomGraph(rand);
+        LocationIndexTree idx = createIndexNoPrepare(g, 5_000);
+        idx.prepareIndex();
+        EdgeFilter filter = edge -> edge.getEdge() % 5 != 0;
+        for (int i = 0; i < 100; i++) {
+            double lat = 9.9 + rand.nextDouble() * 1.2;
+            double lon = 9.9 + rand.nextDouble() * 1.2;
+            // the distances of all accepted edges, but only one per tower node
+            List<Double> expected = new ArrayList<>();
+            IntHashSet towerNodes = new IntHashSet();
+            AllEdgesIterator iter = g.getAllEdges();
+            while (iter.next()) {
+                if (!filter.accept(iter))
+                    continue;
+                Snap snap = new Snap(lat, lon);
+                idx.traverseEdge(lat, lon, iter, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < snap.getQueryDistance()) {
+                        snap.setQueryDistance(normedDist);
+                        snap.setClosestNode(node);
+                        snap.setSnappedPosition(pos);
+                    }
+                });
+                if (snap.getSnappedPosition() != Snap.Position.TOWER || towerNodes.add(snap.getClosestNode()))
+                    expected.add(DistancePlaneProjection.DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+            }
+            Collections.sort(expected);
+
+            List<Snap> nearest = idx.findNearest(lat, lon, 5, Double.POSITIVE_INFINITY, filter);
+            assertEquals(5, nearest.size());
+            for (int j = 0; j < nearest.size(); j++)
+                assertEquals(expected.get(j), nearest.get(j).getQueryDistance(), 1.e-3);
+
+            double radius = 2_000;
+            List<Snap> withinRadius = idx.findNearest(lat, lon, Integer.MAX_VALUE, radius, filter);
+            assertEquals(expected.stream().filter(d -> d <= radius).count(), withinRadius.size());
+            for (int j = 0; j < withinRadius.size(); j++)
+                assertEquals(expected.get(j), withinRadius.get(j).getQueryDistance(), 1.e-3);
+        }
+        g.close();
+    }
+
     public BaseGraph createSampleGraph(EncodingManager encodingManager, DecimalEncodedValue speedEnc) {
         BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
         // length does not matter here but lat,lon and outgoing edges do!
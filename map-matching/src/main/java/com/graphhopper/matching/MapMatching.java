@@ -17,17 +17,19 @@
  */
 package com.graphhopper.matching;
 
-import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.AStarBidirection;
 import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.ManyToManyCH;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.lm.LMApproximator;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
@@ -35,18 +37,15 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
-import com.graphhopper.util.shapes.BBox;
-import org.locationtech.jts.geom.Envelope;
 
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
-
 /**
  * This class matches real world GPX entries to the digital road network stored
  * in GraphHopper. The Viterbi algorithm is used to compute the most likely
@@ -111,8 +110,12 @@ public class MapMatching {
         // (=faster) choice when the observations are close to each other
         boolean useDijkstra = disableLM || disableCH;
 
+        // node-based CH cannot restrict the start and end edges of the transitions, so we only use edge-based CH
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profile.getName());
+        if (useDijkstra || chGraph == null || !chGraph.isEdgeBased())
+            chGraph = null;
         LandmarkStorage landmarks;
-        if (!useDijkstra && graphHopper.getLandmarks().get(profile.getName()) != null) {
+        if (chGraph == null && !useDijkstra && graphHopper.getLandmarks().get(profile.getName()) != null) {
             // using LM because u-turn prevention does not work properly with (node-based) CH
             landmarks = graphHopper.getLandmarks().get(profile.getName());
         } else {
@@ -122,8 +125,13 @@ public class MapMatching {
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileStr));
         DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
         int maxVisitedNodes = hints.getInt(Parameters.Routing.MAX_VISITED_NODES, Integer.MAX_VALUE);
+        final RoutingCHGraph routingCHGraph = chGraph;
 
         Router router = new Router() {
+            private QueryGraph manyToManyQueryGraph;
+            private ManyToManyCH manyToMany;
+            private long visitedNodes;
+
             @Override
             public EdgeFilter getSnapFilter() {
                 return snapFilter;
@@ -132,6 +140,18 @@ public class MapMatching {
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
                 assert (toNodes.length == toInEdges.length);
+                if (routingCHGraph != null) {
+                    // all candidates of one time step have the same targets, so the backward searches of the
+                    // one-to-many calculation are only done once per time step (for the last few time steps)
+                    if (manyToManyQueryGraph != queryGraph) {
+                        manyToManyQueryGraph = queryGraph;
+                        manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(routingCHGraph, queryGraph))
+                                .setMaxVisitedNodes(maxVisitedNodes);
+                    }
+                    List<Path> paths = manyToMany.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                    visitedNodes += manyToMany.getVisitedNodes();
+                    return paths;
+                }
                 List<Path> result = new ArrayList<>();
                 for (int i = 0; i < toNodes.length; i++) {
                     result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
@@ -169,6 +189,11 @@ public class MapMatching {
             public Weighting getWeighting() {
                 return weighting;
             }
+
+            @Override
+            public long getVisitedNodes() {
+                return visitedNodes;
+            }
         };
         return router;
     }
@@ -276,49 +301,13 @@ public class MapMatching {
     }
 
     public List<Snap> findCandidateSnaps(final double queryLat, final double queryLon) {
-        double rLon = (measurementErrorSigma * 360.0 / DistanceCalcEarth.DIST_EARTH.calcCircumference(queryLat));
-        double rLat = measurementErrorSigma / DistanceCalcEarth.METERS_PER_DEGREE;
-        Envelope envelope = new Envelope(queryLon, queryLon, queryLat, queryLat);
-        for (int i = 0; i < 50; i++) {
-            envelope.expandBy(rLon, rLat);
-            List<Snap> snaps = findCandidateSnapsInBBox(queryLat, queryLon, BBox.fromEnvelope(envelope));
-            if (!snaps.isEmpty()) {
-                return snaps;
-            }
-        }
-        return Collections.emptyList();
-    }
-
-    private List<Snap> findCandidateSnapsInBBox(double queryLat, double queryLon, BBox queryShape) {
         EdgeFilter edgeFilter = router.getSnapFilter();
-        List<Snap> snaps = new ArrayList<>();
-        IntHashSet seenEdges = new IntHashSet();
-        IntHashSet seenNodes = new IntHashSet();
-        locationIndex.query(queryShape, edgeId -> {
-            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
-            if (seenEdges.add(edgeId) && edgeFilter.accept(edge)) {
-                Snap snap = new Snap(queryLat, queryLon);
-                locationIndex.traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
-                    if (normedDist < snap.getQueryDistance()) {
-                        snap.setQueryDistance(normedDist);
-                        snap.setClosestNode(node);
-                        snap.setWayIndex(wayIndex);
-                        snap.setSnappedPosition(pos);
-                    }
-                });
-                double dist = DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance());
-                snap.setClosestEdge(edge);
-                snap.setQueryDistance(dist);
-                if (snap.isValid() && (snap.getSnappedPosition() != Snap.Position.TOWER || seenNodes.add(snap.getClosestNode()))) {
-                    snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
-                    if (queryShape.contains(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon)) {
-                        snaps.add(snap);
-                    }
-                }
-            }
-        });
-        snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
-        return snaps;
+        // the candidates are all edges within the smallest multiple of the measurement error that contains an edge
+        List<Snap> nearest = locationIndex.findNearest(queryLat, queryLon, 1, 50 * measurementErrorSigma, edgeFilter);
+        if (nearest.isEmpty())
+            return Collections.emptyList();
+        double radius = Math.max(1, Math.ceil(nearest.get(0).getQueryDistance() / measurementErrorSigma)) * measurementErrorSigma;
+        return locationIndex.findNearest(queryLat, queryLon, Integer.MAX_VALUE, radius, edgeFilter);
     }
 
     /**
@@ -371,43 +360,48 @@ public class MapMatching {
         return timeSteps;
     }
 
-    static class Label {
-        int timeStep;
-        State state;
-        Label back;
-        boolean isDeleted;
-        double minusLogProbability;
-    }
-
     private List<SequenceState<State, Observation, Path>> computeViterbiSequence(List<ObservationWithCandidateStates> timeSteps) {
         if (timeSteps.isEmpty()) {
             return Collections.emptyList();
         }
 
         final HmmProbabilities probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
-        final Map<State, Label> labels = new HashMap<>();
-        Map<Transition<State>, Path> roadPaths = new HashMap<>();
-
-        PriorityQueue<Label> q = new PriorityQueue<>(Comparator.comparing(qe -> qe.minusLogProbability));
-        for (State candidate : timeSteps.get(0).candidates) {
+        // The candidates of all time steps are numbered consecutively and the labels are stored in arrays indexed by
+        // these ids. For every candidate we only keep the path from its best predecessor.
+        int[] firstIds = new int[timeSteps.size() + 1];
+        for (int t = 0; t < timeSteps.size(); t++)
+            firstIds[t + 1] = firstIds[t] + timeSteps.get(t).candidates.size();
+        final int candidates = firstIds[timeSteps.size()];
+        int[] timeStepOfIds = new int[candidates];
+        State[] states = new State[candidates];
+        for (int t = 0; t < timeSteps.size(); t++) {
+            for (int i = 0; i < timeSteps.get(t).candidates.size(); i++) {
+                timeStepOfIds[firstIds[t] + i] = t;
+                states[firstIds[t] + i] = timeSteps.get(t).candidates.get(i);
+            }
+        }
+        double[] minusLogProbabilities = new double[candidates];
+        Arrays.fill(minusLogProbabilities, Double.POSITIVE_INFINITY);
+        int[] parents = new int[candidates];
+        Arrays.fill(parents, -1);
+        Path[] roadPaths = new Path[candidates];
+
+        MinHeapWithUpdate q = new MinHeapWithUpdate(candidates);
+        for (int id = firstIds[0]; id < firstIds[1]; id++) {
             // distance from observation to road in meters
-            final double distance = candidate.getSnap().getQueryDistance();
-            Label label = new Label();
-            label.state = candidate;
-            label.minusLogProbability = probabilities.emissionLogProbability(distance) * -1.0;
-            q.add(label);
-            labels.put(candidate, label);
+            final double distance = states[id].getSnap().getQueryDistance();
+            minusLogProbabilities[id] = probabilities.emissionLogProbability(distance) * -1.0;
+            q.push(id, (float) minusLogProbabilities[id]);
         }
-        Label qe = null;
+        int current = -1;
         while (!q.isEmpty()) {
-            qe = q.poll();
-            if (qe.isDeleted)
-                continue;
-            if (qe.timeStep == timeSteps.size() - 1)
+            current = q.poll();
+            int timeStepIndex = timeStepOfIds[current];
+            if (timeStepIndex == timeSteps.size() - 1)
                 break;
-            State from = qe.state;
-            ObservationWithCandidateStates timeStep = timeSteps.get(qe.timeStep);
-            ObservationWithCandidateStates nextTimeStep = timeSteps.get(qe.timeStep + 1);
+            State from = states[current];
+            ObservationWithCandidateStates timeStep = timeSteps.get(timeStepIndex);
+            ObservationWithCandidateStates nextTimeStep = timeSteps.get(timeStepIndex + 1);
             final double linearDistance = distanceCalc.calcDist(timeStep.observation.getPoint().lat, timeStep.observation.getPoint().lon,
                     nextTimeStep.observation.getPoint().lat, nextTimeStep.observation.getPoint().lon)
                     + nextTimeStep.observation.getAccumulatedLinearDistanceToPrevious();
@@ -417,39 +411,35 @@ public class MapMatching {
             int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
             List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
-                State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
                 if (path.isFound()) {
+                    int to = firstIds[timeStepIndex + 1] + i;
                     double transitionLogProbability = probabilities.transitionLogProbability(path.getDistance(), linearDistance);
-                    Transition<State> transition = new Transition<>(from, to);
-                    roadPaths.put(transition, path);
-                    double minusLogProbability = qe.minusLogProbability - probabilities.emissionLogProbability(to.getSnap().getQueryDistance()) - transitionLogProbability;
-                    Label label1 = labels.get(to);
-                    if (label1 == null || minusLogProbability < label1.minusLogProbability) {
-                        q.stream().filter(oldQe -> !oldQe.isDeleted && oldQe.state == to).findFirst().ifPresent(oldQe -> oldQe.isDeleted = true);
-                        Label label = new Label();
-                        label.state = to;
-                        label.timeStep = qe.timeStep + 1;
-                        label.back = qe;
-                        label.minusLogProbability = minusLogProbability;
-                        q.add(label);
-                        labels.put(to, label);
+                    double minusLogProbability = minusLogProbabilities[current] - probabilities.emissionLogProbability(states[to].getSnap().getQueryDistance()) - transitionLogProbability;
+                    if (minusLogProbability < minusLogProbabilities[to]) {
+                        minusLogProbabilities[to] = minusLogProbability;
+                        parents[to] = current;
+                        roadPaths[to] = path;
+                        if (q.contains(to))
+                            q.update(to, (float) minusLogProbability);
+                        else
+                            q.push(to, (float) minusLogProbability);
                     }
                 }
             }
         }
-        if (qe == null) {
+        if (current < 0) {
             throw new IllegalArgumentException("Sequence is broken for submitted track at initial time step.");
         }
-        if (qe.timeStep != timeSteps.size() - 1) {
+        if (timeStepOfIds[current] != timeSteps.size() - 1) {
             throw new IllegalArgumentException("Sequence is broken for submitted track at time step "
-                    + qe.timeStep + ". observation:" + qe.state.getEntry());
+                    + timeStepOfIds[current] + ". observation:" + states[current].getEntry());
         }
         ArrayList<SequenceState<State, Observation, Path>> result = new ArrayList<>();
-        while (qe != null) {
-            final SequenceState<State, Observation, Path> ss = new SequenceState<>(qe.state, qe.state.getEntry(), qe.back == null ? null : roadPaths.get(new Transition<>(qe.back.state, qe.state)));
+        while (current >= 0) {
+            final SequenceState<State, Observation, Path> ss = new SequenceState<>(states[current], states[current].getEntry(), roadPaths[current]);
             result.add(ss);
-            qe = qe.back;
+            current = parents[current];
         }
         Collections.reverse(result);
         return result;
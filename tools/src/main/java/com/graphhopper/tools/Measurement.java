@@ -114,6 +114,8 @@ public class Measurement {
         int count = args.getInt("measurement.count", 5000);
         put("measurement.name", args.getString("measurement.name", "no_name"));
         put("measurement.map", args.getString("datareader.file", "unknown"));
+        // compare the query speed of sorted and unsorted graphs by running the measurement with and without this flag
+        put("graph.do_sort", args.getBool("graph.do_sort", false));
         final boolean useMeasurementTimeAsRefTime = args.getBool("measurement.use_measurement_time_as_ref_time", false);
         if (useMeasurementTimeAsRefTime && !useJson) {
             throw new IllegalArgumentException("Using measurement time as reference time only works with json files");
@@ -155,6 +157,13 @@ public class Measurement {
                 put("graph.subnetwork_removal_time_ms", sw.stop().getMillis());
             }
 
+            @Override
+            protected void sortGraph() {
+                StopWatch sw = new StopWatch().start();
+                super.sortGraph();
+                put("graph.sort_time_ms", sw.stop().getMillis());
+            }
+
             @Override
             protected void importOSM() {
                 StopWatch sw = new StopWatch().start();
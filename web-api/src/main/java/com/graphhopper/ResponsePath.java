@@ -17,6 +17,7 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.util.Instruction;
 import com.graphhopper.util.InstructionList;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.details.PathDetail;
@@ -335,4 +336,43 @@ public class ResponsePath {
     public void setImpossible(boolean impossible) {
         this.impossible = impossible;
     }
+
+    /**
+     * @return a deep copy of this path, so it can be modified without changing this path and vice versa
+     */
+    public ResponsePath copy() {
+        ResponsePath copy = new ResponsePath();
+        copy.errors.addAll(errors);
+        copy.description = description == null ? null : new ArrayList<>(description);
+        copy.distance = distance;
+        copy.ascend = ascend;
+        copy.descend = descend;
+        copy.routeWeight = routeWeight;
+        copy.time = time;
+        copy.debugInfo = debugInfo;
+        if (instructions != null) {
+            copy.instructions = new InstructionList(instructions.size(), instructions.getTr());
+            for (Instruction instruction : instructions)
+                copy.instructions.add(instruction.copy());
+        }
+        copy.waypointList = waypointList == PointList.EMPTY ? waypointList : waypointList.clone(false);
+        copy.waypointIndices = new ArrayList<>(waypointIndices);
+        copy.pointList = pointList == PointList.EMPTY ? pointList : pointList.clone(false);
+        copy.numChanges = numChanges;
+        copy.legs.addAll(legs);
+        copy.pointsOrder.addAll(pointsOrder);
+        pathDetails.forEach((name, details) -> {
+            List<PathDetail> detailsCopy = new ArrayList<>(details.size());
+            for (PathDetail detail : details) {
+                PathDetail detailCopy = new PathDetail(detail.getValue());
+                detailCopy.setFirst(detail.getFirst());
+                detailCopy.setLast(detail.getLast());
+                detailsCopy.add(detailCopy);
+            }
+            copy.pathDetails.put(name, detailsCopy);
+        });
+        copy.fare = fare;
+        copy.impossible = impossible;
+        return copy;
+    }
 }
@@ -22,7 +22,7 @@ import java.util.Map;
 
 import static com.graphhopper.util.Parameters.Details.*;
 
-public class Instruction {
+public class Instruction implements Cloneable {
     public static final int UNKNOWN = -99;
     public static final int U_TURN_UNKNOWN = -98;
     public static final int U_TURN_LEFT = -8;
@@ -137,6 +137,21 @@ public class Instruction {
         this.points = points;
     }
 
+    /**
+     * @return a deep copy of this instruction, i.e. the points and extra infos are copied as well
+     */
+    public Instruction copy() {
+        Instruction copy;
+        try {
+            copy = (Instruction) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        copy.points = points == PointList.EMPTY ? points : points.clone(false);
+        copy.extraInfo = new HashMap<>(extraInfo);
+        return copy;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -99,6 +99,14 @@ public class Parameters {
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
         public static final String TIMEOUT_MS = "timeout_ms";
         public static final String INIT_TIMEOUT_MS = ROUTING_INIT_PREFIX + "timeout_ms";
+        /**
+         * true or false. If the flexible and hybrid algorithms should keep their search state in recycled primitive
+         * arrays instead of one object per visited node (not for CH)
+         */
+        public static final String PRIMITIVE_SEARCH_STATE = "primitive_search_state";
+        public static final String INIT_PRIMITIVE_SEARCH_STATE = ROUTING_INIT_PREFIX + "primitive_search_state";
+        public static final String INIT_CACHE_SIZE = ROUTING_INIT_PREFIX + "cache.size";
+        public static final String INIT_CACHE_TTL_MS = ROUTING_INIT_PREFIX + "cache.ttl_ms";
         /**
          * if true the response will contain turn instructions
          */
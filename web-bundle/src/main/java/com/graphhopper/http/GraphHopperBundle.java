@@ -18,7 +18,9 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.graphhopper.GraphHopper;
@@ -30,10 +32,12 @@ import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.RouteCache;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import io.dropwizard.ConfiguredBundle;
@@ -41,11 +45,34 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the GraphHopper instance of the current graph generation for the duration of a request, so that the
+     * graph can be switched while the server is running, see {@link GraphHopperManaged#reload(String)}.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+            graphHopperManaged.release(instance);
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -218,6 +245,17 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         bootstrap.getObjectMapper().enable(MapperFeature.ALLOW_EXPLICIT_PROPERTY_RENAMING);
     }
 
+    /**
+     * The route cache is only created when the graph is loaded and a new one is created when the graph is reloaded, so
+     * the gauges always read the cache of the current GraphHopper instance.
+     */
+    private static <T> Gauge<T> routeCacheGauge(GraphHopperManaged graphHopperManaged, Function<RouteCache, T> value, T defaultValue) {
+        return () -> {
+            RouteCache routeCache = graphHopperManaged.getGraphHopper().getRouteCache();
+            return routeCache == null ? defaultValue : value.apply(routeCache);
+        };
+    }
+
     @Override
     public void run(GraphHopperBundleConfiguration configuration, Environment environment) {
         for (Object k : System.getProperties().keySet()) {
@@ -257,12 +295,31 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        if (configuration.getGraphHopperConfiguration().getInt(Parameters.Routing.INIT_CACHE_SIZE, 0) > 0) {
+            environment.metrics().register("graphhopper.route_cache.hits", routeCacheGauge(graphHopperManaged, RouteCache::getHits, 0L));
+            environment.metrics().register("graphhopper.route_cache.misses", routeCacheGauge(graphHopperManaged, RouteCache::getMisses, 0L));
+            environment.metrics().register("graphhopper.route_cache.hit_ratio", routeCacheGauge(graphHopperManaged, RouteCache::getHitRatio, 0.0));
+            environment.metrics().register("graphhopper.route_cache.size", routeCacheGauge(graphHopperManaged, RouteCache::size, 0));
+        }
+        // the worker pool of the /route/batch endpoint, it is shared by all batches to bound the number of threads
+        final int batchThreads = configuration.getGraphHopperConfiguration().getInt("routing.batch.threads", Runtime.getRuntime().availableProcessors());
+        final ExecutorService routeBatchExecutor = environment.lifecycle().executorService("route-batch-%d")
+                .minThreads(batchThreads).maxThreads(batchThreads).build();
+        final boolean gtfs = configuration.getGraphHopperConfiguration().has("gtfs.file");
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
+                bind(environment.getObjectMapper()).to(ObjectMapper.class);
+                if (gtfs) {
+                    // the pt specific classes need the GraphHopperGtfs instance, and reloading is not supported for it
+                    bind(graphHopper).to(GraphHopper.class);
+                } else {
+                    bind(graphHopperManaged).to(GraphHopperManaged.class);
+                    bindFactory(GraphHopperFactory.class).to(GraphHopper.class).in(RequestScoped.class);
+                }
 
+                bind(routeBatchExecutor).to(ExecutorService.class).named("routeBatchExecutor");
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
@@ -280,6 +337,8 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(MVTResource.class);
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(RouteBatchResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(MapMatchingResource.class);
         if (configuration.getGraphHopperConfiguration().has("gtfs.file")) {
@@ -304,7 +363,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged::getGraphHopper));
+        if (!gtfs)
+            environment.admin().addTask(new GraphReloadTask(graphHopperManaged));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
     }
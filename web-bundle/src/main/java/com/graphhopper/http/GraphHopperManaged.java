@@ -25,23 +25,49 @@ import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manages the GraphHopper instance of the server. A new graph can be loaded while the server is running, see
+ * {@link #reload(String)}. The requests are served by the current "generation" of the graph, which is acquired at the
+ * beginning of a request and released at its end, so that an old generation can be closed once all requests that
+ * still use it are finished.
+ */
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    private final GraphHopperConfig configuration;
+    // the current generation and the old generations that are still in use, the current generation is the last one
+    private final List<Generation> generations = new CopyOnWriteArrayList<>();
+    private volatile Generation current;
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        this.configuration = configuration;
+        current = new Generation(createGraphHopper(configuration));
+        generations.add(current);
+    }
+
+    private static GraphHopper createGraphHopper(GraphHopperConfig configuration) {
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else {
             graphHopper = new GraphHopper();
         }
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = getGraphHopper();
         graphHopper.importOrLoad();
+        logLoaded(graphHopper);
+    }
+
+    private static void logLoaded(GraphHopper graphHopper) {
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} bytes for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
                 graphHopper.getEncodingManager().toEncodedValuesAsString(),
@@ -49,14 +75,102 @@ public class GraphHopperManaged implements Managed {
                 graphHopper.getBaseGraph().toDetailsString());
     }
 
+    /**
+     * @return the GraphHopper instance of the current generation. Use {@link #acquire()} instead if the instance is
+     * used for longer, e.g. for the duration of a request, so that it is not closed in the meantime.
+     */
     public GraphHopper getGraphHopper() {
-        return graphHopper;
+        return current.graphHopper;
+    }
+
+    /**
+     * Returns the GraphHopper instance of the current generation and makes sure it is not closed before
+     * {@link #release(GraphHopper)} was called for it.
+     */
+    public GraphHopper acquire() {
+        while (true) {
+            Generation generation = current;
+            generation.inFlight.incrementAndGet();
+            // the generation might have been replaced in the meantime and its draining might have already started
+            if (!generation.retired)
+                return generation.graphHopper;
+            generation.inFlight.decrementAndGet();
+        }
+    }
+
+    public void release(GraphHopper graphHopper) {
+        for (Generation generation : generations) {
+            if (generation.graphHopper == graphHopper) {
+                generation.inFlight.decrementAndGet();
+                return;
+            }
+        }
+        throw new IllegalStateException("Unknown GraphHopper instance " + graphHopper.getGraphHopperLocation());
+    }
+
+    /**
+     * Loads the graph at the specified location with the configuration of this server (including the preloading of
+     * memory mapped files) and then switches all new requests to it. The previous graph is closed after all requests
+     * that still use it are finished. The graph must have been created before, e.g. via the import command, and it
+     * must contain the configured profiles. Requests are served from the previous graph while the new one is loaded.
+     */
+    public synchronized void reload(String graphLocation) {
+        if (configuration.has("gtfs.file"))
+            throw new IllegalStateException("Reloading the graph is not supported for GTFS");
+        GraphHopperConfig newConfig = new GraphHopperConfig(configuration).putObject("graph.location", graphLocation);
+        GraphHopper newGraphHopper = createGraphHopper(newConfig);
+        try {
+            if (!newGraphHopper.load())
+                throw new IllegalArgumentException("There is no graph at " + graphLocation);
+        } catch (RuntimeException ex) {
+            newGraphHopper.close();
+            throw ex;
+        }
+        logLoaded(newGraphHopper);
+
+        Generation old = current;
+        Generation newGeneration = new Generation(newGraphHopper);
+        generations.add(newGeneration);
+        current = newGeneration;
+        old.retired = true;
+        logger.info("switched to graph at:{}, waiting for {} requests on the previous graph", graphLocation, old.inFlight.get());
+        drainAndClose(old);
+    }
+
+    private void drainAndClose(Generation generation) {
+        long start = System.currentTimeMillis();
+        long lastLog = start;
+        while (generation.inFlight.get() > 0) {
+            if (System.currentTimeMillis() - lastLog > 10_000) {
+                lastLog = System.currentTimeMillis();
+                logger.info("still waiting for {} requests on graph at:{}", generation.inFlight.get(), generation.graphHopper.getGraphHopperLocation());
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the requests of the previous graph", ex);
+            }
+        }
+        generations.remove(generation);
+        generation.graphHopper.close();
+        logger.info("closed previous graph at:{} after {}ms", generation.graphHopper.getGraphHopperLocation(), System.currentTimeMillis() - start);
     }
 
     @Override
     public void stop() {
-        graphHopper.close();
+        for (Generation generation : generations) {
+            generation.graphHopper.close();
+        }
     }
 
+    private static class Generation {
+        final GraphHopper graphHopper;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean retired;
 
+        Generation(GraphHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+    }
 }
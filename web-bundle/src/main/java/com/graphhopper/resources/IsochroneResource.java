@@ -8,6 +8,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.PhastShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.ResponsePathSerializer;
@@ -18,6 +19,7 @@ import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -34,9 +36,12 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.WeakHashMap;
 import java.util.function.ToDoubleFunction;
 
 import static com.graphhopper.resources.IsochroneResource.ResponseType.geojson;
@@ -48,6 +53,11 @@ import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 public class IsochroneResource {
 
     private static final Logger logger = LoggerFactory.getLogger(IsochroneResource.class);
+    // the minimum time limit in seconds and distance limit in meters for which PHAST is used instead of Dijkstra
+    static final String PHAST_MIN_TIME_LIMIT = "isochrone.phast.min_time_limit";
+    static final String PHAST_MIN_DISTANCE_LIMIT = "isochrone.phast.min_distance_limit";
+    // the level order of the supported CH graphs, or an empty array for unsupported ones
+    private static final Map<RoutingCHGraph, int[]> NODES_BY_LEVEL = Collections.synchronizedMap(new WeakHashMap<>());
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
@@ -66,6 +76,28 @@ public class IsochroneResource {
 
     public enum ResponseType {json, geojson}
 
+    /**
+     * Uses the PHAST algorithm on the CH preparation of the given profile if there is one that supports it and the
+     * limit is large, and plain Dijkstra otherwise. The PHAST sweep always touches all nodes of the graph, while
+     * Dijkstra only explores the nodes within the limit.
+     *
+     * @param largeLimit true if the limit is at least {@link #PHAST_MIN_TIME_LIMIT} or {@link #PHAST_MIN_DISTANCE_LIMIT}
+     */
+    static ShortestPathTree createShortestPathTree(GraphHopper graphHopper, Profile profile, boolean disableCH, boolean largeLimit,
+                                                   QueryGraph queryGraph, Weighting weighting, boolean reverseFlow) {
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profile.getName());
+        if (!disableCH && largeLimit && !profile.hasTurnCosts() && chGraph != null) {
+            int[] nodesByLevel = NODES_BY_LEVEL.computeIfAbsent(chGraph, g -> {
+                int[] order = PhastShortestPathTree.createNodesByLevel(g);
+                return order == null ? new int[0] : order;
+            });
+            if (nodesByLevel.length > 0)
+                return new PhastShortestPathTree(queryGraph, chGraph, nodesByLevel, reverseFlow);
+        }
+        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+        return new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+    }
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response doGet(
@@ -83,6 +115,7 @@ public class IsochroneResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean disableCH = hintsMap.getBool(Parameters.CH.DISABLE, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -102,21 +135,25 @@ public class IsochroneResource {
         if (!snap.isValid())
             throw new IllegalArgumentException("Point not found:" + point);
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
 
         double limit;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
+        ShortestPathTree shortestPathTree;
         if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
             limit = weightLimit.getAsLong();
+            shortestPathTree = createShortestPathTree(graphHopper, profile, disableCH, false, queryGraph, weighting, reverseFlow);
             shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 200));
             fz = l -> l.weight;
         } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             limit = distanceLimitInMeter.getAsLong();
+            shortestPathTree = createShortestPathTree(graphHopper, profile, disableCH, limit >= config.getDouble(PHAST_MIN_DISTANCE_LIMIT, 100_000),
+                    queryGraph, weighting, reverseFlow);
             shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
             fz = l -> l.distance;
         } else {
             limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+            shortestPathTree = createShortestPathTree(graphHopper, profile, disableCH, limit >= config.getDouble(PHAST_MIN_TIME_LIMIT, 3_600) * 1000,
+                    queryGraph, weighting, reverseFlow);
             shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
             fz = l -> l.time;
         }
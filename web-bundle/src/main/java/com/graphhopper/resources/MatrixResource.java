@@ -0,0 +1,280 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.GHRequestTransformer;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.routing.ManyToManyCH;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.NameSimilarityEdgeFilter;
+import com.graphhopper.routing.util.SnapPreventionEdgeFilter;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.*;
+
+/**
+ * Calculates the weights, times and/or distances between all pairs of the given points. The request and response
+ * formats are the ones used by GHMRequest and MatrixResponse of the client-hc module. The calculation uses the CH
+ * preparation of the requested profile, see {@link ManyToManyCH}. The number of points, from_points and to_points is
+ * limited to routing.matrix.max_size each.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final GHRequestTransformer ghRequestTransformer;
+    private final int maxMatrixSize;
+    private final String osmDate;
+
+    public static class MatrixRequest {
+        public String profile;
+        public List<GHPoint> points;
+        public List<GHPoint> fromPoints;
+        public List<GHPoint> toPoints;
+        public List<String> pointHints = new ArrayList<>();
+        public List<String> fromPointHints = new ArrayList<>();
+        public List<String> toPointHints = new ArrayList<>();
+        public List<String> curbsides = new ArrayList<>();
+        public List<String> fromCurbsides = new ArrayList<>();
+        public List<String> toCurbsides = new ArrayList<>();
+        public List<String> snapPreventions = new ArrayList<>();
+        public List<String> outArrays = new ArrayList<>();
+        public boolean failFast = true;
+        private final PMap hints = new PMap();
+
+        @JsonAnySetter
+        public void putHint(String fieldName, Object value) {
+            hints.putObject(fieldName, value);
+        }
+    }
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.ghRequestTransformer = ghRequestTransformer;
+        this.maxMatrixSize = config.getInt("routing.matrix.max_size", 1000);
+        this.osmDate = graphHopper.getProperties().get("datareader.data.date");
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull MatrixRequest request) {
+        StopWatch sw = new StopWatch().start();
+        boolean symmetric = request.points != null;
+        if (symmetric && (request.fromPoints != null || request.toPoints != null))
+            throw new IllegalArgumentException("Either specify 'points' or 'from_points' and 'to_points', but not both");
+        List<GHPoint> fromPoints = symmetric ? request.points : request.fromPoints;
+        List<GHPoint> toPoints = symmetric ? request.points : request.toPoints;
+        if (fromPoints == null || fromPoints.isEmpty() || toPoints == null || toPoints.isEmpty())
+            throw new IllegalArgumentException("Specify at least one point in 'points' or in both 'from_points' and 'to_points'");
+        if (fromPoints.size() > maxMatrixSize || toPoints.size() > maxMatrixSize)
+            throw new IllegalArgumentException("Too many points: " + fromPoints.size() + "x" + toPoints.size()
+                    + ", the maximum is " + maxMatrixSize + " for " + (symmetric ? "'points'" : "'from_points' and 'to_points'"));
+        if (!request.curbsides.isEmpty() || !request.fromCurbsides.isEmpty() || !request.toCurbsides.isEmpty())
+            throw new IllegalArgumentException("Curbsides are not supported for the matrix calculation");
+        List<String> outArrays = request.outArrays.isEmpty() ? Collections.singletonList("weights") : request.outArrays;
+        for (String outArray : outArrays)
+            if (!Arrays.asList("weights", "times", "distances").contains(outArray))
+                throw new IllegalArgumentException("Unknown entry in 'out_arrays': " + outArray + ", use weights, times or distances");
+
+        // the transformer sets the same defaults, e.g. for the snap preventions, as for the route requests
+        GHRequest ghRequest = new GHRequest().setProfile(request.profile).setSnapPreventions(request.snapPreventions);
+        ghRequest.getHints().putAll(request.hints);
+        ghRequest = ghRequestTransformer.transformRequest(ghRequest);
+        List<String> snapPreventions = ghRequest.getSnapPreventions();
+
+        PMap profileResolverHints = new PMap(ghRequest.getHints());
+        profileResolverHints.putObject("profile", ghRequest.getProfile());
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("The matrix calculation requires a CH preparation, but there is none for profile: '" + profileName + "'");
+
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        EdgeFilter snapFilter = new DefaultSnapFilter(chGraph.getWeighting(), encodingManager.getBooleanEncodedValue(Subnetwork.key(profileName)));
+        EdgeFilter strictSnapFilter = snapPreventions.isEmpty() ? snapFilter : new SnapPreventionEdgeFilter(snapFilter,
+                encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), snapPreventions);
+        List<Snap> fromSnaps = lookup(locationIndex, fromPoints, symmetric ? request.pointHints : request.fromPointHints, snapFilter, strictSnapFilter);
+        List<Snap> toSnaps = symmetric ? fromSnaps : lookup(locationIndex, toPoints, request.toPointHints, snapFilter, strictSnapFilter);
+        List<Integer> invalidFromPoints = findInvalid(fromSnaps);
+        List<Integer> invalidToPoints = findInvalid(toSnaps);
+        if (request.failFast && (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty())) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int i : invalidFromPoints)
+                errors.add(new PointNotFoundException("Cannot find " + (symmetric ? "point " : "from_point ") + i + ": " + fromPoints.get(i), i));
+            if (!symmetric)
+                for (int i : invalidToPoints)
+                    errors.add(new PointNotFoundException("Cannot find to_point " + i + ": " + toPoints.get(i), i));
+            throw new MultiException(errors);
+        }
+
+        List<Snap> validSnaps = new ArrayList<>();
+        for (Snap snap : fromSnaps)
+            if (snap.isValid()) validSnaps.add(snap);
+        if (!symmetric)
+            for (Snap snap : toSnaps)
+                if (snap.isValid()) validSnaps.add(snap);
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), validSnaps);
+        ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph))
+                .setCalcPaths(outArrays.contains("times") || outArrays.contains("distances"));
+        ManyToManyCH.Result result = manyToMany.calcMatrix(getNodes(fromSnaps), getNodes(toSnaps));
+
+        List<int[]> disconnectedPairs = new ArrayList<>();
+        for (int from = 0; from < fromSnaps.size(); from++)
+            for (int to = 0; to < toSnaps.size(); to++)
+                if (fromSnaps.get(from).isValid() && toSnaps.get(to).isValid() && !result.isConnected(from, to))
+                    disconnectedPairs.add(new int[]{from, to});
+        if (request.failFast && !disconnectedPairs.isEmpty()) {
+            int[] pair = disconnectedPairs.get(0);
+            Map<String, Object> details = new HashMap<>();
+            details.put("from_point", pair[0]);
+            details.put("to_point", pair[1]);
+            throw new MultiException(Collections.singletonList(new ConnectionNotFoundException("Connection between locations not found: "
+                    + fromPoints.get(pair[0]) + " -> " + toPoints.get(pair[1]), details)));
+        }
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (outArrays.contains("weights"))
+            fillArray(json.putArray("weights"), fromSnaps.size(), toSnaps.size(), result,
+                    (r, from, to) -> json.numberNode(Helper.round(r.getWeight(from, to), 3)));
+        if (outArrays.contains("times"))
+            fillArray(json.putArray("times"), fromSnaps.size(), toSnaps.size(), result,
+                    (r, from, to) -> json.numberNode(Math.round(r.getTime(from, to) / 1000.0)));
+        if (outArrays.contains("distances"))
+            fillArray(json.putArray("distances"), fromSnaps.size(), toSnaps.size(), result,
+                    (r, from, to) -> json.numberNode(Math.round(r.getDistance(from, to))));
+        if (!request.failFast) {
+            ArrayNode hints = json.putArray("hints");
+            if (!disconnectedPairs.isEmpty()) {
+                ArrayNode pointPairs = hints.addObject()
+                        .put("message", "There are disconnected points, see point_pairs")
+                        .putArray("point_pairs");
+                for (int[] pair : disconnectedPairs)
+                    pointPairs.addArray().add(pair[0]).add(pair[1]);
+            }
+            if (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+                ObjectNode invalidPoints = hints.addObject().put("message", "Cannot find some of the points, see invalid_from_points and invalid_to_points");
+                invalidFromPoints.forEach(invalidPoints.putArray("invalid_from_points")::add);
+                invalidToPoints.forEach(invalidPoints.putArray("invalid_to_points")::add);
+            }
+        }
+        sw.stop();
+        ObjectNode info = json.putObject("info");
+        info.putPOJO("copyrights", config.getCopyrights());
+        info.put("took", Math.round(sw.getMillisDouble()));
+        if (!osmDate.isEmpty()) info.put("road_data_timestamp", osmDate);
+
+        logger.info("from: " + fromSnaps.size() + ", to: " + toSnaps.size() + ", profile: " + profileName
+                + ", took: " + String.format("%.1f", sw.getMillisDouble()) + " ms, visited nodes: " + manyToMany.getVisitedNodes());
+        return Response.ok(json).header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).build();
+    }
+
+    private static List<Snap> lookup(LocationIndex locationIndex, List<GHPoint> points, List<String> pointHints,
+                                     EdgeFilter snapFilter, EdgeFilter strictSnapFilter) {
+        if (!pointHints.isEmpty() && pointHints.size() != points.size())
+            throw new IllegalArgumentException("If you pass point hints, you need to pass exactly one hint for every point, empty hints will be ignored");
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            Snap snap = null;
+            if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(i)))
+                snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictSnapFilter, pointHints.get(i), point, 170));
+            else if (strictSnapFilter != snapFilter)
+                snap = locationIndex.findClosest(point.lat, point.lon, strictSnapFilter);
+            if (snap == null || !snap.isValid())
+                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            snaps.add(snap);
+        }
+        return snaps;
+    }
+
+    private static List<Integer> findInvalid(List<Snap> snaps) {
+        List<Integer> invalid = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++)
+            if (!snaps.get(i).isValid())
+                invalid.add(i);
+        return invalid;
+    }
+
+    /**
+     * Must be called after the query graph was created, because this changes the closest nodes of the snaps.
+     */
+    private static int[] getNodes(List<Snap> snaps) {
+        int[] nodes = new int[snaps.size()];
+        for (int i = 0; i < snaps.size(); i++)
+            nodes[i] = snaps.get(i).isValid() ? snaps.get(i).getClosestNode() : -1;
+        return nodes;
+    }
+
+    private interface EntryFunction {
+        JsonNode get(ManyToManyCH.Result result, int from, int to);
+    }
+
+    private static void fillArray(ArrayNode array, int fromCount, int toCount, ManyToManyCH.Result result, EntryFunction entry) {
+        for (int from = 0; from < fromCount; from++) {
+            ArrayNode row = array.addArray();
+            for (int to = 0; to < toCount; to++) {
+                if (result.isConnected(from, to))
+                    row.add(entry.get(result, from, to));
+                else
+                    row.addNull();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.GHRequestTransformer;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.graphhopper.resources.RouteResource.prepareRequest;
+import static com.graphhopper.util.Parameters.Routing.CALC_POINTS;
+import static com.graphhopper.util.Parameters.Routing.INSTRUCTIONS;
+
+/**
+ * Calculates many independent routes with a single HTTP request. Every entry of the 'requests' array has the same
+ * format as the body of POST /route. The requests are sorted by profile and calculated on a worker pool that is shared
+ * by all batches (see routing.batch.threads). The responses are streamed back in the order of the requests as soon as
+ * they are available. A request that fails does not fail the whole batch, instead its entry contains the error
+ * message and hints in the same format as the error response of POST /route.
+ */
+@Path("route/batch")
+public class RouteBatchResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteBatchResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final GHRequestTransformer ghRequestTransformer;
+    private final ExecutorService executorService;
+    private final int maxBatchSize;
+    private final ObjectMapper objectMapper;
+    @Nullable
+    private final String osmDate;
+
+    public static class BatchRequest {
+        public List<GHRequest> requests;
+    }
+
+    @Inject
+    public RouteBatchResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver,
+                              GHRequestTransformer ghRequestTransformer, @Named("routeBatchExecutor") ExecutorService executorService,
+                              ObjectMapper objectMapper) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.ghRequestTransformer = ghRequestTransformer;
+        this.executorService = executorService;
+        this.objectMapper = objectMapper;
+        this.maxBatchSize = config.getInt("routing.batch.max_size", 1000);
+        this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull BatchRequest batch) {
+        StopWatch sw = new StopWatch().start();
+        if (batch.requests == null || batch.requests.isEmpty())
+            throw new IllegalArgumentException("Specify at least one request in 'requests'");
+        if (batch.requests.size() > maxBatchSize)
+            throw new IllegalArgumentException("Too many requests: " + batch.requests.size() + ", the maximum is " + maxBatchSize);
+
+        int size = batch.requests.size();
+        GHRequest[] requests = new GHRequest[size];
+        JsonNode[] errors = new JsonNode[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                if (batch.requests.get(i) == null)
+                    throw new IllegalArgumentException("Empty request");
+                requests[i] = prepareRequest(batch.requests.get(i), ghRequestTransformer, profileResolver);
+            } catch (IllegalArgumentException | MultiException e) {
+                errors[i] = toErrorJson(e);
+            }
+        }
+        // requests for the same profile share the same preparations, so we calculate them one after another
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparing(i -> requests[i] == null ? "" : requests[i].getProfile()));
+        // the routes hold the read lock while they run, so we can wait for them by acquiring the write lock
+        ReadWriteLock runningLock = new ReentrantReadWriteLock();
+        List<Future<JsonNode>> futures = new ArrayList<>(Collections.nCopies(size, null));
+        for (int i : order)
+            if (requests[i] != null)
+                futures.set(i, executorService.submit(() -> {
+                    // the batch is finished already, so nobody reads the result
+                    if (!runningLock.readLock().tryLock())
+                        return null;
+                    try {
+                        return route(requests[i]);
+                    } finally {
+                        runningLock.readLock().unlock();
+                    }
+                }));
+
+        StreamingOutput out = output -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("responses");
+                for (int i = 0; i < size; i++) {
+                    generator.writeTree(futures.get(i) == null ? errors[i] : getResult(futures.get(i)));
+                    // send every response as soon as it is available
+                    generator.flush();
+                }
+                generator.writeEndArray();
+                sw.stop();
+                generator.writeObjectFieldStart("info");
+                generator.writeObjectField("copyrights", config.getCopyrights());
+                generator.writeNumberField("took", Math.round(sw.getMillisDouble()));
+                generator.writeEndObject();
+                generator.writeEndObject();
+                logger.info("batch of " + size + " requests, took: " + String.format("%.1f", sw.getMillisDouble()) + " ms");
+            } finally {
+                // e.g. if the client disconnected we do not need to calculate the remaining routes
+                for (Future<JsonNode> future : futures)
+                    if (future != null)
+                        future.cancel(false);
+                // routes that are running already use the GraphHopper instance of this request, which must not be
+                // closed (e.g. by a reload) before they are finished. The write lock is never released, so routes
+                // that start later are skipped.
+                runningLock.writeLock().lock();
+            }
+        };
+        return Response.ok(out).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    private JsonNode route(GHRequest request) {
+        StopWatch sw = new StopWatch().start();
+        try {
+            GHResponse ghResponse = graphHopper.route(request);
+            if (ghResponse.hasErrors())
+                return toErrorJson(new MultiException(ghResponse.getErrors()));
+            PMap hints = request.getHints();
+            return ResponsePathSerializer.jsonObject(ghResponse,
+                    new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.stop().getMillisDouble()), osmDate),
+                    hints.getBool(INSTRUCTIONS, true), hints.getBool(CALC_POINTS, true), hints.getBool("elevation", false),
+                    hints.getBool("points_encoded", true), hints.getDouble("points_encoded_multiplier", 1e5));
+        } catch (IllegalArgumentException | MultiException e) {
+            return toErrorJson(e);
+        } catch (Exception e) {
+            logger.error("batch request failed: " + request, e);
+            return toErrorJson(e);
+        }
+    }
+
+    private JsonNode toErrorJson(Exception e) {
+        return objectMapper.valueToTree(e instanceof MultiException ? e : new MultiException(e));
+    }
+
+    private static JsonNode getResult(Future<JsonNode> future) throws InterruptedIOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the route");
+        } catch (ExecutionException e) {
+            // route() catches all exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
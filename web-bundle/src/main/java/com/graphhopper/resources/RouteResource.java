@@ -175,17 +175,7 @@ public class RouteResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
         StopWatch sw = new StopWatch().start();
-        request = ghRequestTransformer.transformRequest(request);
-
-        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
-            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
-            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
-
-        PMap profileResolverHints = new PMap(request.getHints());
-        profileResolverHints.putObject("profile", request.getProfile());
-        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
-        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
-        removeLegacyParameters(request.getHints());
+        request = prepareRequest(request, ghRequestTransformer, profileResolver);
 
         GHResponse ghResponse = graphHopper.route(request);
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
@@ -216,6 +206,25 @@ public class RouteResource {
         }
     }
 
+    /**
+     * Applies the request transformer and resolves the profile of a request that was posted as JSON. This is shared
+     * by POST /route and POST /route/batch.
+     */
+    static GHRequest prepareRequest(GHRequest request, GHRequestTransformer ghRequestTransformer, ProfileResolver profileResolver) {
+        request = ghRequestTransformer.transformRequest(request);
+
+        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
+            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
+            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
+        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(request.getHints());
+        return request;
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
@@ -1,6 +1,7 @@
 package com.graphhopper.resources;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
@@ -9,7 +10,6 @@ import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
@@ -34,8 +34,6 @@ import java.io.Writer;
 import java.util.*;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
-import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
-import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
 
 /**
@@ -54,12 +52,14 @@ public class SPTResource {
         public GHPoint coordinate, prevCoordinate;
     }
 
+    private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final EncodingManager encodingManager;
 
     @Inject
-    public SPTResource(GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager) {
+    public SPTResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager) {
+        this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.encodingManager = encodingManager;
@@ -80,6 +80,7 @@ public class SPTResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean disableCH = hintsMap.getBool(Parameters.CH.DISABLE, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -100,13 +101,16 @@ public class SPTResource {
             throw new IllegalArgumentException("Point not found:" + point);
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
         NodeAccess nodeAccess = queryGraph.getNodeAccess();
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
-
+        ShortestPathTree shortestPathTree;
         if (distanceInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
-            shortestPathTree.setDistanceLimit(distanceInMeter.getAsLong());
+            double limit = distanceInMeter.getAsLong();
+            shortestPathTree = IsochroneResource.createShortestPathTree(graphHopper, profile, disableCH,
+                    limit >= config.getDouble(IsochroneResource.PHAST_MIN_DISTANCE_LIMIT, 100_000), queryGraph, weighting, reverseFlow);
+            shortestPathTree.setDistanceLimit(limit);
         } else {
             double limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+            shortestPathTree = IsochroneResource.createShortestPathTree(graphHopper, profile, disableCH,
+                    limit >= config.getDouble(IsochroneResource.PHAST_MIN_TIME_LIMIT, 3_600) * 1000, queryGraph, weighting, reverseFlow);
             shortestPathTree.setTimeLimit(limit);
         }
 
@@ -19,7 +19,9 @@ package com.graphhopper.application;
 
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
+import com.graphhopper.config.TurnCostsConfig;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.matching.EdgeMatch;
@@ -37,6 +39,7 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import static com.graphhopper.application.MapMatchingTest.fetchStreets;
 import static org.junit.jupiter.api.Assertions.*;
@@ -80,6 +83,34 @@ public class MapMatching2Test {
         assertEquals(28790, mr.getMatchMillis(), 50);
     }
 
+    @Test
+    public void testEdgeBasedCH() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car").setTurnCostsConfig(TurnCostsConfig.car()));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("my_profile"));
+        hopper.importOrLoad();
+
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-13.gpx"), Gpx.class);
+        // the transitions are calculated with the one-to-many CH search, the result must be the same as without CH
+        MatchResult chResult = MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"))
+                .match(GpxConversions.getEntries(gpx.trk.get(0)));
+        MatchResult dijkstraResult = MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile").putObject("ch.disable", true))
+                .match(GpxConversions.getEntries(gpx.trk.get(0)));
+
+        int edgeCount = hopper.getBaseGraph().getAllEdges().length();
+        for (EdgeMatch em : chResult.getEdgeMatches()) {
+            assertTrue(em.getEdgeState().getEdge() < edgeCount, "result contains virtual edges:" + em.getEdgeState().toString());
+            validateEdgeMatch(em);
+        }
+        assertEquals(dijkstraResult.getMatchLength(), chResult.getMatchLength(), 1.e-1);
+        assertEquals(dijkstraResult.getMatchMillis(), chResult.getMatchMillis(), 50);
+        assertEquals(dijkstraResult.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()),
+                chResult.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()));
+    }
+
     @Test
     public void testIssue70() throws IOException {
         GraphHopper hopper = new GraphHopper();
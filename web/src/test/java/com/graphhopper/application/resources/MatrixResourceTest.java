@@ -0,0 +1,155 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.api.GHMRequest;
+import com.graphhopper.api.GHMatrixSyncRequester;
+import com.graphhopper.api.GraphHopperMatrixWeb;
+import com.graphhopper.api.GraphHopperWeb;
+import com.graphhopper.api.MatrixResponse;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.application.util.TestUtils;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.TurnCostsConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/andorra-matrix-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+    private static final List<GHPoint> POINTS = Arrays.asList(
+            new GHPoint(42.5093, 1.5274), new GHPoint(42.5126, 1.5410), new GHPoint(42.554851, 1.536198));
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("routing.matrix.max_size", 5).
+                setProfiles(Arrays.asList(
+                        TestProfiles.accessAndSpeed("car"),
+                        TestProfiles.accessAndSpeed("car_tc", "car").setTurnCostsConfig(TurnCostsConfig.car()),
+                        TestProfiles.accessAndSpeed("car_no_ch", "car"))).
+                setCHProfiles(Arrays.asList(new CHProfile("car"), new CHProfile("car_tc")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testMatrixEqualsRoutes() {
+        for (String profile : Arrays.asList("car", "car_tc")) {
+            GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixSyncRequester(TestUtils.clientUrl(app, "/matrix")));
+            GHMRequest request = new GHMRequest().setProfile(profile).setPoints(POINTS)
+                    .setOutArrays(Arrays.asList("weights", "times", "distances"));
+            MatrixResponse rsp = matrixWeb.route(request);
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+
+            GraphHopperWeb routeWeb = new GraphHopperWeb(TestUtils.clientUrl(app, "/route"));
+            for (int from = 0; from < POINTS.size(); from++) {
+                for (int to = 0; to < POINTS.size(); to++) {
+                    GHResponse routeRsp = routeWeb.route(new GHRequest(POINTS.get(from), POINTS.get(to)).setProfile(profile)
+                            .putHint("instructions", false).putHint("calc_points", false));
+                    assertFalse(routeRsp.hasErrors(), routeRsp.getErrors().toString());
+                    assertEquals(routeRsp.getBest().getRouteWeight(), rsp.getWeight(from, to), 1.e-2, profile + ", " + from + "->" + to);
+                    assertEquals(routeRsp.getBest().getDistance(), rsp.getDistance(from, to), 1, profile + ", " + from + "->" + to);
+                    assertEquals(routeRsp.getBest().getTime(), rsp.getTime(from, to), 1000, profile + ", " + from + "->" + to);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFromAndToPoints() {
+        String body = "{\"profile\": \"car\", \"from_points\": [[1.5274, 42.5093]], \"to_points\": [[1.5410, 42.5126], [1.536198, 42.554851]], \"out_arrays\": [\"distances\"]}";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(body)).readEntity(JsonNode.class);
+        assertEquals(1, json.get("distances").size());
+        assertEquals(2, json.get("distances").get(0).size());
+        assertTrue(json.get("distances").get(0).get(1).asDouble() > 0);
+        assertFalse(json.has("weights"));
+        assertFalse(json.has("times"));
+        assertTrue(json.get("info").has("took"));
+    }
+
+    @Test
+    public void testPointNotFound() {
+        List<GHPoint> points = Arrays.asList(POINTS.get(0), new GHPoint(42.0, 3.0), POINTS.get(1));
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixSyncRequester(TestUtils.clientUrl(app, "/matrix")));
+        MatrixResponse rsp = matrixWeb.route(new GHMRequest().setProfile("car").setPoints(points).setOutArrays(Collections.singletonList("distances")));
+        assertTrue(rsp.hasErrors());
+        assertEquals(400, rsp.getStatusCode());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("Cannot find point 1"), rsp.getErrors().toString());
+
+        GHMRequest request = new GHMRequest().setProfile("car").setPoints(points).setOutArrays(Collections.singletonList("distances"));
+        request.setFailFast(false);
+        rsp = matrixWeb.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(Collections.singletonList(1), rsp.getInvalidFromPoints());
+        assertEquals(Collections.singletonList(1), rsp.getInvalidToPoints());
+        assertEquals(Double.MAX_VALUE, rsp.getDistance(0, 1));
+        assertTrue(rsp.getDistance(0, 2) > 0);
+    }
+
+    @Test
+    public void testErrors() {
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"car_no_ch\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]]}"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("requires a CH preparation"));
+
+        response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"car\", \"points\": [[1.5274, 42.5093]], \"out_arrays\": [\"speeds\"]}"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Unknown entry in 'out_arrays'"));
+
+        response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"car\", \"from_points\": [[1.5274, 42.5093]]}"));
+        assertEquals(400, response.getStatus());
+
+        response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"car\", \"from_points\": [[1.5274, 42.5093]], "
+                + "\"to_points\": [[1.5274, 42.5093], [1.5410, 42.5126], [1.5274, 42.5093], [1.5410, 42.5126], [1.5274, 42.5093], [1.5410, 42.5126]]}"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Too many points: 1x6, the maximum is 5"));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.codahale.metrics.Gauge;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class RouteBatchResourceTest {
+    private static final String DIR = "./target/andorra-route-batch-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.encoded_values", "car_access, car_average_speed, foot_access, foot_average_speed").
+                putObject("routing.batch.threads", 2).
+                putObject("routing.batch.max_size", 10).
+                putObject("routing.cache.size", 10).
+                setProfiles(Arrays.asList(
+                        TestProfiles.accessAndSpeed("car"),
+                        TestProfiles.accessAndSpeed("foot"))).
+                setCHProfiles(Arrays.asList(new CHProfile("car"), new CHProfile("foot")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testBatchEqualsRoutes() {
+        String[] requests = {
+                "{\"profile\": \"car\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]], \"calc_points\": false}",
+                "{\"profile\": \"foot\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]], \"instructions\": false}",
+                "{\"profile\": \"car\", \"points\": [[1.5410, 42.5126], [1.536198, 42.554851]]}"
+        };
+        JsonNode json = clientTarget(app, "/route/batch").request()
+                .post(Entity.json("{\"requests\": [" + String.join(",", requests) + "]}")).readEntity(JsonNode.class);
+        assertEquals(3, json.get("responses").size());
+        assertTrue(json.get("info").has("took"));
+        for (int i = 0; i < requests.length; i++) {
+            JsonNode expected = clientTarget(app, "/route").request().post(Entity.json(requests[i])).readEntity(JsonNode.class);
+            JsonNode path = json.get("responses").get(i).get("paths").get(0);
+            assertEquals(expected.get("paths").get(0).get("distance").asDouble(), path.get("distance").asDouble(), 1.e-3, "request " + i);
+            assertEquals(expected.get("paths").get(0).get("time").asLong(), path.get("time").asLong(), "request " + i);
+            assertEquals(expected.get("paths").get(0).has("points"), path.has("points"), "request " + i);
+            assertEquals(expected.get("paths").get(0).has("instructions"), path.has("instructions"), "request " + i);
+        }
+    }
+
+    @Test
+    public void testErrorsPerRequest() {
+        String body = "{\"requests\": [" +
+                "{\"profile\": \"car\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]]}," +
+                "{\"profile\": \"bike\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]]}," +
+                "{\"profile\": \"car\", \"points\": [[3.0, 42.0], [1.5410, 42.5126]]}," +
+                "{\"profile\": \"foot\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]]}" +
+                "]}";
+        Response response = clientTarget(app, "/route/batch").request().post(Entity.json(body));
+        assertEquals(200, response.getStatus());
+        JsonNode responses = response.readEntity(JsonNode.class).get("responses");
+        assertEquals(4, responses.size());
+        assertTrue(responses.get(0).get("paths").get(0).get("distance").asDouble() > 0);
+        assertTrue(responses.get(1).get("message").asText().contains("The requested profile 'bike' does not exist"), responses.get(1).toString());
+        assertTrue(responses.get(2).get("message").asText().contains("Point 0 is out of bounds"), responses.get(2).toString());
+        assertTrue(responses.get(3).get("paths").get(0).get("distance").asDouble() > 0);
+    }
+
+    @Test
+    public void testBatchTooLarge() {
+        String request = "{\"profile\": \"car\", \"points\": [[1.5274, 42.5093], [1.5410, 42.5126]]}";
+        String body = "{\"requests\": [" + String.join(",", Collections.nCopies(11, request)) + "]}";
+        Response response = clientTarget(app, "/route/batch").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Too many requests: 11, the maximum is 10"));
+
+        response = clientTarget(app, "/route/batch").request().post(Entity.json("{\"requests\": []}"));
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testRouteCacheMetrics() {
+        Gauge<?> hits = app.getEnvironment().metrics().getGauges().get("graphhopper.route_cache.hits");
+        assertNotNull(hits);
+        assertNotNull(app.getEnvironment().metrics().getGauges().get("graphhopper.route_cache.size"));
+        long hitsBefore = (Long) hits.getValue();
+        String request = "{\"profile\": \"foot\", \"points\": [[1.5274, 42.5093], [1.536198, 42.554851]]}";
+        for (int i = 0; i < 2; i++) {
+            Response response = clientTarget(app, "/route").request().post(Entity.json(request));
+            assertEquals(200, response.getStatus());
+        }
+        assertTrue((Long) hits.getValue() > hitsBefore);
+    }
+}
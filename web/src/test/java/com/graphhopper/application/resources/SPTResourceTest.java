@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.TurnCostsConfig;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
@@ -35,7 +36,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static org.junit.jupiter.api.Assertions.*;
@@ -53,10 +56,14 @@ public class SPTResourceTest {
                 putObject("import.osm.ignored_highways", "").
                 putObject("graph.location", DIR).
                 putObject("graph.encoded_values", "car_access, car_average_speed").
+                // use PHAST for all limits
+                putObject("isochrone.phast.min_time_limit", 0).
                 setProfiles(List.of(
                         TestProfiles.accessAndSpeed("car_without_turncosts", "car"),
-                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car())
-                ));
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car()),
+                        TestProfiles.accessAndSpeed("car_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("car_ch")));
         return config;
     }
 
@@ -103,6 +110,35 @@ public class SPTResourceTest {
         assertEquals("2385,2820,274,13121,262", lines[3]);
     }
 
+    @Test
+    public void requestSPTWithCH() {
+        Map<String, String> dijkstra = readNodes("/spt?profile=car_ch&ch.disable=true&point=42.531073,1.573792&time_limit=300&columns=node_id,time,distance");
+        Map<String, String> phast = readNodes("/spt?profile=car_ch&point=42.531073,1.573792&time_limit=300&columns=node_id,time,distance");
+        assertTrue(dijkstra.size() > 400);
+        assertEquals(dijkstra.size(), phast.size());
+        int differences = 0;
+        for (Map.Entry<String, String> entry : dijkstra.entrySet()) {
+            assertTrue(phast.containsKey(entry.getKey()), "missing node " + entry.getKey());
+            // time and distance can differ if there are multiple shortest paths
+            if (!entry.getValue().equals(phast.get(entry.getKey())))
+                differences++;
+        }
+        assertTrue(differences < 0.05 * dijkstra.size(), "too many differences: " + differences);
+    }
+
+    private static Map<String, String> readNodes(String url) {
+        Response rsp = clientTarget(app, url).request().buildGet().invoke();
+        assertEquals(200, rsp.getStatus());
+        String[] lines = rsp.readEntity(String.class).split("\n");
+        assertEquals("node_id,time,distance", lines[0]);
+        Map<String, String> result = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] row = lines[i].split(",", 2);
+            result.put(row[0], row[1]);
+        }
+        return result;
+    }
+
     @Test
     public void requestDetails() {
         Response rsp = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=street_name,road_class,max_speed").request().buildGet().invoke();